@@ -0,0 +1,148 @@
+package com.mapbox.mapboxsdk.offline;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.test.InstrumentationTestCase;
+
+import com.mapbox.mapboxsdk.constants.MapboxConstants;
+import com.mapbox.mapboxsdk.util.MapboxUtils;
+
+import java.util.Arrays;
+
+public class OfflineDatabaseUpgradeTest extends InstrumentationTestCase {
+
+    private static final MapboxConstants.RasterImageQuality QUALITY =
+            MapboxConstants.RasterImageQuality.MBXRasterImageQualityPNG256;
+    private static final int ZOOM = 12;
+    private static final int MIN_X = 650;
+    private static final int MIN_Y = 1430;
+    private static final int SIDE = 24;
+
+    private Context context;
+    private String mapID;
+    private OfflineMapDatabase offlineMapDatabase;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        context = getInstrumentation().getTargetContext();
+        // Database handlers are cached by mapID for the life of the process
+        mapID = "test.upgrade" + SystemClock.elapsedRealtime();
+        createVersion2Database();
+
+        OfflineDatabaseManager.getOfflineDatabaseManager(context).getOfflineDatabaseHandlerForMapId(mapID, true);
+        offlineMapDatabase = new OfflineMapDatabase(context, mapID);
+        assertTrue(offlineMapDatabase.initializeDatabase());
+    }
+
+    public void tearDown() throws Exception {
+        offlineMapDatabase.closeDatabase();
+        context.deleteDatabase(mapID);
+        super.tearDown();
+    }
+
+    public void testUpgradeKeepsTheData() throws Exception {
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(offlineMapDatabase.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            assertEquals(OfflineDatabaseHandler.DATABASE_VERSION, db.getVersion());
+        } finally {
+            db.close();
+        }
+
+        for (int x = MIN_X; x < MIN_X + SIDE; x++) {
+            for (int y = MIN_Y; y < MIN_Y + SIDE; y++) {
+                byte[] byURL = offlineMapDatabase.dataForURL(tileURL(x, y));
+                byte[] byTile = offlineMapDatabase.dataForTile(ZOOM, x, y);
+                assertTrue(Arrays.equals(tileData(x, y), byURL));
+                assertTrue(Arrays.equals(byURL, byTile));
+            }
+        }
+        // Resources which aren't tiles are still found by url
+        assertNotNull(offlineMapDatabase.dataForURL(metadataURL()));
+        assertNull(offlineMapDatabase.dataForTile(ZOOM, MIN_X + SIDE, MIN_Y));
+    }
+
+    public void testTileLookupUsesTheTileKeyIndex() throws Exception {
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(offlineMapDatabase.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + OfflineMapDatabase.TILE_DATA_QUERY,
+                    new String[] { String.valueOf(OfflineDatabaseHandler.tileKey(ZOOM, MIN_X, MIN_Y)) });
+            boolean usesIndex = false;
+            try {
+                int detail = cursor.getColumnIndexOrThrow("detail");
+                while (cursor.moveToNext()) {
+                    String step = cursor.getString(detail);
+                    assertFalse(step, step.startsWith("SCAN"));
+                    if (step.contains("USING INDEX " + OfflineDatabaseHandler.INDEX_RESOURCES_TILE_KEY)) {
+                        usesIndex = true;
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+            assertTrue(usesIndex);
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * Writes a database the way version 2 did: no tile keys, no blobs, data in the resources rows.
+     */
+    private void createVersion2Database() {
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(context.getDatabasePath(mapID), null);
+        try {
+            db.beginTransaction();
+            try {
+                db.execSQL("CREATE TABLE metadata (name TEXT UNIQUE, value TEXT);");
+                db.execSQL("CREATE TABLE resources (url TEXT UNIQUE, data BLOB, status TEXT);");
+                putMetadata(db, "uniqueID", mapID + "-1");
+                putMetadata(db, "mapID", mapID);
+                putMetadata(db, "includesMetadata", "YES");
+                putMetadata(db, "includesMarkers", "NO");
+                putMetadata(db, "imageQuality", String.valueOf(QUALITY.getValue()));
+                for (int x = MIN_X; x < MIN_X + SIDE; x++) {
+                    for (int y = MIN_Y; y < MIN_Y + SIDE; y++) {
+                        putResource(db, tileURL(x, y), tileData(x, y));
+                    }
+                }
+                putResource(db, metadataURL(), "{}".getBytes());
+                db.setVersion(2);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } finally {
+            db.close();
+        }
+    }
+
+    private static void putMetadata(SQLiteDatabase db, String name, String value) {
+        ContentValues cv = new ContentValues();
+        cv.put("name", name);
+        cv.put("value", value);
+        db.insert("metadata", null, cv);
+    }
+
+    private static void putResource(SQLiteDatabase db, String url, byte[] data) {
+        ContentValues cv = new ContentValues();
+        cv.put("url", url);
+        cv.put("data", data);
+        cv.put("status", "200");
+        db.insert("resources", null, cv);
+    }
+
+    private String tileURL(int x, int y) {
+        return MapboxUtils.getMapTileURL(context, mapID, ZOOM, x, y, QUALITY);
+    }
+
+    private String metadataURL() {
+        return MapboxConstants.MAPBOX_BASE_URL_V4 + mapID + ".json?secure";
+    }
+
+    private static byte[] tileData(int x, int y) {
+        return ("tile " + x + "/" + y).getBytes();
+    }
+}
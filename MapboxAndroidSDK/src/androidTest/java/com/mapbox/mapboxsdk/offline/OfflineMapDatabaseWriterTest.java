@@ -0,0 +1,143 @@
+package com.mapbox.mapboxsdk.offline;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.InstrumentationTestCase;
+
+import com.mapbox.mapboxsdk.constants.MapboxConstants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class OfflineMapDatabaseWriterTest extends InstrumentationTestCase {
+
+    private static final String DB_NAME = "test.writer";
+
+    private Context context;
+    private OfflineDatabaseHandler handler;
+    private SQLiteDatabase db;
+
+    private static class RecordingCallback implements OfflineMapDatabaseWriter.Callback {
+        final List<Integer> batches = new ArrayList<Integer>();
+        long bytesSaved;
+        Throwable error;
+        final CountDownLatch firstBatch = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(1);
+
+        @Override
+        public synchronized void onResourcesWritten(int count, long bytesSaved) {
+            batches.add(count);
+            this.bytesSaved += bytesSaved;
+            firstBatch.countDown();
+        }
+
+        @Override
+        public synchronized void onWriteError(Throwable error) {
+            this.error = error;
+        }
+
+        @Override
+        public void onFinished() {
+            finished.countDown();
+        }
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+        context = getInstrumentation().getTargetContext();
+        context.deleteDatabase(DB_NAME);
+        handler = new OfflineDatabaseHandler(context, DB_NAME);
+        db = handler.getWritableDatabase();
+    }
+
+    public void tearDown() throws Exception {
+        handler.close();
+        context.deleteDatabase(DB_NAME);
+        super.tearDown();
+    }
+
+    public void testCommitsFullBatches() throws Exception {
+        insertURLs(25);
+        RecordingCallback callback = new RecordingCallback();
+        OfflineMapDatabaseWriter writer = new OfflineMapDatabaseWriter(db, 10, 60 * 1000, callback);
+        writer.start();
+        for (int i = 0; i < 25; i++) {
+            writer.put(url(i), data(i));
+        }
+        writer.finish();
+        assertTrue(callback.finished.await(10, TimeUnit.SECONDS));
+
+        assertNull(callback.error);
+        assertEquals(Arrays.asList(10, 10, 5), callback.batches);
+        assertEquals(25, writtenCount());
+    }
+
+    public void testCommitsAPartialBatchAfterTheInterval() throws Exception {
+        insertURLs(3);
+        RecordingCallback callback = new RecordingCallback();
+        OfflineMapDatabaseWriter writer = new OfflineMapDatabaseWriter(db, 100, 100, callback);
+        writer.start();
+        for (int i = 0; i < 3; i++) {
+            writer.put(url(i), data(i));
+        }
+        // Written without finish(), once the oldest resource has waited long enough
+        assertTrue(callback.firstBatch.await(10, TimeUnit.SECONDS));
+        writer.finish();
+        assertTrue(callback.finished.await(10, TimeUnit.SECONDS));
+
+        assertEquals(Arrays.asList(3), callback.batches);
+        assertEquals(3, writtenCount());
+    }
+
+    public void testIdenticalResourcesAreStoredOnce() throws Exception {
+        insertURLs(5);
+        RecordingCallback callback = new RecordingCallback();
+        OfflineMapDatabaseWriter writer = new OfflineMapDatabaseWriter(db, 10, 60 * 1000, callback);
+        writer.start();
+        byte[] blank = data(-1);
+        for (int i = 0; i < 5; i++) {
+            writer.put(url(i), blank);
+        }
+        writer.finish();
+        assertTrue(callback.finished.await(10, TimeUnit.SECONDS));
+
+        assertEquals(4 * blank.length, callback.bytesSaved);
+        assertEquals(1, DatabaseUtils.queryNumEntries(db, OfflineDatabaseHandler.TABLE_BLOBS));
+        assertEquals(callback.bytesSaved, OfflineMapBlobStore.recordedBytesSaved(db));
+    }
+
+    private void insertURLs(int count) {
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < count; i++) {
+                ContentValues cv = new ContentValues();
+                cv.put(OfflineDatabaseHandler.FIELD_RESOURCES_URL, url(i));
+                db.insert(OfflineDatabaseHandler.TABLE_RESOURCES, null, cv);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private long writtenCount() {
+        return DatabaseUtils.queryNumEntries(db, OfflineDatabaseHandler.TABLE_RESOURCES,
+                OfflineDatabaseHandler.FIELD_RESOURCES_STATUS + " = 200 AND " + OfflineDatabaseHandler.FIELD_RESOURCES_BLOB_ID + " IS NOT NULL");
+    }
+
+    private static String url(int i) {
+        return MapboxConstants.MAPBOX_BASE_URL_V4 + "test.map/16/" + i + "/0.png";
+    }
+
+    private static byte[] data(int i) {
+        byte[] data = new byte[4 * 1024];
+        Arrays.fill(data, (byte) i);
+        data[0] = (byte) (i >> 8);
+        return data;
+    }
+}
@@ -0,0 +1,65 @@
+package com.mapbox.mapboxsdk.offline;
+
+import android.content.Context;
+import android.test.InstrumentationTestCase;
+
+import com.mapbox.mapboxsdk.constants.MapboxConstants;
+
+public class OfflineMapURLGeneratorTest extends InstrumentationTestCase {
+
+    private static final String MAP_ID = "test.map";
+    private static final MapboxConstants.RasterImageQuality QUALITY =
+            MapboxConstants.RasterImageQuality.MBXRasterImageQualityPNG256;
+
+    private Context context;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        context = getInstrumentation().getTargetContext();
+    }
+
+    public void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    public void testIteratorMatchesURLForIndex() throws Exception {
+        // Seattle
+        OfflineMapURLGenerator generator = new OfflineMapURLGenerator(47.5, 47.7, -122.45, -122.2, 10, 14);
+        assertIteratorMatchesURLForIndex(generator);
+    }
+
+    public void testWholeWorldTileCount() throws Exception {
+        // Latitudes past the projection, and longitude 180, are clamped to the last tiles
+        OfflineMapURLGenerator generator = new OfflineMapURLGenerator(-90.0, 90.0, -180.0, 180.0, 0, 3);
+        assertEquals(1 + 4 + 16 + 64, generator.getTileCount());
+        assertIteratorMatchesURLForIndex(generator);
+
+        String last = generator.getURLForIndex(context, MAP_ID, QUALITY, generator.getURLCount() - 1);
+        assertTrue(last, last.contains("/3/7/7."));
+    }
+
+    public void testProjectionEdgeTileCount() throws Exception {
+        // The corners of the projection fall exactly on the edges of the tiles
+        OfflineMapURLGenerator generator = new OfflineMapURLGenerator(-85.0511287798, 85.0511287798, -180.0, 180.0, 4, 4);
+        assertEquals(16 * 16, generator.getTileCount());
+
+        // A region touching the antimeridian only covers the last column
+        generator = new OfflineMapURLGenerator(10.0, 20.0, 179.5, 180.0, 4, 4);
+        assertEquals(1, generator.getTileCount());
+        String url = generator.getURLForIndex(context, MAP_ID, QUALITY, 0);
+        assertTrue(url, url.contains("/4/15/7."));
+    }
+
+    private void assertIteratorMatchesURLForIndex(OfflineMapURLGenerator generator) {
+        OfflineMapURLGenerator.URLIterator iterator = generator.iterator(context, MAP_ID, QUALITY);
+        int index = 0;
+        while (iterator.hasNext()) {
+            String url = iterator.next();
+            assertEquals(generator.getURLForIndex(context, MAP_ID, QUALITY, index), url);
+            assertEquals(OfflineDatabaseHandler.tileKeyForURL(url), iterator.getTileKey());
+            index++;
+        }
+        assertEquals(generator.getTileCount(), index);
+        assertNull(generator.getURLForIndex(context, MAP_ID, QUALITY, index));
+    }
+}
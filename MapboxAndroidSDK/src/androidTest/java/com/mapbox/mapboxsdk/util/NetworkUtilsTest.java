@@ -0,0 +1,105 @@
+package com.mapbox.mapboxsdk.util;
+
+import android.test.InstrumentationTestCase;
+
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.OkUrlFactory;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import okio.Buffer;
+
+public class NetworkUtilsTest extends InstrumentationTestCase {
+
+    private static final int REQUESTS = 10;
+    private static final byte[] TILE = new byte[8 * 1024];
+
+    private MockWebServer server;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        server = new MockWebServer();
+        for (int i = 0; i < 2 * REQUESTS; i++) {
+            server.enqueue(new MockResponse().setBody(new Buffer().write(TILE)));
+        }
+        server.start();
+    }
+
+    public void tearDown() throws Exception {
+        server.shutdown();
+        super.tearDown();
+    }
+
+    public void testSharedClientReusesConnections() throws Exception {
+        URL url = server.getUrl("/v4/test.map/12/650/1430.png");
+        for (int i = 0; i < 3; i++) {
+            assertEquals(TILE.length, read(NetworkUtils.getHttpURLConnection(url), false));
+        }
+        assertEquals(0, server.takeRequest().getSequenceNumber());
+        assertEquals(1, server.takeRequest().getSequenceNumber());
+        assertEquals(2, server.takeRequest().getSequenceNumber());
+    }
+
+    public void testSharedClientMakesFewerConnections() throws Exception {
+        URL url = server.getUrl("/v4/test.map/12/650/1430.png");
+
+        // A client of its own for every request, as before the client was shared
+        for (int i = 0; i < REQUESTS; i++) {
+            HttpURLConnection connection = new OkUrlFactory(new OkHttpClient()).open(url);
+            assertEquals(TILE.length, read(connection, true));
+        }
+        int perRequestConnections = takeNewConnections(REQUESTS);
+
+        for (int i = 0; i < REQUESTS; i++) {
+            assertEquals(TILE.length, read(NetworkUtils.getHttpURLConnection(url), false));
+        }
+        int sharedConnections = takeNewConnections(REQUESTS);
+
+        assertEquals(REQUESTS, perRequestConnections);
+        assertEquals(1, sharedConnections);
+    }
+
+    /**
+     * @return how many of the next count requests were the first one on their connection
+     */
+    private int takeNewConnections(int count) throws InterruptedException {
+        int connections = 0;
+        for (int i = 0; i < count; i++) {
+            if (server.takeRequest().getSequenceNumber() == 0) {
+                connections++;
+            }
+        }
+        return connections;
+    }
+
+    /**
+     * Reads the response to its end, which hands the connection back to the pool unless it is
+     * disconnected.
+     */
+    private static int read(HttpURLConnection connection, boolean disconnect) throws IOException {
+        try {
+            assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+            InputStream is = connection.getInputStream();
+            int total = 0;
+            try {
+                byte[] buffer = new byte[4096];
+                int n;
+                while ((n = is.read(buffer)) > 0) {
+                    total += n;
+                }
+            } finally {
+                is.close();
+            }
+            return total;
+        } finally {
+            if (disconnect) {
+                connection.disconnect();
+            }
+        }
+    }
+}
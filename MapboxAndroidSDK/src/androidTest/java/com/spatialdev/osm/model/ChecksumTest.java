@@ -86,6 +86,17 @@ public class ChecksumTest extends InstrumentationTestCase {
         assertEquals("27b1bf1412ab7f02f0991e37d783f92d83ed1d52", checksum);
     }
 
+    public void testWayChecksumAfterEdits() throws Exception {
+        assertEquals("add90109a0ca34d12d28292ccd05c588d2220f0a", way.checksum());
+        way.addOrEditTag("name", "Jabba's Palace");
+        assertEquals(new String(Hex.encodeHex(DigestUtils.sha1(way.preChecksum()))), way.checksum());
+        way.getNodes().get(1).addOrEditTag("entrance", "main");
+        assertEquals(new String(Hex.encodeHex(DigestUtils.sha1(way.preChecksum()))), way.checksum());
+        way.getNodes().get(1).deleteTag("entrance");
+        way.addOrEditTag("name", "Java the Hut");
+        assertEquals("add90109a0ca34d12d28292ccd05c588d2220f0a", way.checksum());
+    }
+
     public void testAccentEigu() throws Exception {
         String str = "café";
         String sha1 = new String(Hex.encodeHex(DigestUtils.sha1(str)));
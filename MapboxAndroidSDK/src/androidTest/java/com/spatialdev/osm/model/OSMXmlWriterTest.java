@@ -10,6 +10,9 @@ import com.spatialdev.osm.model.OSMWay;
 import com.spatialdev.osm.model.OSMXmlParser;
 import com.spatialdev.osm.model.OSMXmlWriter;
 
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.InputStream;
 import java.util.Collection;
 import java.util.LinkedList;
@@ -54,6 +57,51 @@ public class OSMXmlWriterTest extends InstrumentationTestCase {
         assertEquals(BALLARD_NODES_XML, nodesXml);
     }
 
+    public void testWriteBallardNodesToFile() throws Exception {
+        InputStream in = getInstrumentation().getTargetContext().getResources().getAssets().open("test/osm/ballard_relation.osm");
+        OSMDataSet ds = OSMXmlParser.parseFromInputStream(in);
+        File file = new File(getInstrumentation().getTargetContext().getCacheDir(), "ballard_nodes.osm");
+        OSMXmlWriter.writeElementsToFile(ds.getNodes().values(), file, USER, APP_NAME_AND_VERSION);
+        byte[] bytes = new byte[(int) file.length()];
+        DataInputStream fileIn = new DataInputStream(new FileInputStream(file));
+        try {
+            fileIn.readFully(bytes);
+        } finally {
+            fileIn.close();
+        }
+        assertEquals(BALLARD_NODES_XML, new String(bytes, "UTF-8"));
+        assertFalse(new File(file.getParentFile(), file.getName() + ".tmp").exists());
+        file.delete();
+    }
+
+    public void testWriteModifiedElementsAsOsmChange() throws Exception {
+        InputStream in = getInstrumentation().getTargetContext().getResources().getAssets().open("test/osm/ballard_relation.osm");
+        OSMDataSet ds = OSMXmlParser.parseFromInputStream(in);
+        OSMWay fourBs = ds.getWays().get((long)234714287);
+        fourBs.addOrEditTag("testKey", "testValue");
+        fourBs.addOrEditTag("amenity", "bar");
+        // Only the elements edited here: other tests modify elements of their own
+        LinkedList<OSMElement> modified = new LinkedList<>();
+        modified.add(fourBs);
+        modified.add(fourBs);
+
+        File file = new File(getInstrumentation().getTargetContext().getCacheDir(), "session.osc");
+        OSMXmlWriter.writeModifiedElementsToFile(modified, file, USER, APP_NAME_AND_VERSION);
+        byte[] bytes = new byte[(int) file.length()];
+        DataInputStream fileIn = new DataInputStream(new FileInputStream(file));
+        try {
+            fileIn.readFully(bytes);
+        } finally {
+            fileIn.close();
+        }
+        String osc = new String(bytes, "UTF-8");
+        assertTrue(osc.contains("<osmChange version=\"0.6\" generator=\"OpenMapKit 0.1\"><modify>"));
+        // Listed twice, written once, without its unmodified nodes
+        assertEquals(osc.indexOf("<way id=\"234714287\""), osc.lastIndexOf("<way id=\"234714287\""));
+        assertFalse(osc.contains("<node id=\"" + fourBs.getNodes().get(0).getId() + "\""));
+        file.delete();
+    }
+
     public void testReadAndWriteBallardRelations() throws Exception {
         InputStream in = getInstrumentation().getTargetContext().getResources().getAssets().open("test/osm/ballard_relation.osm");
         OSMDataSet ds = OSMXmlParser.parseFromInputStream(in);
@@ -0,0 +1,111 @@
+package uk.co.senab.bitmapcache;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class LongLruCacheTest extends TestCase {
+
+    public void testEvictsLeastRecentlyUsedFirst() throws Exception {
+        LongLruCache<String> cache = new LongLruCache<String>(3);
+        cache.put(1L, "a");
+        cache.put(2L, "b");
+        cache.put(3L, "c");
+
+        // 1 becomes the most recently used, so 2 is the eldest
+        assertEquals("a", cache.get(1L));
+        cache.put(4L, "d");
+
+        assertNull(cache.peek(2L));
+        assertTrue(Arrays.equals(new long[] {3L, 1L, 4L}, cache.keys()));
+        assertEquals(1, cache.evictionCount());
+        assertEquals(3, cache.size());
+    }
+
+    public void testPeekDoesNotChangeTheOrder() throws Exception {
+        LongLruCache<String> cache = new LongLruCache<String>(2);
+        cache.put(1L, "a");
+        cache.put(2L, "b");
+
+        assertEquals("a", cache.peek(1L));
+        cache.put(3L, "c");
+
+        assertNull(cache.peek(1L));
+        assertEquals("b", cache.peek(2L));
+    }
+
+    public void testPutReplacesTheValueOfAKey() throws Exception {
+        RecordingCache cache = new RecordingCache(10);
+        cache.put(1L, "a");
+        assertEquals("a", cache.put(1L, "bb"));
+
+        assertEquals(1, cache.count());
+        assertEquals(2, cache.size());
+        assertEquals("bb", cache.get(1L));
+        assertEquals(Arrays.asList("replaced 1=a"), cache.removals);
+    }
+
+    public void testTrimToSizeUsesEntrySizes() throws Exception {
+        RecordingCache cache = new RecordingCache(10);
+        cache.put(1L, "aaa");
+        cache.put(2L, "bbb");
+        cache.put(3L, "cccc");
+        assertEquals(10, cache.size());
+
+        cache.trimToSize(5);
+
+        assertEquals(4, cache.size());
+        assertTrue(Arrays.equals(new long[] {3L}, cache.keys()));
+        assertEquals(Arrays.asList("evicted 1=aaa", "evicted 2=bbb"), cache.removals);
+    }
+
+    public void testEvictAllEmptiesTheCache() throws Exception {
+        RecordingCache cache = new RecordingCache(10);
+        cache.put(1L, "a");
+        cache.put(2L, "b");
+
+        cache.evictAll();
+
+        assertEquals(0, cache.count());
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.removals.size());
+    }
+
+    public void testKeysSharingHashBuckets() throws Exception {
+        // Packed tile keys only differ in their high bits across layers and zoom levels
+        LongLruCache<Long> cache = new LongLruCache<Long>(1000);
+        for (long i = 0; i < 500; i++) {
+            cache.put(i << 44, i);
+            cache.put((i << 44) | 1L, -i);
+        }
+        for (long i = 0; i < 500; i++) {
+            assertEquals(Long.valueOf(i), cache.get(i << 44));
+            assertEquals(Long.valueOf(-i), cache.get((i << 44) | 1L));
+        }
+        assertEquals(1000, cache.count());
+
+        assertEquals(Long.valueOf(7L), cache.remove(7L << 44));
+        assertNull(cache.get(7L << 44));
+        assertEquals(999, cache.count());
+    }
+
+    private static class RecordingCache extends LongLruCache<String> {
+        final List<String> removals = new ArrayList<String>();
+
+        RecordingCache(int maxSize) {
+            super(maxSize);
+        }
+
+        @Override
+        protected int sizeOf(long key, String value) {
+            return value.length();
+        }
+
+        @Override
+        protected void entryRemoved(boolean evicted, long key, String oldValue, String newValue) {
+            removals.add((evicted ? "evicted " : "replaced ") + key + "=" + oldValue);
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package com.mapbox.mapboxsdk.offline;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 public class OfflineDatabaseHandler extends SQLiteOpenHelper {
     private static OfflineDatabaseHandler offlineDatabaseHandler;
 
@@ -13,11 +18,12 @@ public class OfflineDatabaseHandler extends SQLiteOpenHelper {
 
     // All Static variables
     // Database Version
-    public static final int DATABASE_VERSION = 2;
+    public static final int DATABASE_VERSION = 4;
 
     // Table name(s)
     public static final String TABLE_METADATA = "metadata";
     public static final String TABLE_RESOURCES = "resources";
+    public static final String TABLE_BLOBS = "blobs";
 
     // Table Fields
     public static final String FIELD_METADATA_NAME = "name";
@@ -26,6 +32,16 @@ public class OfflineDatabaseHandler extends SQLiteOpenHelper {
     public static final String FIELD_RESOURCES_URL = "url";
     public static final String FIELD_RESOURCES_DATA = "data";
     public static final String FIELD_RESOURCES_STATUS = "status";
+    public static final String FIELD_RESOURCES_TILE_KEY = "tile_key";
+    public static final String FIELD_RESOURCES_BLOB_ID = "blob_id";
+
+    public static final String FIELD_BLOBS_HASH = "hash";
+    public static final String FIELD_BLOBS_DATA = "data";
+
+    public static final String INDEX_RESOURCES_TILE_KEY = "resources_tile_key";
+
+    // The zoom, column and row at the end of a tile url: .../{z}/{x}/{y}.{format}?access_token=...
+    private static final Pattern TILE_URL_PATTERN = Pattern.compile("/(\\d+)/(\\d+)/(\\d+)\\.\\w+(\\?|$)");
 
     /**
      * Constructor
@@ -41,13 +57,15 @@ public class OfflineDatabaseHandler extends SQLiteOpenHelper {
         Log.i(TAG, "onCreate() called... Setting up application's database.");
         // Create The table(s)
         String metadata = "CREATE TABLE " + TABLE_METADATA + " (" + FIELD_METADATA_NAME + " TEXT UNIQUE, " + FIELD_METADATA_VALUE + " TEXT);";
-        String resources = "CREATE TABLE " + TABLE_RESOURCES + " (" + FIELD_RESOURCES_URL + " TEXT UNIQUE, " + FIELD_RESOURCES_DATA + " BLOB, " + FIELD_RESOURCES_STATUS + " TEXT);";
+        String resources = "CREATE TABLE " + TABLE_RESOURCES + " (" + FIELD_RESOURCES_URL + " TEXT UNIQUE, " + FIELD_RESOURCES_DATA + " BLOB, " + FIELD_RESOURCES_STATUS + " TEXT, " + FIELD_RESOURCES_TILE_KEY + " INTEGER, " + FIELD_RESOURCES_BLOB_ID + " INTEGER);";
 
         db.beginTransaction();
 
         try {
             db.execSQL(metadata);
             db.execSQL(resources);
+            db.execSQL(createTileKeyIndex());
+            db.execSQL(createBlobsTable());
             db.setTransactionSuccessful();
         } catch (SQLException e) {
             Log.e(TAG, "Error creating database: " + e.toString());
@@ -57,11 +75,93 @@ public class OfflineDatabaseHandler extends SQLiteOpenHelper {
         }
     }
 
+    private static String createTileKeyIndex() {
+        return "CREATE UNIQUE INDEX " + INDEX_RESOURCES_TILE_KEY + " ON " + TABLE_RESOURCES + " (" + FIELD_RESOURCES_TILE_KEY + ");";
+    }
+
+    private static String createBlobsTable() {
+        return "CREATE TABLE " + TABLE_BLOBS + " (" + FIELD_BLOBS_HASH + " TEXT UNIQUE, " + FIELD_BLOBS_DATA + " BLOB);";
+    }
+
+    /**
+     * Packs the coordinates of a tile into the integer key tiles are looked up by.
+     *
+     * @param z Zoom level
+     * @param x Column
+     * @param y Row
+     * @return the tile key
+     */
+    public static long tileKey(int z, int x, int y) {
+        return ((long) z << 44) | ((long) (x & 0x3FFFFF) << 22) | (y & 0x3FFFFF);
+    }
+
+    /**
+     * @param url Url of a resource
+     * @return the key of the tile at url, or -1 if url isn't a tile url
+     */
+    public static long tileKeyForURL(String url) {
+        Matcher matcher = TILE_URL_PATTERN.matcher(url);
+        if (!matcher.find()) {
+            return -1;
+        }
+        try {
+            return tileKey(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)), Integer.parseInt(matcher.group(3)));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Adds the tile keys to a version 2 database, where tiles could only be looked up by url.
+     */
+    private void upgradeToTileKeys(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE_RESOURCES + " ADD COLUMN " + FIELD_RESOURCES_TILE_KEY + " INTEGER;");
+        db.execSQL(createTileKeyIndex());
+
+        SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_RESOURCES + " SET " + FIELD_RESOURCES_TILE_KEY + " = ? WHERE rowid = ?;");
+        Cursor cursor = db.rawQuery("SELECT rowid, " + FIELD_RESOURCES_URL + " FROM " + TABLE_RESOURCES + ";", null);
+        int count = 0;
+        try {
+            while (cursor.moveToNext()) {
+                long key = tileKeyForURL(cursor.getString(1));
+                if (key >= 0) {
+                    update.bindLong(1, key);
+                    update.bindLong(2, cursor.getLong(0));
+                    update.execute();
+                    count++;
+                }
+            }
+        } finally {
+            cursor.close();
+            update.close();
+        }
+        Log.i(TAG, "Added tile keys to " + count + " resources.");
+    }
+
+    /**
+     * Adds the blobs table to a version 3 database. The data already downloaded stays in the
+     * resources rows until the database is compacted.
+     */
+    private void upgradeToBlobs(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE_RESOURCES + " ADD COLUMN " + FIELD_RESOURCES_BLOB_ID + " INTEGER;");
+        db.execSQL(createBlobsTable());
+    }
+
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion == 2 || oldVersion == 3) {
+            // Upgrades run in a transaction, the database stays at its old version if this fails
+            Log.i(TAG, "Upgrading database from version " + oldVersion + " to " + newVersion + ", keeping the downloaded data");
+            if (oldVersion == 2) {
+                upgradeToTileKeys(db);
+            }
+            upgradeToBlobs(db);
+            return;
+        }
         Log.w(TAG, "Upgrading database from version " + oldVersion + " to " + newVersion + ", which will destroy all old data");
         db.execSQL("drop table if exists " + TABLE_METADATA);
         db.execSQL("drop table if exists " + TABLE_RESOURCES);
+        db.execSQL("drop table if exists " + TABLE_BLOBS);
         onCreate(db);
     }
 }
@@ -0,0 +1,173 @@
+package com.mapbox.mapboxsdk.offline;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.File;
+
+/**
+ * Stores the data of offline map resources once per distinct content. Large regions hold
+ * thousands of identical tiles (water, blank land, empty overlays), which all reference the same
+ * row of the blobs table, keyed by a hash of the data.
+ * <p/>
+ * A store compiles its statements against one database and isn't thread safe: it is meant to be
+ * used by the single thread writing to that database, inside its transactions.
+ */
+class OfflineMapBlobStore {
+
+    private static final String TAG = "OfflineMapBlobStore";
+
+    private static final int COMPACTION_CHUNK_SIZE = 256;
+
+    // Metadata holding the running total of the bytes saved while downloading
+    private static final String METADATA_BYTES_SAVED = "bytesSaved";
+
+    private final SQLiteStatement selectBlob;
+    private final SQLiteStatement insertBlob;
+    private long bytesSaved;
+
+    OfflineMapBlobStore(SQLiteDatabase db) {
+        this.selectBlob = db.compileStatement("SELECT rowid FROM " + OfflineDatabaseHandler.TABLE_BLOBS + " WHERE "
+                + OfflineDatabaseHandler.FIELD_BLOBS_HASH + " = ?;");
+        this.insertBlob = db.compileStatement("INSERT INTO " + OfflineDatabaseHandler.TABLE_BLOBS + " ("
+                + OfflineDatabaseHandler.FIELD_BLOBS_HASH + ", " + OfflineDatabaseHandler.FIELD_BLOBS_DATA + ") VALUES (?, ?);");
+    }
+
+    /**
+     * Stores data unless the same data is stored already.
+     *
+     * @return the rowid of the blob holding data, for resources to reference
+     */
+    long put(byte[] data) {
+        String hash = hash(data);
+        selectBlob.bindString(1, hash);
+        try {
+            long blobId = selectBlob.simpleQueryForLong();
+            bytesSaved += data.length;
+            return blobId;
+        } catch (SQLiteDoneException e) {
+            // First time this content is seen
+            insertBlob.bindString(1, hash);
+            insertBlob.bindBlob(2, data);
+            return insertBlob.executeInsert();
+        }
+    }
+
+    /**
+     * @return the number of bytes which didn't have to be stored since this store was created
+     */
+    long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    void close() {
+        selectBlob.close();
+        insertBlob.close();
+    }
+
+    /**
+     * @return the key of data in the blobs table
+     */
+    static String hash(byte[] data) {
+        return DigestUtils.sha1Hex(data);
+    }
+
+    /**
+     * Adds to the total of bytes saved recorded in the metadata of db, in the transaction of the
+     * resources which saved them, so that it can be read back without scanning the database.
+     */
+    static void addRecordedBytesSaved(SQLiteDatabase db, long bytes) {
+        if (bytes <= 0) {
+            return;
+        }
+        db.execSQL("INSERT OR REPLACE INTO " + OfflineDatabaseHandler.TABLE_METADATA + " (" + OfflineDatabaseHandler.FIELD_METADATA_NAME + ", "
+                + OfflineDatabaseHandler.FIELD_METADATA_VALUE + ") VALUES (?, COALESCE((SELECT " + OfflineDatabaseHandler.FIELD_METADATA_VALUE + " FROM "
+                + OfflineDatabaseHandler.TABLE_METADATA + " WHERE " + OfflineDatabaseHandler.FIELD_METADATA_NAME + " = ?), 0) + ?);",
+                new Object[] { METADATA_BYTES_SAVED, METADATA_BYTES_SAVED, bytes });
+    }
+
+    /**
+     * @return the total of bytes saved recorded by {@link #addRecordedBytesSaved}, 0 for databases
+     * downloaded before it was recorded
+     */
+    static long recordedBytesSaved(SQLiteDatabase db) {
+        return DatabaseUtils.longForQuery(db, "SELECT COALESCE(MAX(CAST(" + OfflineDatabaseHandler.FIELD_METADATA_VALUE + " AS INTEGER)), 0) FROM "
+                + OfflineDatabaseHandler.TABLE_METADATA + " WHERE " + OfflineDatabaseHandler.FIELD_METADATA_NAME + " = ?;", new String[] { METADATA_BYTES_SAVED });
+    }
+
+    /**
+     * Scans the whole database, see {@link #recordedBytesSaved} for a cheap estimate.
+     *
+     * @return the number of bytes the resources of db would take if each one stored its own copy
+     * of its data, minus what the shared blobs take
+     */
+    static long bytesSaved(SQLiteDatabase db) {
+        long referenced = DatabaseUtils.longForQuery(db, "SELECT COALESCE(SUM(LENGTH(b." + OfflineDatabaseHandler.FIELD_BLOBS_DATA + ")), 0) FROM "
+                + OfflineDatabaseHandler.TABLE_RESOURCES + " r JOIN " + OfflineDatabaseHandler.TABLE_BLOBS + " b ON b.rowid = r."
+                + OfflineDatabaseHandler.FIELD_RESOURCES_BLOB_ID + ";", null);
+        long stored = DatabaseUtils.longForQuery(db, "SELECT COALESCE(SUM(LENGTH(" + OfflineDatabaseHandler.FIELD_BLOBS_DATA + ")), 0) FROM "
+                + OfflineDatabaseHandler.TABLE_BLOBS + ";", null);
+        return referenced - stored;
+    }
+
+    /**
+     * Moves the data still stored in the resources rows of db, as databases written before blobs
+     * existed do, to shared blobs, drops the blobs no resource references anymore and gives the
+     * freed pages back to the file system.
+     *
+     * @return the number of bytes the database file shrank by
+     */
+    static long compact(SQLiteDatabase db) {
+        long sizeBefore = new File(db.getPath()).length();
+
+        OfflineMapBlobStore store = new OfflineMapBlobStore(db);
+        SQLiteStatement update = db.compileStatement("UPDATE " + OfflineDatabaseHandler.TABLE_RESOURCES + " SET "
+                + OfflineDatabaseHandler.FIELD_RESOURCES_BLOB_ID + " = ?, " + OfflineDatabaseHandler.FIELD_RESOURCES_DATA + " = NULL WHERE rowid = ?;");
+        String query = "SELECT rowid, " + OfflineDatabaseHandler.FIELD_RESOURCES_DATA + " FROM " + OfflineDatabaseHandler.TABLE_RESOURCES
+                + " WHERE " + OfflineDatabaseHandler.FIELD_RESOURCES_DATA + " IS NOT NULL AND rowid > ? ORDER BY rowid LIMIT " + COMPACTION_CHUNK_SIZE + ";";
+        int moved = 0;
+        try {
+            long lastRowId = 0;
+            int count;
+            do {
+                // One transaction per chunk, so that a large database doesn't need a huge journal
+                db.beginTransaction();
+                try {
+                    Cursor cursor = db.rawQuery(query, new String[] { String.valueOf(lastRowId) });
+                    try {
+                        count = cursor.getCount();
+                        while (cursor.moveToNext()) {
+                            lastRowId = cursor.getLong(0);
+                            update.bindLong(1, store.put(cursor.getBlob(1)));
+                            update.bindLong(2, lastRowId);
+                            update.execute();
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                moved += count;
+            } while (count == COMPACTION_CHUNK_SIZE);
+
+            int dropped = db.delete(OfflineDatabaseHandler.TABLE_BLOBS, "rowid NOT IN (SELECT " + OfflineDatabaseHandler.FIELD_RESOURCES_BLOB_ID
+                    + " FROM " + OfflineDatabaseHandler.TABLE_RESOURCES + " WHERE " + OfflineDatabaseHandler.FIELD_RESOURCES_BLOB_ID + " IS NOT NULL)", null);
+            Log.i(TAG, "Moved " + moved + " resources to shared blobs, " + store.getBytesSaved() + " bytes were duplicates; dropped " + dropped + " unused blobs.");
+        } finally {
+            update.close();
+            store.close();
+        }
+
+        // Deleted data only leaves free pages behind until the file is rebuilt
+        db.execSQL("VACUUM;");
+        return Math.max(sizeBefore - new File(db.getPath()).length(), 0);
+    }
+}
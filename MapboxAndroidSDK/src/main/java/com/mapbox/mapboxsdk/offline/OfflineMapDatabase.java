@@ -2,7 +2,10 @@ package com.mapbox.mapboxsdk.offline;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQuery;
 import android.text.TextUtils;
 import android.util.Log;
 import com.mapbox.mapboxsdk.constants.MapboxConstants;
@@ -13,6 +16,13 @@ public class OfflineMapDatabase implements MapboxConstants {
 
     private static final String TAG = "OfflineMapDatabase";
 
+    // The data is in a shared blob, or still in the resource row itself if the database hasn't been compacted since it was upgraded
+    private static final String DATA_QUERY = "SELECT COALESCE(r." + OfflineDatabaseHandler.FIELD_RESOURCES_DATA + ", b." + OfflineDatabaseHandler.FIELD_BLOBS_DATA + ") FROM "
+            + OfflineDatabaseHandler.TABLE_RESOURCES + " r LEFT JOIN " + OfflineDatabaseHandler.TABLE_BLOBS + " b ON b.rowid = r." + OfflineDatabaseHandler.FIELD_RESOURCES_BLOB_ID + " WHERE r.";
+
+    // Always the same text, so that SQLite keeps the statement compiled between lookups
+    static final String TILE_DATA_QUERY = DATA_QUERY + OfflineDatabaseHandler.FIELD_RESOURCES_TILE_KEY + "=?;";
+
     private Context context;
 
     private SQLiteDatabase db;
@@ -109,6 +119,18 @@ public class OfflineMapDatabase implements MapboxConstants {
         return data;
     }
 
+    /**
+     * Gets the data of a tile, looked up by its coordinates rather than by its url.
+     *
+     * @param z Zoom level
+     * @param x Column
+     * @param y Row
+     * @return the tile data, or null if the database has none for this tile
+     */
+    public byte[] dataForTile(int z, int x, int y) {
+        return sqliteDataForTileKey(OfflineDatabaseHandler.tileKey(z, x, y));
+    }
+
     public void invalidate() {
         this.invalid = false;
     }
@@ -147,7 +169,7 @@ public class OfflineMapDatabase implements MapboxConstants {
             return null;
         }
 
-        String query = "SELECT " + OfflineDatabaseHandler.FIELD_RESOURCES_DATA + " FROM " + OfflineDatabaseHandler.TABLE_RESOURCES + " WHERE " + OfflineDatabaseHandler.FIELD_RESOURCES_URL + "=?;";
+        String query = DATA_QUERY + OfflineDatabaseHandler.FIELD_RESOURCES_URL + "=?;";
         String[] selectionArgs = new String[] { url };
         Cursor cursor = db.rawQuery(query, selectionArgs);
         if (cursor == null) {
@@ -156,12 +178,70 @@ public class OfflineMapDatabase implements MapboxConstants {
 
         byte[] res = null;
         if (cursor.moveToFirst()) {
-            res = cursor.getBlob(cursor.getColumnIndex(OfflineDatabaseHandler.FIELD_RESOURCES_DATA));
+            res = cursor.getBlob(0);
         }
         cursor.close();
         return res;
     }
 
+    @SuppressWarnings("deprecation")
+    public byte[] sqliteDataForTileKey(final long tileKey) {
+        if (mapID == null) {
+            return null;
+        }
+        SQLiteDatabase db = database();
+        if (db == null) {
+            return null;
+        }
+
+        // rawQuery() can only bind strings, the factory binds the key as an integer instead
+        Cursor cursor = db.rawQueryWithFactory(new SQLiteDatabase.CursorFactory() {
+            @Override
+            public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery, String editTable, SQLiteQuery query) {
+                query.bindLong(1, tileKey);
+                return new SQLiteCursor(db, masterQuery, editTable, query);
+            }
+        }, TILE_DATA_QUERY, null, null);
+        if (cursor == null) {
+            return null;
+        }
+
+        byte[] res = null;
+        if (cursor.moveToFirst()) {
+            res = cursor.getBlob(0);
+        }
+        cursor.close();
+        return res;
+    }
+
+    /**
+     * Stores each distinct tile once, which databases downloaded before tiles were shared need,
+     * and shrinks the database file accordingly. This takes a while on large regions, so it must
+     * not be called from the main thread.
+     *
+     * @return the number of bytes the database file shrank by
+     */
+    public long compact() {
+        if (mapID == null) {
+            return 0;
+        }
+        SQLiteDatabase writable = OfflineDatabaseManager.getOfflineDatabaseManager(context).getOfflineDatabaseHandlerForMapId(mapID).getWritableDatabase();
+        long saved = OfflineMapBlobStore.compact(writable);
+        Log.i(TAG, String.format(MAPBOX_LOCALE, "Compacted %s, %d bytes saved.", mapID, saved));
+        return saved;
+    }
+
+    /**
+     * @return the number of bytes saved by storing identical resources once
+     */
+    public long getBytesSaved() {
+        SQLiteDatabase db = database();
+        if (mapID == null || db == null) {
+            return 0;
+        }
+        return OfflineMapBlobStore.bytesSaved(db);
+    }
+
     private SQLiteDatabase database() {
         if (db == null) {
             db = OfflineDatabaseManager.getOfflineDatabaseManager(context).getOfflineDatabaseHandlerForMapId(mapID).getReadableDatabase();
@@ -0,0 +1,178 @@
+package com.mapbox.mapboxsdk.offline;
+
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes downloaded resources to an offline map database from a single thread. Resources are
+ * committed in batches, once a batch is full or its oldest resource has waited long enough, so
+ * that the database isn't synced to storage once per tile. Identical resources share their data
+ * through an {@link OfflineMapBlobStore}.
+ * <p/>
+ * The queue in front of the writer is bounded: downloads wait for the writer when they get too
+ * far ahead of it.
+ */
+class OfflineMapDatabaseWriter implements Runnable {
+
+    private static final String TAG = "OfflineMapDBWriter";
+
+    static final int DEFAULT_BATCH_SIZE = 64;
+    static final long DEFAULT_BATCH_INTERVAL_MS = 500;
+
+    interface Callback {
+        /**
+         * Called on the writer thread once a batch of resources has been committed.
+         *
+         * @param count      the number of resources in the batch
+         * @param bytesSaved the number of bytes of the batch which were already stored for
+         *                   identical resources
+         */
+        void onResourcesWritten(int count, long bytesSaved);
+
+        /**
+         * Called on the writer thread when a batch of resources could not be committed.
+         */
+        void onWriteError(Throwable error);
+
+        /**
+         * Called on the writer thread once everything queued before {@link #finish()} has been
+         * written. The writer doesn't touch the database anymore.
+         */
+        void onFinished();
+    }
+
+    private static final class Resource {
+        final String url;
+        final byte[] data;
+
+        Resource(String url, byte[] data) {
+            this.url = url;
+            this.data = data;
+        }
+    }
+
+    private static final Resource FINISH = new Resource(null, null);
+
+    private final SQLiteDatabase db;
+    private final int batchSize;
+    private final long batchIntervalMs;
+    private final Callback callback;
+    private final BlockingQueue<Resource> queue;
+
+    OfflineMapDatabaseWriter(SQLiteDatabase db, int batchSize, long batchIntervalMs, Callback callback) {
+        this.db = db;
+        this.batchSize = batchSize;
+        this.batchIntervalMs = batchIntervalMs;
+        this.callback = callback;
+        this.queue = new ArrayBlockingQueue<Resource>(batchSize * 2);
+    }
+
+    void start() {
+        Thread thread = new Thread(this, TAG);
+        thread.start();
+    }
+
+    /**
+     * Queues a downloaded resource, waiting for room in the queue if needed.
+     */
+    void put(String url, byte[] data) throws InterruptedException {
+        queue.put(new Resource(url, data));
+    }
+
+    /**
+     * Writes what has been queued so far, then stops the writer.
+     */
+    void finish() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(FINISH);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+        // Resources are updated in place, which keeps their rowid and tile key
+        SQLiteStatement statement = db.compileStatement("UPDATE "
+                + OfflineDatabaseHandler.TABLE_RESOURCES + " SET "
+                + OfflineDatabaseHandler.FIELD_RESOURCES_BLOB_ID + " = ?, "
+                + OfflineDatabaseHandler.FIELD_RESOURCES_STATUS + " = 200 WHERE "
+                + OfflineDatabaseHandler.FIELD_RESOURCES_URL + " = ?;");
+        OfflineMapBlobStore blobs = new OfflineMapBlobStore(db);
+        List<Resource> batch = new ArrayList<Resource>(batchSize);
+        long deadline = 0;
+        try {
+            while (true) {
+                long wait = batch.isEmpty() ? batchIntervalMs : deadline - SystemClock.uptimeMillis();
+                Resource resource = queue.poll(Math.max(wait, 0), TimeUnit.MILLISECONDS);
+                if (resource == FINISH) {
+                    commit(statement, blobs, batch);
+                    break;
+                }
+                if (resource != null) {
+                    if (batch.isEmpty()) {
+                        deadline = SystemClock.uptimeMillis() + batchIntervalMs;
+                    }
+                    batch.add(resource);
+                }
+                if (batch.size() >= batchSize
+                        || (!batch.isEmpty() && SystemClock.uptimeMillis() >= deadline)) {
+                    commit(statement, blobs, batch);
+                }
+            }
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Interrupted, " + batch.size() + " downloaded resources are not written.");
+        } finally {
+            statement.close();
+            blobs.close();
+        }
+        callback.onFinished();
+    }
+
+    private void commit(SQLiteStatement statement, OfflineMapBlobStore blobs, List<Resource> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long bytesSavedBefore = blobs.getBytesSaved();
+        boolean success = false;
+        db.beginTransaction();
+        try {
+            for (Resource resource : batch) {
+                statement.bindLong(1, blobs.put(resource.data));
+                statement.bindString(2, resource.url);
+                statement.execute();
+            }
+            OfflineMapBlobStore.addRecordedBytesSaved(db, blobs.getBytesSaved() - bytesSavedBefore);
+            db.setTransactionSuccessful();
+            success = true;
+        } catch (SQLException e) {
+            Log.e(TAG, "Error writing " + batch.size() + " downloaded resources", e);
+            callback.onWriteError(e);
+        } finally {
+            db.endTransaction();
+        }
+        if (success) {
+            callback.onResourcesWritten(batch.size(), blobs.getBytesSaved() - bytesSavedBefore);
+        }
+        batch.clear();
+    }
+}
@@ -4,12 +4,15 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.content.ContextWrapper;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.os.AsyncTask;
 import android.text.TextUtils;
 import android.util.Log;
 import com.mapbox.mapboxsdk.constants.MapboxConstants;
 import com.mapbox.mapboxsdk.geometry.CoordinateRegion;
+import com.mapbox.mapboxsdk.tileprovider.modules.ConfigurablePriorityThreadFactory;
 import com.mapbox.mapboxsdk.util.AppUtils;
 import com.mapbox.mapboxsdk.util.DataLoadingUtils;
 import com.mapbox.mapboxsdk.util.MapboxUtils;
@@ -27,6 +30,7 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Hashtable;
@@ -35,11 +39,25 @@ import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class OfflineMapDownloader implements MapboxConstants {
 
     private static final String TAG = "OfflineMapDownloader";
 
+    private static final int DOWNLOAD_CONCURRENCY = 8;
+
+    private static final int URL_PAGE_SIZE = 256;
+
+    private static final int URL_INSERT_CHUNK_SIZE = 1000;
+
+    private static final long URL_GENERATION_WAIT_MS = 250;
+
+    private static final String PARTIAL_SUFFIX = "-PARTIAL";
+
     private static OfflineMapDownloader offlineMapDownloader;
 
     private ArrayList<OfflineMapDownloaderListener> listeners;
@@ -70,85 +88,185 @@ public class OfflineMapDownloader implements MapboxConstants {
         MBXOfflineMapDownloaderStateAvailable
     }
 
-    private class OfflineMapDownloadTaskManager {
+    /**
+     * Downloads the resources of the offline map which haven't been downloaded yet with a fixed
+     * number of worker threads, and hands them to a single {@link OfflineMapDatabaseWriter} which
+     * commits them in batches. Workers stop taking urls once the downloader isn't running anymore.
+     */
+    private class OfflineMapDownloadTaskManager implements OfflineMapDatabaseWriter.Callback {
+
+        private final Iterator<String> itr;
+        private final OfflineMapURLGenerator generator;
+        private final int concurrentCount;
+        private final ExecutorService executor;
+        private final OfflineMapDatabaseWriter writer;
+        private final AtomicInteger activeWorkers = new AtomicInteger();
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private final int startResumeCount;
+
+        private final Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    String url;
+                    while (state == MBXOfflineMapDownloaderState.MBXOfflineMapDownloaderStateRunning
+                            && (url = nextURL()) != null) {
+                        byte[] data = downloadURL(url);
+                        if (data != null) {
+                            writer.put(url, data);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Log.w(TAG, "Download worker interrupted.");
+                } finally {
+                    workerFinished();
+                }
+            }
+        };
 
-        private Iterator<String> itr;
-        private int concurrentCount;
+        private final Runnable urlInserter = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sqliteInsertGeneratedURLs(generator);
+                } finally {
+                    workerFinished();
+                }
+            }
+        };
 
-        public OfflineMapDownloadTaskManager(Iterator<String> itr, int concurrentCount) {
+        /**
+         * @param generator Generator of the tile urls which are still to be inserted in the
+         *                  database while downloading, or null if they all are there already
+         */
+        public OfflineMapDownloadTaskManager(Iterator<String> itr, OfflineMapURLGenerator generator, int concurrentCount) {
             this.itr = itr;
+            this.generator = generator;
             this.concurrentCount = concurrentCount;
+            synchronized (stateLock) {
+                this.startResumeCount = resumeCount;
+            }
+            this.executor = Executors.newFixedThreadPool(generator != null ? concurrentCount + 1 : concurrentCount,
+                    new ConfigurablePriorityThreadFactory(Thread.NORM_PRIORITY, TAG));
+            this.writer = new OfflineMapDatabaseWriter(database(),
+                    OfflineMapDatabaseWriter.DEFAULT_BATCH_SIZE,
+                    OfflineMapDatabaseWriter.DEFAULT_BATCH_INTERVAL_MS, this);
         }
 
         public void start() {
+            writer.start();
+            activeWorkers.set(generator != null ? concurrentCount + 1 : concurrentCount);
+            if (generator != null) {
+                generatingURLs = true;
+                executor.execute(urlInserter);
+            }
             for (int i = 0; i < concurrentCount; i++) {
-                startDownloadTask();
+                executor.execute(worker);
             }
+            // Let the worker threads go away once the urls have run out
+            executor.shutdown();
         }
 
-        private void startDownloadTask() {
-            if (!itr.hasNext()) {
-                return;
+        private synchronized String nextURL() {
+            return itr.hasNext() ? itr.next() : null;
+        }
+
+        private void workerFinished() {
+            if (activeWorkers.decrementAndGet() == 0) {
+                writer.finish();
             }
-/*
-            if (!NetworkUtils.isNetworkAvailable(context)) {
-                Log.w(TAG, "Network is no longer available.");
-//                    [self notifyDelegateOfNetworkConnectivityError:error];
+        }
+
+        /**
+         * Waits until the workers have stopped and everything they downloaded has been written.
+         */
+        public void awaitFinished() {
+            try {
+                finished.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-*/
-            AsyncTask<String, Void, Void> task = new AsyncTask<String, Void, Void>() {
-                @Override
-                protected Void doInBackground(String... params) {
-                    HttpURLConnection conn = null;
-                    String url = params[0];
-                    try {
-                        conn = NetworkUtils.getHttpURLConnection(new URL(url));
-                        Log.d(TAG, "URL to download = " + conn.getURL().toString());
-                        conn.setConnectTimeout(60000);
-                        conn.connect();
-                        int rc = conn.getResponseCode();
-                        if (rc != HttpURLConnection.HTTP_OK) {
-                            String msg = String.format(MAPBOX_LOCALE, "HTTP Error connection.  Response Code = %d for url = %s", rc, conn.getURL().toString());
-                            Log.w(TAG, msg);
-                            notifyDelegateOfHTTPStatusError(rc, params[0]);
-                            throw new IOException(msg);
-                        }
+        }
+
+        private byte[] downloadURL(String url) {
+            HttpURLConnection conn = null;
+            // Connections are only closed on errors, the others go back to the shared pool
+            boolean reusable = false;
+            try {
+                conn = NetworkUtils.getHttpURLConnection(new URL(url));
+                Log.d(TAG, "URL to download = " + conn.getURL().toString());
+                conn.connect();
+                int rc = conn.getResponseCode();
+                if (rc != HttpURLConnection.HTTP_OK) {
+                    String msg = String.format(MAPBOX_LOCALE, "HTTP Error connection.  Response Code = %d for url = %s", rc, conn.getURL().toString());
+                    Log.w(TAG, msg);
+                    notifyDelegateOfHTTPStatusError(rc, url);
+                    return null;
+                }
 
-                        ByteArrayOutputStream bais = new ByteArrayOutputStream();
-                        InputStream is = null;
-                        try {
-                            is = conn.getInputStream();
-                            // Read 4K at a time
-                            byte[] byteChunk = new byte[4096];
-                            int n;
+                ByteArrayOutputStream bais = new ByteArrayOutputStream();
+                InputStream is = null;
+                try {
+                    is = conn.getInputStream();
+                    // Read 4K at a time
+                    byte[] byteChunk = new byte[4096];
+                    int n;
 
-                            while ((n = is.read(byteChunk)) > 0) {
-                                bais.write(byteChunk, 0, n);
-                            }
-                        } catch (IOException e) {
-                            Log.e(TAG, String.format(MAPBOX_LOCALE, "Failed while reading bytes from %s: %s", conn.getURL().toString(), e.getMessage()));
-                            e.printStackTrace();
-                        } finally {
-                            if (is != null) {
-                                is.close();
-                            }
-                            conn.disconnect();
-                        }
-                        sqliteSaveDownloadedData(bais.toByteArray(), url);
-                    } catch (IOException e) {
-                        Log.e(TAG, e.getMessage());
-                        e.printStackTrace();
-                    } finally {
-                        if (conn != null) {
-                            conn.disconnect();
-                        }
+                    while ((n = is.read(byteChunk)) > 0) {
+                        bais.write(byteChunk, 0, n);
                     }
+                    reusable = true;
+                } finally {
+                    if (is != null) {
+                        is.close();
+                    }
+                }
+                return bais.toByteArray();
+            } catch (IOException e) {
+                Log.e(TAG, String.format(MAPBOX_LOCALE, "Failed while downloading %s: %s", url, e.getMessage()));
+                return null;
+            } finally {
+                if (conn != null && !reusable) {
+                    conn.disconnect();
+                }
+            }
+        }
 
-                    startDownloadTask();
-                    return null;
+        @Override
+        public void onResourcesWritten(int count, long bytesSaved) {
+            totalFilesWritten += count;
+            totalBytesSaved += bytesSaved;
+            notifyDelegateOfProgress();
+            Log.d(TAG, "totalFilesWritten = " + totalFilesWritten + "; totalFilesExpectedToWrite = " + totalFilesExpectedToWrite);
+        }
+
+        @Override
+        public void onWriteError(Throwable error) {
+            notifyDelegateOfSqliteError(error);
+        }
+
+        @Override
+        public void onFinished() {
+            // If all the downloads are done, clean up and notify the delegate. Otherwise the
+            // missing urls are still marked as such in the database, for resume() to pick up.
+            if (totalFilesWritten >= totalFilesExpectedToWrite) {
+                finishUpDownloadProcess();
+            } else {
+                Log.w(TAG, String.format(MAPBOX_LOCALE, "Downloads stopped with %d of %d files written.", totalFilesWritten, totalFilesExpectedToWrite));
+                // Some downloads failed. Unless the job has been suspended, canceled or resumed
+                // since it started, suspend it so that resume() can retry the missing urls.
+                boolean suspended = false;
+                synchronized (stateLock) {
+                    if (state == MBXOfflineMapDownloaderState.MBXOfflineMapDownloaderStateRunning && resumeCount == startResumeCount) {
+                        state = MBXOfflineMapDownloaderState.MBXOfflineMapDownloaderStateSuspended;
+                        suspended = true;
+                    }
                 }
-            };
-            task.execute(itr.next());
+                if (suspended) {
+                    notifyDelegateOfStateChange();
+                }
+            }
+            finished.countDown();
         }
     }
 
@@ -160,9 +278,24 @@ public class OfflineMapDownloader implements MapboxConstants {
     private CoordinateRegion mapRegion;
     private int minimumZ;
     private int maximumZ;
-    private MBXOfflineMapDownloaderState state;
+    private volatile MBXOfflineMapDownloaderState state;
     private int totalFilesWritten;
     private int totalFilesExpectedToWrite;
+    private long totalBytesSaved;
+    private volatile OfflineMapDownloadTaskManager downloadTaskManager;
+
+    // Guards the state changes of cancel() and resume() against the ones of a finishing job
+    private final Object stateLock = new Object();
+    private int resumeCount;
+
+    // Runs resume() and cancel() in order, once the workers of the previous job have stopped
+    private final ExecutorService controlExecutor =
+            Executors.newSingleThreadExecutor(new ConfigurablePriorityThreadFactory(Thread.NORM_PRIORITY, TAG));
+
+    // Generates the tile urls still missing from the database, null once they have all been inserted
+    private volatile OfflineMapURLGenerator urlGenerator;
+    private volatile boolean generatingURLs;
+    private final Object urlGenerationLock = new Object();
 
 
     private ArrayList<OfflineMapDatabase> mutableOfflineMapDatabases;
@@ -186,11 +319,17 @@ public class OfflineMapDownloader implements MapboxConstants {
 
         listeners = new ArrayList<OfflineMapDownloaderListener>();
 
+        this.state = MBXOfflineMapDownloaderState.MBXOfflineMapDownloaderStateAvailable;
+
         mutableOfflineMapDatabases = new ArrayList<OfflineMapDatabase>();
         // Load OfflineMapDatabases from File System
         ContextWrapper cw = new ContextWrapper(context);
+        String partialMapID = null;
         for (String s : cw.databaseList()) {
-            if (!s.toLowerCase().contains("partial") && !s.toLowerCase().contains("journal")) {
+            if (s.endsWith(PARTIAL_SUFFIX)) {
+                // A download which was interrupted when the app went away
+                partialMapID = s.substring(0, s.length() - PARTIAL_SUFFIX.length());
+            } else if (!s.toLowerCase().contains("partial") && !s.toLowerCase().contains("journal")) {
                 // Setup Database Handler
                 OfflineDatabaseManager.getOfflineDatabaseManager(context).getOfflineDatabaseHandlerForMapId(s, true);
 
@@ -201,7 +340,46 @@ public class OfflineMapDownloader implements MapboxConstants {
             }
         }
 
-        this.state = MBXOfflineMapDownloaderState.MBXOfflineMapDownloaderStateAvailable;
+        if (partialMapID != null) {
+            recoverPartialDownload(partialMapID);
+        }
+    }
+
+    /**
+     * Picks up the download job of a partial database left on disk, in a suspended state so that
+     * it can be either resumed or canceled.
+     *
+     * @param mapId MapId the partial database was created for
+     */
+    private void recoverPartialDownload(String mapId) {
+        this.mapID = mapId;
+        String uniqueID = sqliteMetadataForName("uniqueID");
+        String includesMetadata = sqliteMetadataForName("includesMetadata");
+        String includesMarkers = sqliteMetadataForName("includesMarkers");
+        String imageQuality = sqliteMetadataForName("imageQuality");
+        if (TextUtils.isEmpty(sqliteMetadataForName("mapID")) || TextUtils.isEmpty(imageQuality)) {
+            // The app went away before the database was populated, there's nothing to resume
+            Log.w(TAG, "Discarding partial offline map database without metadata for mapId = " + mapId);
+            discardPartialDatabase();
+            this.mapID = null;
+            return;
+        }
+
+        this.uniqueID = uniqueID;
+        this.includesMetadata = "YES".equalsIgnoreCase(includesMetadata);
+        this.includesMarkers = "YES".equalsIgnoreCase(includesMarkers);
+        this.imageQuality = RasterImageQuality.getEnumForValue(Integer.parseInt(imageQuality));
+        if (!"YES".equalsIgnoreCase(sqliteMetadataForName("urlsGenerated")) && !TextUtils.isEmpty(sqliteMetadataForName("maximumZ"))) {
+            // The app went away while the tile urls were being inserted
+            this.urlGenerator = new OfflineMapURLGenerator(
+                    Double.parseDouble(sqliteMetadataForName("minLat")), Double.parseDouble(sqliteMetadataForName("maxLat")),
+                    Double.parseDouble(sqliteMetadataForName("minLon")), Double.parseDouble(sqliteMetadataForName("maxLon")),
+                    Integer.parseInt(sqliteMetadataForName("minimumZ")), Integer.parseInt(sqliteMetadataForName("maximumZ")));
+        }
+        sqliteQueryWrittenAndExpectedCountsWithError();
+        includeURLsToBeGeneratedInExpectedCount();
+        this.state = MBXOfflineMapDownloaderState.MBXOfflineMapDownloaderStateSuspended;
+        Log.i(TAG, String.format(MAPBOX_LOCALE, "Recovered partial download of '%s' with %d of %d files written.", mapId, this.totalFilesWritten, this.totalFilesExpectedToWrite));
     }
 
     public static OfflineMapDownloader getOfflineMapDownloader(Context context) {
@@ -219,6 +397,26 @@ public class OfflineMapDownloader implements MapboxConstants {
         return listeners.remove(listener);
     }
 
+    public MBXOfflineMapDownloaderState getState() {
+        return state;
+    }
+
+    public int getTotalFilesWritten() {
+        return totalFilesWritten;
+    }
+
+    public int getTotalFilesExpectedToWrite() {
+        return totalFilesExpectedToWrite;
+    }
+
+    /**
+     * @return the number of bytes of the current job which didn't have to be stored because
+     * identical resources were already downloaded
+     */
+    public long getTotalBytesSaved() {
+        return totalBytesSaved;
+    }
+
 /*
     Delegate Notifications
 */
@@ -237,7 +435,7 @@ public class OfflineMapDownloader implements MapboxConstants {
 
     public void notifyDelegateOfProgress() {
         for (OfflineMapDownloaderListener listener : listeners) {
-            listener.progressUpdate(this.totalFilesWritten, this.totalFilesExpectedToWrite);
+            listener.progressUpdate(this.totalFilesWritten, this.totalFilesExpectedToWrite, this.totalBytesSaved);
         }
     }
 
@@ -334,24 +532,27 @@ public class OfflineMapDownloader implements MapboxConstants {
 
         // Update expected files numbers (totalFilesExpectedToWrite and totalFilesWritten)
         sqliteQueryWrittenAndExpectedCountsWithError();
+        includeURLsToBeGeneratedInExpectedCount();
         Log.d(TAG, String.format(MAPBOX_LOCALE, "totalFilesExpectedToWrite = %d, totalFilesWritten = %d", this.totalFilesExpectedToWrite, this.totalFilesWritten));
 
 //        [_sqliteQueue addOperationWithBlock:^{
-        // Get the actual URLs
-        Iterator<String> urlIter = sqliteReadOfflineMapURLsToBeDownloadedLimit(-1);
-        if (urlIter == null) {
-            // The operation failed for one reason or another (e.g. we're on the main thread).
+        if (AppUtils.runningOnMainThread()) {
+            Log.w(TAG, "startDownloading() is running on main thread.  Returning.");
             closeDatabase();
             return;
         }
 
-        if (!urlIter.hasNext()) {
+        if (this.totalFilesWritten >= this.totalFilesExpectedToWrite) {
             // All files are downloaded, but hasn't been persisted yet.
             finishUpDownloadProcess();
             return;
         }
 
-        OfflineMapDownloadTaskManager manager = new OfflineMapDownloadTaskManager(urlIter, 8);
+        // Only the urls which haven't been written yet, read from the database a page at a time,
+        // while the tile urls which aren't in the database yet are inserted alongside
+        Iterator<String> urlIter = sqliteReadOfflineMapURLsToBeDownloadedLimit(-1);
+        OfflineMapDownloadTaskManager manager = new OfflineMapDownloadTaskManager(urlIter, urlGenerator, DOWNLOAD_CONCURRENCY);
+        downloadTaskManager = manager;
         manager.start();
     }
 
@@ -383,14 +584,22 @@ public class OfflineMapDownloader implements MapboxConstants {
         db.beginTransaction();
 
 //      String query2 = "INSERT INTO data(value) VALUES(?);";
-        ContentValues values = new ContentValues();
-        values.put(OfflineDatabaseHandler.FIELD_RESOURCES_URL, url);
-        values.put(OfflineDatabaseHandler.FIELD_RESOURCES_DATA, data);
-        values.put(OfflineDatabaseHandler.FIELD_RESOURCES_STATUS, 200);
-        db.replace(OfflineDatabaseHandler.TABLE_RESOURCES, null, values);
-
-        db.setTransactionSuccessful();
-        db.endTransaction();
+        // Identical resources share their data, see OfflineMapBlobStore
+        OfflineMapBlobStore blobs = new OfflineMapBlobStore(db);
+        try {
+            // Update in place, so that the tile key of the url is kept
+            ContentValues values = new ContentValues();
+            values.put(OfflineDatabaseHandler.FIELD_RESOURCES_BLOB_ID, blobs.put(data));
+            values.put(OfflineDatabaseHandler.FIELD_RESOURCES_STATUS, 200);
+            db.update(OfflineDatabaseHandler.TABLE_RESOURCES, values, OfflineDatabaseHandler.FIELD_RESOURCES_URL + "=?", new String[] { url });
+            OfflineMapBlobStore.addRecordedBytesSaved(db, blobs.getBytesSaved());
+
+            db.setTransactionSuccessful();
+        } finally {
+            blobs.close();
+            db.endTransaction();
+        }
+        this.totalBytesSaved += blobs.getBytesSaved();
 
 /*
         if(error)
@@ -449,56 +658,173 @@ public class OfflineMapDownloader implements MapboxConstants {
         }
     }
 
-    public Iterator<String> sqliteReadOfflineMapURLsToBeDownloadedLimit(int limit) {
+    /**
+     * Reads the urls which haven't been downloaded yet. The urls are read lazily, a page at a time
+     * and in rowid order, so that rows rewritten while iterating don't shift the pages and the
+     * whole list is never held in memory.
+     *
+     * @param limit maximum number of urls to read, or -1 to read all of them
+     */
+    public Iterator<String> sqliteReadOfflineMapURLsToBeDownloadedLimit(final int limit) {
         if (AppUtils.runningOnMainThread()) {
             Log.w(TAG, "Attempting to run sqliteReadOfflineMapURLsToBeDownloadedLimit() on main thread.  Returning.");
             return null;
         }
 
-        // Read up to limit undownloaded urls from the offline map database
-        //
-        String query = String.format(MAPBOX_LOCALE, "SELECT %s FROM %s WHERE %s IS NULL", OfflineDatabaseHandler.FIELD_RESOURCES_URL, OfflineDatabaseHandler.TABLE_RESOURCES, OfflineDatabaseHandler.FIELD_RESOURCES_STATUS);
-        if (limit > 0) {
-            query = query + String.format(MAPBOX_LOCALE, " LIMIT %d", limit);
-        }
-        query = query + ";";
-
-        // Open the database
-        final SQLiteDatabase db = database();
-        final Cursor cursor = db.rawQuery(query, null);
-        final boolean hasFirst = cursor.moveToNext();
-        if (!hasFirst) {
-            cursor.close();
-        }
+        final String query = String.format(MAPBOX_LOCALE, "SELECT rowid, %s FROM %s WHERE %s IS NULL AND rowid > ? ORDER BY rowid LIMIT ?;",
+                OfflineDatabaseHandler.FIELD_RESOURCES_URL, OfflineDatabaseHandler.TABLE_RESOURCES, OfflineDatabaseHandler.FIELD_RESOURCES_STATUS);
 
         return new Iterator<String>() {
-            private boolean hasNext = hasFirst;
+            private final ArrayDeque<String> page = new ArrayDeque<String>();
+            private long lastRowId = 0;
+            private int remaining = limit > 0 ? limit : Integer.MAX_VALUE;
+            private boolean exhausted = false;
+
             @Override
             public boolean hasNext() {
-                return hasNext;
+                if (page.isEmpty() && !exhausted) {
+                    readPage();
+                }
+                return !page.isEmpty();
             }
 
             @Override
             public String next() {
-                if (!hasNext) {
+                if (!hasNext()) {
                     throw new NoSuchElementException();
                 }
-
-                String result = cursor.getString(0);
-                hasNext = cursor.moveToNext();
-                if (!hasNext) {
-                    cursor.close();
-                }
-                return result;
+                remaining--;
+                return page.poll();
             }
 
             @Override
             public void remove() {
                 throw new UnsupportedOperationException();
             }
+
+            private void readPage() {
+                int pageSize = Math.min(remaining, URL_PAGE_SIZE);
+                if (pageSize <= 0) {
+                    exhausted = true;
+                    return;
+                }
+                while (true) {
+                    // Checked before reading, so that the last urls inserted are part of the read
+                    boolean generating = generatingURLs;
+                    Cursor cursor = database().rawQuery(query, new String[] { String.valueOf(lastRowId), String.valueOf(pageSize) });
+                    try {
+                        while (cursor.moveToNext()) {
+                            lastRowId = cursor.getLong(0);
+                            page.add(cursor.getString(1));
+                        }
+                        exhausted = !generating && cursor.getCount() < pageSize;
+                    } finally {
+                        cursor.close();
+                    }
+                    if (!page.isEmpty() || !generating
+                            || state != MBXOfflineMapDownloaderState.MBXOfflineMapDownloaderStateRunning
+                            || !awaitGeneratedURLs()) {
+                        return;
+                    }
+                }
+            }
         };
     }
 
+    private String sqliteMetadataForName(String name) {
+        String query = "SELECT " + OfflineDatabaseHandler.FIELD_METADATA_VALUE + " FROM " + OfflineDatabaseHandler.TABLE_METADATA + " WHERE " + OfflineDatabaseHandler.FIELD_METADATA_NAME + "=?;";
+        Cursor cursor = database().rawQuery(query, new String[] { name });
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void sqliteSetMetadata(String name, String value) {
+        ContentValues cv = new ContentValues();
+        cv.put(OfflineDatabaseHandler.FIELD_METADATA_NAME, name);
+        cv.put(OfflineDatabaseHandler.FIELD_METADATA_VALUE, value);
+        database().replace(OfflineDatabaseHandler.TABLE_METADATA, null, cv);
+    }
+
+    /**
+     * Inserts the tile urls of the generator in chunks, each in its own transaction, so that the
+     * downloads can start on the first urls right away. Urls already in the database are skipped,
+     * which lets an interrupted insertion start over from the beginning.
+     */
+    private void sqliteInsertGeneratedURLs(OfflineMapURLGenerator generator) {
+        SQLiteDatabase db = database();
+        SQLiteStatement insert = db.compileStatement("INSERT OR IGNORE INTO " + OfflineDatabaseHandler.TABLE_RESOURCES
+                + " (" + OfflineDatabaseHandler.FIELD_RESOURCES_URL + ", " + OfflineDatabaseHandler.FIELD_RESOURCES_TILE_KEY + ") VALUES (?, ?);");
+        OfflineMapURLGenerator.URLIterator urls = generator.iterator(context, mapID, imageQuality);
+        try {
+            while (urls.hasNext() && state == MBXOfflineMapDownloaderState.MBXOfflineMapDownloaderStateRunning) {
+                db.beginTransaction();
+                try {
+                    for (int i = 0; i < URL_INSERT_CHUNK_SIZE && urls.hasNext(); i++) {
+                        insert.bindString(1, urls.next());
+                        insert.bindLong(2, urls.getTileKey());
+                        insert.executeInsert();
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                signalGeneratedURLs();
+            }
+            if (!urls.hasNext()) {
+                sqliteSetMetadata("urlsGenerated", "YES");
+                urlGenerator = null;
+            }
+        } catch (SQLException e) {
+            Log.e(TAG, "Error inserting generated urls", e);
+            notifyDelegateOfSqliteError(e);
+        } finally {
+            insert.close();
+            generatingURLs = false;
+            signalGeneratedURLs();
+        }
+    }
+
+    private void signalGeneratedURLs() {
+        synchronized (urlGenerationLock) {
+            urlGenerationLock.notifyAll();
+        }
+    }
+
+    /**
+     * Waits a little for more urls to be inserted.
+     *
+     * @return false if the wait was interrupted
+     */
+    private boolean awaitGeneratedURLs() {
+        synchronized (urlGenerationLock) {
+            if (generatingURLs) {
+                try {
+                    urlGenerationLock.wait(URL_GENERATION_WAIT_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * While tile urls are still to be inserted, the database holds fewer urls than the job has.
+     */
+    private void includeURLsToBeGeneratedInExpectedCount() {
+        if (urlGenerator == null) {
+            return;
+        }
+        String expected = sqliteMetadataForName("expectedFileCount");
+        if (!TextUtils.isEmpty(expected)) {
+            this.totalFilesExpectedToWrite = Math.max(this.totalFilesExpectedToWrite, Integer.parseInt(expected));
+        }
+    }
+
     public boolean sqliteQueryWrittenAndExpectedCountsWithError() {
         // NOTE: Unlike most of the sqlite code, this method is written with the expectation that it can and will be called on the main
         //       thread as part of init. This is also meant to be used in other contexts throught the normal serial operation queue.
@@ -517,6 +843,8 @@ public class OfflineMapDownloader implements MapboxConstants {
         this.totalFilesExpectedToWrite = cursor.getInt(0);
         this.totalFilesWritten = cursor.getInt(1);
         cursor.close();
+        // Recorded while downloading, as scanning the blobs of a large region would block init
+        this.totalBytesSaved = OfflineMapBlobStore.recordedBytesSaved(db);
         success = true;
 
         return success;
@@ -540,29 +868,33 @@ public class OfflineMapDownloader implements MapboxConstants {
         [query appendString:@"CREATE TABLE data (id INTEGER PRIMARY KEY, value BLOB);\n"];
         [query appendString:@"CREATE TABLE resources (url TEXT UNIQUE, status TEXT, id INTEGER REFERENCES data);\n"];
 */
+        // The tile urls aren't part of it: they are inserted in chunks while downloading, see
+        // sqliteInsertGeneratedURLs(). The region is kept to generate them again on resume.
+        //
+        int expectedFileCount = (int) Math.min((long) urlStrings.size() + generator.getTileCount(), Integer.MAX_VALUE);
         SQLiteDatabase db = database();
         db.beginTransaction();
         for (String key : metadata.keySet()) {
-            ContentValues cv = new ContentValues();
-            cv.put(OfflineDatabaseHandler.FIELD_METADATA_NAME, key);
-            cv.put(OfflineDatabaseHandler.FIELD_METADATA_VALUE, metadata.get(key));
-            db.replace(OfflineDatabaseHandler.TABLE_METADATA, null, cv);
+            sqliteSetMetadata(key, metadata.get(key));
         }
+        sqliteSetMetadata("minLat", String.valueOf(generator.getMinLat()));
+        sqliteSetMetadata("maxLat", String.valueOf(generator.getMaxLat()));
+        sqliteSetMetadata("minLon", String.valueOf(generator.getMinLon()));
+        sqliteSetMetadata("maxLon", String.valueOf(generator.getMaxLon()));
+        sqliteSetMetadata("minimumZ", String.valueOf(generator.getMinimumZoom()));
+        sqliteSetMetadata("maximumZ", String.valueOf(generator.getMaximumZoom()));
+        sqliteSetMetadata("expectedFileCount", String.valueOf(expectedFileCount));
         for (String url : urlStrings) {
             ContentValues cv = new ContentValues();
             cv.put(OfflineDatabaseHandler.FIELD_RESOURCES_URL, url);
             db.insert(OfflineDatabaseHandler.TABLE_RESOURCES, null, cv);
         }
-        for (int generatedIndex = 0; generatedIndex < generator.getURLCount(); generatedIndex++) {
-            ContentValues cv = new ContentValues();
-            String url = generator.getURLForIndex(context, mapID, imageQuality, generatedIndex);
-            cv.put(OfflineDatabaseHandler.FIELD_RESOURCES_URL, url);
-            db.insert(OfflineDatabaseHandler.TABLE_RESOURCES, null, cv);
-        }
         db.setTransactionSuccessful();
         db.endTransaction();
-        this.totalFilesExpectedToWrite = urlStrings.size() + generator.getURLCount();
+        this.urlGenerator = generator;
+        this.totalFilesExpectedToWrite = expectedFileCount;
         this.totalFilesWritten = 0;
+        this.totalBytesSaved = 0;
         success = true;
 /*
         // Open the database read-write and multi-threaded. The slightly obscure c-style variable names here and below are
@@ -669,7 +1001,8 @@ public class OfflineMapDownloader implements MapboxConstants {
         double minLon = this.mapRegion.getCenter().getLongitude() - (this.mapRegion.getSpan().getLongitudeSpan() / 2.0);
         double maxLon = minLon + this.mapRegion.getSpan().getLongitudeSpan();
         final OfflineMapURLGenerator generator = new OfflineMapURLGenerator(minLat, maxLat, minLon, maxLon, minimumZ, maximumZ);
-        Log.i(TAG, "Number of URLs so far: " + (urls.size() + generator.getURLCount()));
+        Log.i(TAG, "Number of URLs so far: " + (urls.size() + generator.getTileCount()));
+        Log.i(TAG, "Estimated size of the tiles: " + generator.getEstimatedByteSize(imageQuality) + " bytes");
 
         // Determine if we need to add marker icon urls (i.e. parse markers.geojson/features.json), and if so, add them
         //
@@ -696,7 +1029,6 @@ public class OfflineMapDownloader implements MapboxConstants {
                 protected Void doInBackground(Void... params) {
                     try {
                         HttpURLConnection conn = NetworkUtils.getHttpURLConnection(new URL(geojson));
-                        conn.setConnectTimeout(60000);
                         conn.connect();
                         if (conn.getResponseCode() != HttpURLConnection.HTTP_OK) {
                             throw new IOException();
@@ -860,69 +1192,86 @@ public class OfflineMapDownloader implements MapboxConstants {
 
     public void cancel() {
         Log.d(TAG, "cancel called with state = " + state);
-/*
-        if (state != MBXOfflineMapDownloaderState.MBXOfflineMapDownloaderStateCanceling && state != MBXOfflineMapDownloaderState.MBXOfflineMapDownloaderStateAvailable) {
+        synchronized (stateLock) {
+            if (state == MBXOfflineMapDownloaderState.MBXOfflineMapDownloaderStateCanceling || state == MBXOfflineMapDownloaderState.MBXOfflineMapDownloaderStateAvailable) {
+                return;
+            }
+
             // Stop a download job and discard the associated files
             //
-            [_backgroundWorkQueue addOperationWithBlock:^{
-            _state = MBXOfflineMapDownloaderStateCanceling;
-            [self notifyDelegateOfStateChange];
-
-            [_dataSession invalidateAndCancel];
-            [_sqliteQueue cancelAllOperations];
-
-            [_sqliteQueue addOperationWithBlock:^{
-                [self setUpNewDataSession];
-                _totalFilesWritten = 0;
-                _totalFilesExpectedToWrite = 0;
-                [[NSFileManager defaultManager] removeItemAtPath:_partialDatabasePath error:nil];
-
-                if([_delegate respondsToSelector:@selector(offlineMapDownloader:didCompleteOfflineMapDatabase:withError:)])
-                {
-                    NSError *canceled = [NSError mbx_errorWithCode:MBXMapKitErrorCodeDownloadingCanceled reason:@"The download job was canceled" description:@"Download canceled"];
-                    dispatch_async(dispatch_get_main_queue(), ^(void){
-                            [_delegate offlineMapDownloader:self didCompleteOfflineMapDatabase:nil withError:canceled];
-                    });
-                }
+            state = MBXOfflineMapDownloaderState.MBXOfflineMapDownloaderStateCanceling;
+        }
+        notifyDelegateOfStateChange();
 
-                _state = MBXOfflineMapDownloaderStateAvailable;
-                [self notifyDelegateOfStateChange];
-            }];
+        controlExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                awaitDownloadTaskManager();
+                discardPartialDatabase();
 
+                state = MBXOfflineMapDownloaderState.MBXOfflineMapDownloaderStateAvailable;
+                notifyDelegateOfStateChange();
             }
-        }
-*/
+        });
     }
 
     public void resume() {
-        if (state != MBXOfflineMapDownloaderState.MBXOfflineMapDownloaderStateSuspended) {
-            return;
+        synchronized (stateLock) {
+            if (state != MBXOfflineMapDownloaderState.MBXOfflineMapDownloaderStateSuspended) {
+                return;
+            }
+
+            // Resume a previously suspended download job. Only the urls which aren't marked as
+            // written in the partial database are downloaded again.
+            //
+            state = MBXOfflineMapDownloaderState.MBXOfflineMapDownloaderStateRunning;
+            resumeCount++;
         }
-/*
-        // Resume a previously suspended download job
-        //
-        [_backgroundWorkQueue addOperationWithBlock:^{
-            _state = MBXOfflineMapDownloaderStateRunning;
-            [self startDownloading];
-            [self notifyDelegateOfStateChange];
-        }];
-*/
+        notifyDelegateOfStateChange();
+
+        controlExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                awaitDownloadTaskManager();
+                if (state == MBXOfflineMapDownloaderState.MBXOfflineMapDownloaderStateRunning) {
+                    startDownloading();
+                }
+            }
+        });
     }
 
     public void suspend() {
         Log.d(TAG, "suspend called with state = " + state);
-/*
         if (state == MBXOfflineMapDownloaderState.MBXOfflineMapDownloaderStateRunning) {
-            // Stop a download job, preserving the necessary state to resume later
+            // Stop a download job, preserving the necessary state to resume later. The workers stop
+            // taking new urls, and what they have downloaded already is still written.
             //
-            [_backgroundWorkQueue addOperationWithBlock:^{
-                [_sqliteQueue cancelAllOperations];
-                _state = MBXOfflineMapDownloaderStateSuspended;
-                _activeDataSessionTasks = 0;
-                [self notifyDelegateOfStateChange];
-            }];
+            state = MBXOfflineMapDownloaderState.MBXOfflineMapDownloaderStateSuspended;
+            notifyDelegateOfStateChange();
         }
-*/
+    }
+
+    /**
+     * Waits for the workers of the previous download job, if any, to stop.
+     */
+    private void awaitDownloadTaskManager() {
+        OfflineMapDownloadTaskManager manager = downloadTaskManager;
+        if (manager != null) {
+            manager.awaitFinished();
+            downloadTaskManager = null;
+        }
+    }
+
+    private void discardPartialDatabase() {
+        String dbPath = database().getPath();
+        closeDatabase();
+        boolean result = context.deleteDatabase(new File(dbPath).getName());
+        Log.i(TAG, "Result of removing partial database file '" + dbPath + "' = " + result);
+
+        this.totalFilesWritten = 0;
+        this.totalFilesExpectedToWrite = 0;
+        this.totalBytesSaved = 0;
+        this.urlGenerator = null;
     }
 
 /*
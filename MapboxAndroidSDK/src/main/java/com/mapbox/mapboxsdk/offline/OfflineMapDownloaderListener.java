@@ -4,7 +4,11 @@ public interface OfflineMapDownloaderListener {
 
     public void stateChanged(OfflineMapDownloader.MBXOfflineMapDownloaderState newState);
     public void initialCountOfFiles(Integer numberOfFiles);
-    public void progressUpdate(Integer numberOfFilesWritten, Integer numberOfFilesExcepted);
+    /**
+     * @param bytesSaved number of bytes which didn't have to be stored so far, because identical
+     *                   files had already been downloaded for the region
+     */
+    public void progressUpdate(Integer numberOfFilesWritten, Integer numberOfFilesExcepted, Long bytesSaved);
     public void networkConnectivityError(Throwable error);
     public void sqlLiteError(Throwable error);
     public void httpStatusError(Throwable error);
@@ -0,0 +1,471 @@
+package com.mapbox.mapboxsdk.offline;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
+import android.util.Log;
+import com.mapbox.mapboxsdk.constants.MapboxConstants;
+import com.mapbox.mapboxsdk.tileprovider.modules.ConfigurablePriorityThreadFactory;
+import com.mapbox.mapboxsdk.util.MapboxUtils;
+import java.io.File;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Converts offline map databases to MBTiles files, and back, so that a downloaded region can be
+ * shared between devices or served by an MBTiles server.
+ * <p/>
+ * Conversions run on background threads: one thread reads the tiles of the source database while
+ * another one inserts them into the target database, in batches. Exported MBTiles files store
+ * identical tiles, such as ocean or empty tiles, only once.
+ */
+public class OfflineMapMBTilesConverter implements MapboxConstants {
+
+    private static final String TAG = "MBTilesConverter";
+
+    private static final int PAGE_SIZE = 256;
+    private static final int BATCH_SIZE = 500;
+    private static final int QUEUE_SIZE = 256;
+
+    // Imports are written to a database of their own, which OfflineMapDownloader doesn't list, and
+    // only take the name of the map once complete
+    private static final String IMPORT_SUFFIX = "-partial-import";
+
+    // Downloaded resources have their data in a shared blob, or in their own row if the database predates blobs
+    private static final String HAS_DATA = "(r." + OfflineDatabaseHandler.FIELD_RESOURCES_DATA + " IS NOT NULL OR r."
+            + OfflineDatabaseHandler.FIELD_RESOURCES_BLOB_ID + " IS NOT NULL)";
+
+    /**
+     * Receives the outcome of a conversion, on the thread the conversion ran on.
+     *
+     * @param <T> the type of the converted database
+     */
+    public interface ConversionListener<T> {
+        void conversionProgress(int tilesCopied, int tilesTotal);
+
+        void conversionCompleted(T result);
+
+        void conversionFailed(Throwable error);
+    }
+
+    private static final class Tile {
+        final int z;
+        final int x;
+        final int y;
+        final byte[] data;
+        final String id;
+
+        Tile(int z, int x, int y, byte[] data, String id) {
+            this.z = z;
+            this.x = x;
+            this.y = y;
+            this.data = data;
+            this.id = id;
+        }
+    }
+
+    private static final Tile END = new Tile(0, 0, 0, null, null);
+
+    private interface TileReader {
+        void read(BlockingQueue<Tile> queue) throws InterruptedException;
+    }
+
+    private interface TileInserter {
+        void insert(Tile tile);
+    }
+
+    private final Context context;
+    private final ExecutorService executor =
+            Executors.newCachedThreadPool(new ConfigurablePriorityThreadFactory(Thread.NORM_PRIORITY, TAG));
+
+    public OfflineMapMBTilesConverter(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Writes the tiles of an offline map database to a new MBTiles file, replacing the file if it
+     * exists.
+     */
+    public void exportToMBTiles(final OfflineMapDatabase offlineMapDatabase, final File mbtiles, final ConversionListener<File> listener) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    listener.conversionCompleted(export(offlineMapDatabase, mbtiles, listener));
+                } catch (Exception e) {
+                    Log.e(TAG, "Error exporting " + offlineMapDatabase.getMapID() + " to " + mbtiles, e);
+                    listener.conversionFailed(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates an offline map database for mapID holding the tiles of an MBTiles file.
+     */
+    public void importFromMBTiles(final File mbtiles, final String mapID, final ConversionListener<OfflineMapDatabase> listener) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    listener.conversionCompleted(importTiles(mbtiles, mapID, listener));
+                } catch (Exception e) {
+                    Log.e(TAG, "Error importing " + mbtiles + " as " + mapID, e);
+                    listener.conversionFailed(e);
+                }
+            }
+        });
+    }
+
+    private File export(OfflineMapDatabase offlineMapDatabase, File mbtiles, ConversionListener<?> listener) throws Exception {
+        if (mbtiles.exists() && !mbtiles.delete()) {
+            throw new IllegalStateException("Can't replace " + mbtiles);
+        }
+        final SQLiteDatabase source = SQLiteDatabase.openDatabase(offlineMapDatabase.getPath(), null,
+                SQLiteDatabase.NO_LOCALIZED_COLLATORS | SQLiteDatabase.OPEN_READONLY);
+        final SQLiteDatabase target = SQLiteDatabase.openOrCreateDatabase(mbtiles, null);
+        try {
+            int total = (int) DatabaseUtils.longForQuery(source, "SELECT COUNT(*) FROM " + OfflineDatabaseHandler.TABLE_RESOURCES + " r WHERE r."
+                    + OfflineDatabaseHandler.FIELD_RESOURCES_TILE_KEY + " IS NOT NULL AND " + HAS_DATA + ";", null);
+
+            target.beginTransaction();
+            try {
+                target.execSQL("CREATE TABLE metadata (name TEXT, value TEXT);");
+                target.execSQL("CREATE UNIQUE INDEX name ON metadata (name);");
+                target.execSQL("CREATE TABLE map (zoom_level INTEGER, tile_column INTEGER, tile_row INTEGER, tile_id TEXT);");
+                target.execSQL("CREATE UNIQUE INDEX map_index ON map (zoom_level, tile_column, tile_row);");
+                target.execSQL("CREATE TABLE images (tile_data BLOB, tile_id TEXT);");
+                target.execSQL("CREATE UNIQUE INDEX images_id ON images (tile_id);");
+                // Readers of the MBTiles format only know about the tiles view
+                target.execSQL("CREATE VIEW tiles AS SELECT map.zoom_level AS zoom_level, map.tile_column AS tile_column,"
+                        + " map.tile_row AS tile_row, images.tile_data AS tile_data FROM map JOIN images ON images.tile_id = map.tile_id;");
+                writeMBTilesMetadata(source, target, offlineMapDatabase);
+                target.setTransactionSuccessful();
+            } finally {
+                target.endTransaction();
+            }
+
+            final SQLiteStatement insertImage = target.compileStatement("INSERT OR IGNORE INTO images (tile_data, tile_id) VALUES (?, ?);");
+            final SQLiteStatement insertMap = target.compileStatement("INSERT OR REPLACE INTO map (zoom_level, tile_column, tile_row, tile_id) VALUES (?, ?, ?, ?);");
+            final int[] duplicates = { 0 };
+            try {
+                copyTiles(new TileReader() {
+                    @Override
+                    public void read(BlockingQueue<Tile> queue) throws InterruptedException {
+                        readOfflineMapTiles(source, queue);
+                    }
+                }, target, new TileInserter() {
+                    @Override
+                    public void insert(Tile tile) {
+                        insertImage.bindBlob(1, tile.data);
+                        insertImage.bindString(2, tile.id);
+                        if (insertImage.executeInsert() == -1) {
+                            duplicates[0]++;
+                        }
+                        insertMap.bindLong(1, tile.z);
+                        insertMap.bindLong(2, tile.x);
+                        // MBTiles rows count from the bottom of the map
+                        insertMap.bindLong(3, (1L << tile.z) - 1 - tile.y);
+                        insertMap.bindString(4, tile.id);
+                        insertMap.executeInsert();
+                    }
+                }, total, listener);
+            } finally {
+                insertImage.close();
+                insertMap.close();
+            }
+            Log.i(TAG, String.format(MAPBOX_LOCALE, "Exported %d tiles to %s, %d of them stored once for identical data.", total, mbtiles, duplicates[0]));
+            return mbtiles;
+        } finally {
+            target.close();
+            source.close();
+        }
+    }
+
+    private void writeMBTilesMetadata(SQLiteDatabase source, SQLiteDatabase target, OfflineMapDatabase offlineMapDatabase) {
+        RasterImageQuality imageQuality = offlineMapDatabase.getImageQuality();
+        putMetadata(target, "name", offlineMapDatabase.getMapID());
+        putMetadata(target, "type", "baselayer");
+        putMetadata(target, "version", "1.0");
+        putMetadata(target, "description", "Offline map " + offlineMapDatabase.getMapID());
+        putMetadata(target, "format", isJPEG(imageQuality) ? "jpg" : "png");
+
+        Cursor cursor = source.rawQuery("SELECT MIN(" + OfflineDatabaseHandler.FIELD_RESOURCES_TILE_KEY + "), MAX("
+                + OfflineDatabaseHandler.FIELD_RESOURCES_TILE_KEY + ") FROM " + OfflineDatabaseHandler.TABLE_RESOURCES + ";", null);
+        try {
+            if (cursor.moveToFirst() && !cursor.isNull(0)) {
+                // The zoom level is in the high bits of the tile keys
+                putMetadata(target, "minzoom", String.valueOf(cursor.getLong(0) >>> 44));
+                putMetadata(target, "maxzoom", String.valueOf(cursor.getLong(1) >>> 44));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        String minLat = offlineMapDatabase.sqliteMetadataForName("minLat");
+        String maxLat = offlineMapDatabase.sqliteMetadataForName("maxLat");
+        String minLon = offlineMapDatabase.sqliteMetadataForName("minLon");
+        String maxLon = offlineMapDatabase.sqliteMetadataForName("maxLon");
+        if (!TextUtils.isEmpty(minLat) && !TextUtils.isEmpty(maxLat) && !TextUtils.isEmpty(minLon) && !TextUtils.isEmpty(maxLon)) {
+            putMetadata(target, "bounds", minLon + "," + minLat + "," + maxLon + "," + maxLat);
+        }
+    }
+
+    private static void putMetadata(SQLiteDatabase db, String name, String value) {
+        ContentValues cv = new ContentValues();
+        cv.put("name", name);
+        cv.put("value", value);
+        db.replace("metadata", null, cv);
+    }
+
+    private OfflineMapDatabase importTiles(File mbtiles, final String mapID, ConversionListener<?> listener) throws Exception {
+        String dbName = mapID.toLowerCase();
+        if (context.getDatabasePath(dbName).exists()) {
+            OfflineDatabaseHandler handler = OfflineDatabaseManager.getOfflineDatabaseManager(context).getOfflineDatabaseHandlerForMapId(mapID, true);
+            if (DatabaseUtils.longForQuery(handler.getReadableDatabase(), "SELECT COUNT(*) FROM " + OfflineDatabaseHandler.TABLE_METADATA + ";", null) > 0) {
+                throw new IllegalStateException("An offline map database already exists for mapID " + mapID);
+            }
+            // An empty database, as opening a handler for mapID creates
+            handler.close();
+            context.deleteDatabase(dbName);
+        }
+        // Left behind by an import which didn't complete
+        String importName = dbName + IMPORT_SUFFIX;
+        context.deleteDatabase(importName);
+
+        final SQLiteDatabase source = SQLiteDatabase.openDatabase(mbtiles.getAbsolutePath(), null,
+                SQLiteDatabase.NO_LOCALIZED_COLLATORS | SQLiteDatabase.OPEN_READONLY);
+        final OfflineDatabaseHandler importHandler = new OfflineDatabaseHandler(context, importName);
+        boolean imported = false;
+        try {
+            final SQLiteDatabase target = importHandler.getWritableDatabase();
+            int total = (int) DatabaseUtils.longForQuery(source, "SELECT COUNT(*) FROM tiles;", null);
+            String format = DatabaseUtils.stringForQuery(source, "SELECT COALESCE(MAX(value), 'png') FROM metadata WHERE name = 'format';", null);
+            final RasterImageQuality imageQuality = "jpg".equalsIgnoreCase(format) || "jpeg".equalsIgnoreCase(format)
+                    ? RasterImageQuality.MBXRasterImageQualityJPEG90 : RasterImageQuality.MBXRasterImageQualityFull;
+
+            target.beginTransaction();
+            try {
+                putOfflineMetadata(target, "uniqueID", UUID.randomUUID().toString());
+                putOfflineMetadata(target, "mapID", mapID);
+                putOfflineMetadata(target, "includesMetadata", "NO");
+                putOfflineMetadata(target, "includesMarkers", "NO");
+                putOfflineMetadata(target, "imageQuality", String.format(MAPBOX_LOCALE, "%d", imageQuality.getValue()));
+                putOfflineMetadata(target, "urlsGenerated", "YES");
+                target.setTransactionSuccessful();
+            } finally {
+                target.endTransaction();
+            }
+
+            final OfflineMapBlobStore blobs = new OfflineMapBlobStore(target);
+            final SQLiteStatement insert = target.compileStatement("INSERT OR REPLACE INTO " + OfflineDatabaseHandler.TABLE_RESOURCES + " ("
+                    + OfflineDatabaseHandler.FIELD_RESOURCES_URL + ", " + OfflineDatabaseHandler.FIELD_RESOURCES_BLOB_ID + ", "
+                    + OfflineDatabaseHandler.FIELD_RESOURCES_STATUS + ", " + OfflineDatabaseHandler.FIELD_RESOURCES_TILE_KEY + ") VALUES (?, ?, 200, ?);");
+            try {
+                copyTiles(new TileReader() {
+                    @Override
+                    public void read(BlockingQueue<Tile> queue) throws InterruptedException {
+                        readMBTilesTiles(source, queue);
+                    }
+                }, target, new TileInserter() {
+                    @Override
+                    public void insert(Tile tile) {
+                        // Tiles keep the url they would have been downloaded from
+                        insert.bindString(1, MapboxUtils.getMapTileURL(context, mapID, tile.z, tile.x, tile.y, imageQuality));
+                        insert.bindLong(2, blobs.put(tile.data));
+                        insert.bindLong(3, OfflineDatabaseHandler.tileKey(tile.z, tile.x, tile.y));
+                        insert.executeInsert();
+                    }
+                }, total, listener);
+            } finally {
+                insert.close();
+                blobs.close();
+            }
+            Log.i(TAG, String.format(MAPBOX_LOCALE, "Imported %d tiles from %s as '%s', %d bytes saved by storing identical tiles once.",
+                    total, mbtiles, mapID, blobs.getBytesSaved()));
+            imported = true;
+        } finally {
+            importHandler.close();
+            source.close();
+            if (!imported) {
+                context.deleteDatabase(importName);
+            }
+        }
+
+        if (!context.getDatabasePath(importName).renameTo(context.getDatabasePath(dbName))) {
+            context.deleteDatabase(importName);
+            throw new IllegalStateException("Can't rename the imported database to " + dbName);
+        }
+
+        OfflineMapDatabase offlineMapDatabase = new OfflineMapDatabase(context, mapID);
+        offlineMapDatabase.initializeDatabase();
+        return offlineMapDatabase;
+    }
+
+    private static void putOfflineMetadata(SQLiteDatabase db, String name, String value) {
+        ContentValues cv = new ContentValues();
+        cv.put(OfflineDatabaseHandler.FIELD_METADATA_NAME, name);
+        cv.put(OfflineDatabaseHandler.FIELD_METADATA_VALUE, value);
+        db.replace(OfflineDatabaseHandler.TABLE_METADATA, null, cv);
+    }
+
+    private static boolean isJPEG(RasterImageQuality imageQuality) {
+        return imageQuality == RasterImageQuality.MBXRasterImageQualityJPEG70
+                || imageQuality == RasterImageQuality.MBXRasterImageQualityJPEG80
+                || imageQuality == RasterImageQuality.MBXRasterImageQualityJPEG90;
+    }
+
+    /*
+        The copy pipeline: a reader queues the tiles of the source, the calling thread inserts them.
+    */
+
+    /**
+     * Runs reader on another thread and inserts the tiles it queues, committing them in batches.
+     */
+    private void copyTiles(final TileReader reader, SQLiteDatabase target, TileInserter inserter, int total, ConversionListener<?> listener) throws Exception {
+        final BlockingQueue<Tile> queue = new ArrayBlockingQueue<Tile>(QUEUE_SIZE);
+        final CountDownLatch readerStarted = new CountDownLatch(1);
+        final CountDownLatch readerFinished = new CountDownLatch(1);
+        Future<Void> readerTask = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                readerStarted.countDown();
+                try {
+                    // The InterruptedException clears the interrupted status, so cancellation is
+                    // remembered here rather than checked on the thread
+                    boolean cancelled = false;
+                    try {
+                        reader.read(queue);
+                    } catch (InterruptedException e) {
+                        // Cancelled: nobody takes tiles from the queue anymore
+                        cancelled = true;
+                    } finally {
+                        if (!cancelled) {
+                            queue.put(END);
+                        }
+                    }
+                    return null;
+                } finally {
+                    readerFinished.countDown();
+                }
+            }
+        });
+
+        int copied = 0;
+        try {
+            Tile tile = queue.take();
+            while (tile != END) {
+                target.beginTransaction();
+                try {
+                    for (int i = 0; i < BATCH_SIZE && tile != END; i++) {
+                        inserter.insert(tile);
+                        copied++;
+                        tile = queue.take();
+                    }
+                    target.setTransactionSuccessful();
+                } finally {
+                    target.endTransaction();
+                }
+                listener.conversionProgress(copied, total);
+            }
+            // Rethrows what went wrong while reading
+            readerTask.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } finally {
+            // Stops the reader if inserting failed, and waits for it to close its cursor before the
+            // caller closes the source database. A task cancelled before it starts never runs, and
+            // get() doesn't wait for a cancelled task, hence the latches.
+            awaitUninterruptibly(readerStarted);
+            readerTask.cancel(true);
+            awaitUninterruptibly(readerFinished);
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads the tiles of an offline map database a page at a time, in tile key order. Tiles are
+     * identified by the hash of their blob, so that identical tiles are stored once.
+     */
+    private static void readOfflineMapTiles(SQLiteDatabase source, BlockingQueue<Tile> queue) throws InterruptedException {
+        String query = "SELECT r." + OfflineDatabaseHandler.FIELD_RESOURCES_TILE_KEY + ", r." + OfflineDatabaseHandler.FIELD_RESOURCES_DATA
+                + ", b." + OfflineDatabaseHandler.FIELD_BLOBS_DATA + ", b." + OfflineDatabaseHandler.FIELD_BLOBS_HASH + " FROM "
+                + OfflineDatabaseHandler.TABLE_RESOURCES + " r LEFT JOIN " + OfflineDatabaseHandler.TABLE_BLOBS + " b ON b.rowid = r."
+                + OfflineDatabaseHandler.FIELD_RESOURCES_BLOB_ID + " WHERE r." + OfflineDatabaseHandler.FIELD_RESOURCES_TILE_KEY + " > ? AND "
+                + HAS_DATA + " ORDER BY r." + OfflineDatabaseHandler.FIELD_RESOURCES_TILE_KEY + " LIMIT " + PAGE_SIZE + ";";
+        long lastKey = -1;
+        while (true) {
+            Cursor cursor = source.rawQuery(query, new String[] { String.valueOf(lastKey) });
+            int count;
+            try {
+                count = cursor.getCount();
+                while (cursor.moveToNext()) {
+                    lastKey = cursor.getLong(0);
+                    byte[] data;
+                    String id;
+                    if (cursor.isNull(1)) {
+                        data = cursor.getBlob(2);
+                        id = cursor.getString(3);
+                    } else {
+                        // Not compacted into a blob yet
+                        data = cursor.getBlob(1);
+                        id = OfflineMapBlobStore.hash(data);
+                    }
+                    // See OfflineDatabaseHandler.tileKey()
+                    int z = (int) (lastKey >>> 44);
+                    int x = (int) ((lastKey >>> 22) & 0x3FFFFF);
+                    int y = (int) (lastKey & 0x3FFFFF);
+                    queue.put(new Tile(z, x, y, data, id));
+                }
+            } finally {
+                cursor.close();
+            }
+            if (count < PAGE_SIZE) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Reads the tiles of an MBTiles file. Tiles may be stored in a view, so they are read with a
+     * single query rather than in pages.
+     */
+    private static void readMBTilesTiles(SQLiteDatabase source, BlockingQueue<Tile> queue) throws InterruptedException {
+        Cursor cursor = source.rawQuery("SELECT zoom_level, tile_column, tile_row, tile_data FROM tiles;", null);
+        try {
+            while (cursor.moveToNext()) {
+                int z = cursor.getInt(0);
+                // MBTiles rows count from the bottom of the map
+                int y = (int) ((1L << z) - 1 - cursor.getLong(2));
+                queue.put(new Tile(z, cursor.getInt(1), y, cursor.getBlob(3), null));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+}
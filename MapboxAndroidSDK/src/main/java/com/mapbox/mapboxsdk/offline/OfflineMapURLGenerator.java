@@ -7,7 +7,14 @@ import com.mapbox.mapboxsdk.constants.MathConstants;
 import com.mapbox.mapboxsdk.util.MapboxUtils;
 
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
+/**
+ * Generates the tile urls covering a region over a range of zoom levels. The urls are generated
+ * on demand, either by index or through {@link #iterator}, so that the full list of a large region
+ * is never held in memory.
+ */
 public class OfflineMapURLGenerator {
 
     private static class Bounds {
@@ -21,31 +28,180 @@ public class OfflineMapURLGenerator {
             this.minY = minY;
             this.maxY = maxY;
         }
+
+        public long getTileCount() {
+            return (long) (maxX - minX + 1) * (maxY - minY + 1);
+        }
+    }
+
+    /**
+     * Iterates over tile urls, and over the keys of their tiles along the way.
+     */
+    public interface URLIterator extends Iterator<String> {
+        /**
+         * @return the key of the tile whose url was last returned by {@link #next()}, see
+         * {@link OfflineDatabaseHandler#tileKey(int, int, int)}
+         */
+        long getTileKey();
     }
 
     private ArrayList<Bounds> bounds;
+    private double minLat;
+    private double maxLat;
+    private double minLon;
+    private double maxLon;
     private int minimumZoom;
     private int maximumZoom;
-    private int urlCount;
+    private long tileCount;
 
     public OfflineMapURLGenerator(double minLat, double maxLat, double minLon, double maxLon, int minimumZ, int maximumZ) {
         this.bounds = new ArrayList<Bounds>();
+        this.minLat = minLat;
+        this.maxLat = maxLat;
+        this.minLon = minLon;
+        this.maxLon = maxLon;
         this.minimumZoom = minimumZ;
         this.maximumZoom = maximumZ;
-        this.urlCount = 0;
+        this.tileCount = 0;
         for (int zoom = minimumZ; zoom <= maximumZ; zoom++) {
             int tilesPerSide = Double.valueOf(Math.pow(2.0, zoom)).intValue();
-            int minX = Double.valueOf(Math.floor(((minLon + 180.0) / 360.0) * tilesPerSide)).intValue();
-            int maxX = Double.valueOf(Math.floor(((maxLon + 180.0) / 360.0) * tilesPerSide)).intValue();
-            int minY = Double.valueOf(Math.floor((1.0 - (Math.log(Math.tan(Math.toRadians(maxLat)) + 1.0 / Math.cos(Math.toRadians(maxLat))) / MathConstants.PI)) / 2.0 * tilesPerSide)).intValue();
-            int maxY = Double.valueOf(Math.floor((1.0 - (Math.log(Math.tan(Math.toRadians(minLat)) + 1.0 / Math.cos(Math.toRadians(minLat))) / MathConstants.PI)) / 2.0 * tilesPerSide)).intValue();
-            this.bounds.add(new Bounds(minX, maxX, minY, maxY));
-            this.urlCount += (maxX - minX + 1) * (maxY - minY + 1);
+            int minX = clamp(Double.valueOf(Math.floor(((minLon + 180.0) / 360.0) * tilesPerSide)).intValue(), tilesPerSide);
+            int maxX = clamp(Double.valueOf(Math.floor(((maxLon + 180.0) / 360.0) * tilesPerSide)).intValue(), tilesPerSide);
+            int minY = clamp(Double.valueOf(Math.floor((1.0 - (Math.log(Math.tan(Math.toRadians(maxLat)) + 1.0 / Math.cos(Math.toRadians(maxLat))) / MathConstants.PI)) / 2.0 * tilesPerSide)).intValue(), tilesPerSide);
+            int maxY = clamp(Double.valueOf(Math.floor((1.0 - (Math.log(Math.tan(Math.toRadians(minLat)) + 1.0 / Math.cos(Math.toRadians(minLat))) / MathConstants.PI)) / 2.0 * tilesPerSide)).intValue(), tilesPerSide);
+            Bounds levelBounds = new Bounds(minX, maxX, minY, maxY);
+            this.bounds.add(levelBounds);
+            this.tileCount += levelBounds.getTileCount();
         }
     }
 
+    /**
+     * Keeps a tile index within the tiles of a zoom level, for regions reaching the edges of the
+     * projection.
+     */
+    private static int clamp(int index, int tilesPerSide) {
+        return Math.max(0, Math.min(index, tilesPerSide - 1));
+    }
+
+    public double getMinLat() {
+        return minLat;
+    }
+
+    public double getMaxLat() {
+        return maxLat;
+    }
+
+    public double getMinLon() {
+        return minLon;
+    }
+
+    public double getMaxLon() {
+        return maxLon;
+    }
+
+    public int getMinimumZoom() {
+        return minimumZoom;
+    }
+
+    public int getMaximumZoom() {
+        return maximumZoom;
+    }
+
+    /**
+     * @return the exact number of tiles covering the region
+     */
+    public long getTileCount() {
+        return tileCount;
+    }
+
+    /**
+     * @return the number of tile urls, capped at {@link Integer#MAX_VALUE}
+     */
     public int getURLCount() {
-        return urlCount;
+        return (int) Math.min(tileCount, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Estimates how much the tiles of the region weigh once downloaded, from the average size of a
+     * raster tile at the given image quality.
+     *
+     * @param imageQuality Image quality of the tiles
+     * @return the estimated size in bytes
+     */
+    public long getEstimatedByteSize(MapboxConstants.RasterImageQuality imageQuality) {
+        return tileCount * getAverageTileByteSize(imageQuality);
+    }
+
+    private static int getAverageTileByteSize(MapboxConstants.RasterImageQuality imageQuality) {
+        switch (imageQuality) {
+            case MBXRasterImageQualityPNG32:
+                return 7 * 1024;
+            case MBXRasterImageQualityPNG64:
+                return 9 * 1024;
+            case MBXRasterImageQualityPNG128:
+                return 11 * 1024;
+            case MBXRasterImageQualityPNG256:
+                return 14 * 1024;
+            case MBXRasterImageQualityJPEG70:
+                return 11 * 1024;
+            case MBXRasterImageQualityJPEG80:
+                return 14 * 1024;
+            case MBXRasterImageQualityJPEG90:
+                return 20 * 1024;
+            case MBXRasterImageQualityFull:
+            default:
+                return 22 * 1024;
+        }
+    }
+
+    /**
+     * Returns the tile urls of the region, generated one at a time, zoom level by zoom level in
+     * the same order as {@link #getURLForIndex}.
+     */
+    public URLIterator iterator(final Context context, final String mapID, final MapboxConstants.RasterImageQuality imageQuality) {
+        return new URLIterator() {
+            private int zoom = minimumZoom;
+            private Bounds levelBounds = bounds.isEmpty() ? null : bounds.get(0);
+            private int x = levelBounds != null ? levelBounds.minX : 0;
+            private int y = levelBounds != null ? levelBounds.minY : 0;
+            private long tileKey = -1;
+
+            @Override
+            public boolean hasNext() {
+                return levelBounds != null;
+            }
+
+            @Override
+            public String next() {
+                if (levelBounds == null) {
+                    throw new NoSuchElementException();
+                }
+                String url = MapboxUtils.getMapTileURL(context, mapID, zoom, x, y, imageQuality);
+                tileKey = OfflineDatabaseHandler.tileKey(zoom, x, y);
+                if (++y > levelBounds.maxY) {
+                    y = levelBounds.minY;
+                    if (++x > levelBounds.maxX) {
+                        zoom++;
+                        levelBounds = zoom <= maximumZoom ? bounds.get(zoom - minimumZoom) : null;
+                        if (levelBounds != null) {
+                            x = levelBounds.minX;
+                            y = levelBounds.minY;
+                        }
+                    }
+                }
+                return url;
+            }
+
+            @Override
+            public long getTileKey() {
+                return tileKey;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
     }
 
     public String getURLForIndex(Context context, String mapID, MapboxConstants.RasterImageQuality imageQuality, int index) {
@@ -59,7 +215,7 @@ public class OfflineMapURLGenerator {
         for (zoom = this.minimumZoom; zoom < this.maximumZoom; zoom++) {
             int boundsIndex = zoom - this.minimumZoom;
             Bounds bounds = this.bounds.get(boundsIndex);
-            int urlsInThisLevel = (bounds.maxX - bounds.minX + 1) * (bounds.maxY - bounds.minY + 1);
+            long urlsInThisLevel = bounds.getTileCount();
             if (index < urlsInThisLevel) {
                 break;
             } else {
@@ -12,6 +12,7 @@ import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.util.Log;
+import android.widget.Scroller;
 import com.mapbox.mapboxsdk.tileprovider.MapTile;
 import com.mapbox.mapboxsdk.tileprovider.MapTileLayerBase;
 import com.mapbox.mapboxsdk.util.GeometryMath;
@@ -61,6 +62,20 @@ public class TilesOverlay extends SafeDrawOverlay {
     private int mLoadingLineColor = Color.rgb(200, 192, 192);
     private boolean mDrawLoadingTile = true;
 
+    /**
+     * Default number of tiles prefetched around the tiles the tile looper draws, which already
+     * include one tile around the viewport
+     */
+    public static final int DEFAULT_PREFETCH_MARGIN = 1;
+
+    /**
+     * Maximum number of tiles the prefetch ring is extended by in the direction of a fling
+     */
+    private static final int MAX_PREFETCH_LEAD = 4;
+
+    private int mPrefetchMargin = DEFAULT_PREFETCH_MARGIN;
+    private boolean mPrefetchAdjacentZoomLevels = true;
+
     public TilesOverlay(final MapTileLayerBase aTileProvider) {
         super();
         if (aTileProvider == null) {
@@ -146,6 +161,9 @@ public class TilesOverlay extends SafeDrawOverlay {
                 drawLoadingTile(c.getSafeCanvas(), mapView, zoomLevel, mClipRect);
             }
             drawTiles(c.getSafeCanvas(), zoomLevel, tileSize, mViewPort, mClipRect);
+            if (!isAnimating) {
+                prefetchTiles(mapView, zoomLevel, tileSize, mViewPort);
+            }
         }
 
         if (UtilConstants.DEBUGMODE && mapView.getScrollableAreaLimit() != null) {
@@ -185,6 +203,10 @@ public class TilesOverlay extends SafeDrawOverlay {
     public void drawTiles(final Canvas c, final float zoomLevel, final int tileSizePx,
                           final Rect viewPort, final Rect pClipRect) {
 
+        // let the tile provider serve the tiles at the center of the screen first
+        mTileProvider.setViewport((int) Math.floor(zoomLevel),
+                viewPort.exactCenterX() / tileSizePx, viewPort.exactCenterY() / tileSizePx);
+
         mNuberOfTiles = mTileLooper.loop(c, mTileProvider.getCacheKey(), zoomLevel, tileSizePx, viewPort, pClipRect);
 
         // draw a cross at center in debug mode
@@ -199,6 +221,135 @@ public class TilesOverlay extends SafeDrawOverlay {
         }
     }
 
+    /**
+     * Requests the tiles in a ring of {@link #getPrefetchMargin()} tiles around the drawn tiles and,
+     * if enabled, the tiles of the adjacent zoom levels, ahead of time and at a lower priority
+     * than the tiles on screen. While the map is flinging, the ring is extended in the direction
+     * of motion.
+     */
+    protected void prefetchTiles(final MapView mapView, final float zoomLevel,
+                                 final int tileSizePx, final Rect viewPort) {
+        if (mPrefetchMargin <= 0 && !mPrefetchAdjacentZoomLevels) {
+            return;
+        }
+        final String cacheKey = mTileProvider.getCacheKey();
+        final int zoom = (int) Math.floor(zoomLevel);
+        final int left = viewPort.left / tileSizePx;
+        final int top = viewPort.top / tileSizePx;
+        final int right = viewPort.right / tileSizePx;
+        final int bottom = viewPort.bottom / tileSizePx;
+
+        // Lead in the direction of motion, using what is left of the scroller's fling
+        int leadX = 0;
+        int leadY = 0;
+        final Scroller scroller = mapView.getScroller();
+        if (!scroller.isFinished()) {
+            final float tilePx = tileSizePx * mCurrentZoomFactor;
+            leadX = clampLead(Math.round((scroller.getFinalX() - scroller.getCurrX()) / tilePx));
+            leadY = clampLead(Math.round((scroller.getFinalY() - scroller.getCurrY()) / tilePx));
+        }
+        // The ring starts outside of the tiles the tile looper requests for drawing
+        final int drawnLeft = left - TileLooper.VIEWPORT_PADDING;
+        final int drawnTop = top - TileLooper.VIEWPORT_PADDING;
+        final int drawnRight = right + TileLooper.VIEWPORT_PADDING;
+        final int drawnBottom = bottom + TileLooper.VIEWPORT_PADDING;
+        final int minX = drawnLeft - mPrefetchMargin + Math.min(leadX, 0);
+        final int maxX = drawnRight + mPrefetchMargin + Math.max(leadX, 0);
+        final int minY = drawnTop - mPrefetchMargin + Math.min(leadY, 0);
+        final int maxY = drawnBottom + mPrefetchMargin + Math.max(leadY, 0);
+
+        // Pending prefetches outside of this area are cancelled
+        final int width = maxX - minX + 1;
+        final int height = maxY - minY + 1;
+        mTileProvider.setPrefetchArea(minX + width / 2f, minY + height / 2f,
+                (float) Math.hypot(width, height) / 2f + 1);
+
+        if (mPrefetchMargin > 0) {
+            prefetchRange(cacheKey, zoom, minX, minY, maxX, maxY, leadX, leadY,
+                    drawnLeft, drawnTop, drawnRight, drawnBottom);
+        }
+        if (mPrefetchAdjacentZoomLevels) {
+            if (zoom - 1 >= getMinimumZoomLevel()) {
+                prefetchRange(cacheKey, zoom - 1, left >> 1, top >> 1, right >> 1, bottom >> 1,
+                        leadX, leadY, 0, 0, -1, -1);
+            }
+            if (zoom + 1 <= getMaximumZoomLevel()) {
+                // Only the central half of the viewport, which is what zooming in shows
+                final int quarterWidth = viewPort.width() / 4;
+                final int quarterHeight = viewPort.height() / 4;
+                prefetchRange(cacheKey, zoom + 1,
+                        2 * (viewPort.left + quarterWidth) / tileSizePx,
+                        2 * (viewPort.top + quarterHeight) / tileSizePx,
+                        2 * (viewPort.right - quarterWidth) / tileSizePx,
+                        2 * (viewPort.bottom - quarterHeight) / tileSizePx,
+                        leadX, leadY, 0, 0, -1, -1);
+            }
+        }
+    }
+
+    /**
+     * Prefetches the tiles of a range, except those of an excluded range, visiting the side the
+     * map is moving towards first. Stops as soon as the tile provider has no room left.
+     */
+    private void prefetchRange(final String cacheKey, final int zoom,
+                               final int minX, final int minY, final int maxX, final int maxY,
+                               final int leadX, final int leadY,
+                               final int excludeMinX, final int excludeMinY,
+                               final int excludeMaxX, final int excludeMaxY) {
+        final int mapTileUpperBound = 1 << zoom;
+        final int stepX = leadX < 0 ? -1 : 1;
+        final int stepY = leadY < 0 ? -1 : 1;
+        final int startX = stepX > 0 ? maxX : minX;
+        final int startY = stepY > 0 ? maxY : minY;
+        for (int y = startY; y >= minY && y <= maxY; y -= stepY) {
+            if (y < 0 || y >= mapTileUpperBound) {
+                continue;
+            }
+            for (int x = startX; x >= minX && x <= maxX; x -= stepX) {
+                if (x >= excludeMinX && x <= excludeMaxX && y >= excludeMinY && y <= excludeMaxY) {
+                    continue;
+                }
+                if (!mTileProvider.canPrefetch()) {
+                    return;
+                }
+                mTileProvider.prefetchMapTile(new MapTile(cacheKey, zoom,
+                        GeometryMath.mod(x, mapTileUpperBound), y));
+            }
+        }
+    }
+
+    private static int clampLead(final int lead) {
+        return Math.max(-MAX_PREFETCH_LEAD, Math.min(MAX_PREFETCH_LEAD, lead));
+    }
+
+    /**
+     * Get the number of tiles prefetched around the viewport.
+     *
+     * @return the prefetch margin, in tiles
+     */
+    public int getPrefetchMargin() {
+        return mPrefetchMargin;
+    }
+
+    /**
+     * Set the number of tiles prefetched around the drawn tiles, so that the edges are already
+     * loaded when the map is panned. 0 disables prefetching around the viewport.
+     *
+     * @param pPrefetchMargin the prefetch margin, in tiles
+     */
+    public void setPrefetchMargin(final int pPrefetchMargin) {
+        mPrefetchMargin = Math.max(0, pPrefetchMargin);
+    }
+
+    /**
+     * Set whether the tiles one zoom level in and out of the viewport are prefetched.
+     *
+     * @param pPrefetchAdjacentZoomLevels true to prefetch the adjacent zoom levels (default)
+     */
+    public void setPrefetchAdjacentZoomLevels(final boolean pPrefetchAdjacentZoomLevels) {
+        mPrefetchAdjacentZoomLevels = pPrefetchAdjacentZoomLevels;
+    }
+
     private final TileLooper mTileLooper = new TileLooper() {
         @Override
         public void initializeLoop(final float pZoomLevel, final int pTileSizePx) {
@@ -215,7 +366,7 @@ public class TilesOverlay extends SafeDrawOverlay {
 
         @Override
         public void handleTile(final Canvas pCanvas, final String pCacheKey, final int pTileSizePx,
-                               final MapTile pTile, final int pX, final int pY, final Rect pClipRect) {
+                               final long pTileKey, final int pX, final int pY, final Rect pClipRect) {
             final double factor = pTileSizePx * mCurrentZoomFactor;
             double x = pX * factor - mWorldSize_2;
             double y = pY * factor - mWorldSize_2;
@@ -223,8 +374,7 @@ public class TilesOverlay extends SafeDrawOverlay {
             if (!Rect.intersects(mTileRect, pClipRect)) {
                 return;
             }
-            pTile.setTileRect(mTileRect);
-            Drawable drawable = mTileProvider.getMapTile(pTile, !isAnimating);
+            Drawable drawable = mTileProvider.getMapTile(pCacheKey, pTileKey, mTileRect, !isAnimating);
             boolean isReusable = drawable instanceof CacheableBitmapDrawable;
 
             if (drawable != null) {
@@ -240,7 +390,7 @@ public class TilesOverlay extends SafeDrawOverlay {
 
             if (UtilConstants.DEBUGMODE) {
                 ISafeCanvas canvas = (ISafeCanvas) pCanvas;
-                canvas.drawText(pTile.toString(), mTileRect.left + 1, mTileRect.top + getDebugPaint().getTextSize(), getDebugPaint());
+                canvas.drawText(new MapTile(pCacheKey, pTileKey).toString(), mTileRect.left + 1, mTileRect.top + getDebugPaint().getTextSize(), getDebugPaint());
                 canvas.drawRect(mTileRect, getDebugPaint());
             }
         }
@@ -395,16 +545,16 @@ public class TilesOverlay extends SafeDrawOverlay {
 
         @Override
         public void handleTile(final Canvas pCanvas, final String pCacheKey, final int pTileSizePx,
-                               final MapTile pTile, final int pX, final int pY, final Rect pClipRect) {
+                               final long pTileKey, final int pX, final int pY, final Rect pClipRect) {
 
             // Get tile from cache.
             // If it's found then no need to created scaled version.
             // If not found (null) them we've initiated a new request for it,
             // and now we'll create a scaled version until the request completes.
-            final Drawable requestedTile = mTileProvider.getMapTile(pTile, !isAnimating);
+            final Drawable requestedTile = mTileProvider.getMapTile(pCacheKey, pTileKey, null, !isAnimating);
             if (requestedTile == null) {
                 try {
-                    handleScaleTile(pCacheKey, pTileSizePx, pTile, pX, pY);
+                    handleScaleTile(pCacheKey, pTileSizePx, new MapTile(pCacheKey, pTileKey), pX, pY);
                 } catch (final OutOfMemoryError e) {
                     Log.e(TAG, "OutOfMemoryError rescaling cache");
                 }
@@ -425,6 +575,14 @@ public class TilesOverlay extends SafeDrawOverlay {
 
         protected abstract void handleScaleTile(final String pCacheKey, final int pTileSizePx,
                                                 final MapTile pTile, final int pX, final int pY);
+
+        /**
+         * The pixel format to scale a tile into, the one of the tile it is scaled from.
+         */
+        protected Bitmap.Config getConfig(final Bitmap pBitmap) {
+            return pBitmap.getConfig() == Bitmap.Config.RGB_565
+                    ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        }
     }
 
     private class ZoomInTileLooper extends ScaleTileLooper {
@@ -457,11 +615,15 @@ public class TilesOverlay extends SafeDrawOverlay {
                     mSrcRect.set(xx, yy, xx + mTileSize_2, yy + mTileSize_2);
                     mDestRect.set(0, 0, pTileSizePx, pTileSizePx);
 
+                    // The scaled tile covers the whole tile, so it keeps the layer's pixel format
+                    final Bitmap.Config config = getConfig(oldBitmap);
+
                     // Try to get a bitmap from the pool, otherwise allocate a new one
-                    Bitmap bitmap = mTileProvider.getBitmapFromRemoved(pTileSizePx, pTileSizePx);
+                    Bitmap bitmap = mTileProvider.getBitmapFromRemoved(pTileSizePx, pTileSizePx,
+                            config);
 
                     if (bitmap == null) {
-                        bitmap = Bitmap.createBitmap(pTileSizePx, pTileSizePx, Bitmap.Config.ARGB_8888);
+                        bitmap = Bitmap.createBitmap(pTileSizePx, pTileSizePx, config);
                     }
                     final Canvas canvas = new Canvas(bitmap);
                     canvas.drawBitmap(oldBitmap, mSrcRect, mDestRect, null);
@@ -491,9 +653,11 @@ public class TilesOverlay extends SafeDrawOverlay {
             final int yy = (int) GeometryMath.leftShift(pY, mDiff);
             final int numTiles = (int) GeometryMath.leftShift(1, mDiff);
 
+            // Gather the old tiles first, the pixel format of the new tile depends on them
+            final Bitmap[] oldBitmaps = new Bitmap[numTiles * numTiles];
             int oldTileX, oldTileY;
-            Bitmap bitmap = null;
-            Canvas canvas = null;
+            int found = 0;
+            Bitmap.Config config = null;
             for (int x = 0; x < numTiles; x++) {
                 for (int y = 0; y < numTiles; y++) {
                     oldTileY = GeometryMath.mod(yy + y, mOldTileUpperBound);
@@ -510,24 +674,40 @@ public class TilesOverlay extends SafeDrawOverlay {
                         }
                         final Bitmap oldBitmap = ((BitmapDrawable) oldDrawable).getBitmap();
                         if (oldBitmap != null) {
-                            if (bitmap == null) {
-                                // Try to get a bitmap from the pool, otherwise allocate a new one
-                                bitmap = mTileProvider.getBitmapFromRemoved(pTileSizePx,
-                                        pTileSizePx);
-                                if (bitmap == null) {
-                                    bitmap = Bitmap.createBitmap(pTileSizePx, pTileSizePx,
-                                            Bitmap.Config.ARGB_8888);
-                                }
-                                canvas = new Canvas(bitmap);
-                            }
-                            mDestRect.set(x * mTileSize_2, y * mTileSize_2, (x + 1) * mTileSize_2,
-                                    (y + 1) * mTileSize_2);
-                            canvas.drawBitmap(oldBitmap, null, mDestRect, null);
+                            oldBitmaps[x * numTiles + y] = oldBitmap;
+                            found++;
+                            config = config == null || config == getConfig(oldBitmap)
+                                    ? getConfig(oldBitmap) : Bitmap.Config.ARGB_8888;
                         }
                     }
                 }
             }
 
+            if (found == 0) {
+                return;
+            }
+            if (found < oldBitmaps.length) {
+                // Missing old tiles must stay transparent
+                config = Bitmap.Config.ARGB_8888;
+            }
+
+            // Try to get a bitmap from the pool, otherwise allocate a new one
+            Bitmap bitmap = mTileProvider.getBitmapFromRemoved(pTileSizePx, pTileSizePx, config);
+            if (bitmap == null) {
+                bitmap = Bitmap.createBitmap(pTileSizePx, pTileSizePx, config);
+            }
+            final Canvas canvas = new Canvas(bitmap);
+            for (int x = 0; x < numTiles; x++) {
+                for (int y = 0; y < numTiles; y++) {
+                    final Bitmap oldBitmap = oldBitmaps[x * numTiles + y];
+                    if (oldBitmap != null) {
+                        mDestRect.set(x * mTileSize_2, y * mTileSize_2, (x + 1) * mTileSize_2,
+                                (y + 1) * mTileSize_2);
+                        canvas.drawBitmap(oldBitmap, null, mDestRect, null);
+                    }
+                }
+            }
+
             if (bitmap != null) {
                 mNewTiles.put(pTile, bitmap);
             }
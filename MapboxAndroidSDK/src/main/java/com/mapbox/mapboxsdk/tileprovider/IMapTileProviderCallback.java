@@ -20,6 +20,14 @@ public interface IMapTileProviderCallback {
      */
     void mapTileRequestFailed(MapTileRequestState aState);
 
+    /**
+     * The map tile request was dropped before being loaded, because the tile is no longer
+     * needed. Unlike a failure, the remaining providers are not tried.
+     *
+     * @param aState a state object
+     */
+    void mapTileRequestCancelled(MapTileRequestState aState);
+
     /**
      * The map tile request has produced an expired tile.
      *
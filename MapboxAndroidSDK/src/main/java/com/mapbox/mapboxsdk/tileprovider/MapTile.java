@@ -1,10 +1,12 @@
 package com.mapbox.mapboxsdk.tileprovider;
 
 import android.graphics.Rect;
+import android.util.Log;
 import com.mapbox.mapboxsdk.constants.GeoConstants;
 import com.mapbox.mapboxsdk.constants.MapboxConstants;
 import com.mapbox.mapboxsdk.geometry.BoundingBox;
 import com.mapbox.mapboxsdk.tileprovider.constants.TileLayerConstants;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A map tile is distributed using the observer pattern. The tile is delivered by a tile provider
@@ -20,31 +22,103 @@ public class MapTile implements GeoConstants, MapboxConstants, TileLayerConstant
     public static final int MAPTILE_FAIL_ID = MAPTILE_SUCCESS_ID + 1;
 
     // This class must be immutable because it's used as the key in the cache hash map
-    // (ie all the fields are final).
+    // (ie all the fields are final, the strings are only derived from them lazily).
     private final int x;
     private final int y;
     private final int z;
-    private final String path;
-    private final String cacheKey;
+    private final long key;
+    private final String prefix;
+    private String path;
+    private String cacheKey;
     private final int code;
     private Rect mTileRect;
 
+    private static final String TAG = "MapTile";
+    private static final int LAYER_ID_MASK = 0x1FFF;
+    private static final long COORDINATES_MASK = (1L << 50) - 1;
+    private static final ConcurrentHashMap<String, Integer> sLayerIds =
+            new ConcurrentHashMap<String, Integer>();
+
     // For lat/lng bounds calculation
-    private double tileSize = DEFAULT_TILE_SIZE;
-    private double originShift = 2 * Math.PI * RADIUS_EARTH_METERS / 2.0;
-    private double initialResolution = 2 * Math.PI * RADIUS_EARTH_METERS / tileSize;
+    private static final double TILE_SIZE = DEFAULT_TILE_SIZE;
+    private static final double ORIGIN_SHIFT = 2 * Math.PI * RADIUS_EARTH_METERS / 2.0;
+    private static final double INITIAL_RESOLUTION = 2 * Math.PI * RADIUS_EARTH_METERS / TILE_SIZE;
 
     public MapTile(final int az, final int ax, final int ay) {
         this("", az, ax, ay);
     }
 
+    /**
+     * Tiles are created for every tile request and rescale, so the path and cache key strings
+     * are only built when they are asked for.
+     */
     public MapTile(final String aCacheKey, final int az, final int ax, final int ay) {
         this.z = az;
         this.x = ax;
         this.y = ay;
-        this.path = (new StringBuilder()).append(z).append('/').append(x).append('/').append(y).toString();
-        this.cacheKey = aCacheKey + "/" + path;
-        this.code = ((17 * (37 + z)) * (37 * x)) * (37 + y);
+        this.key = tileKey(layerId(aCacheKey), az, ax, ay);
+        this.prefix = aCacheKey;
+        final long coordinates = key & COORDINATES_MASK;
+        this.code = (int) (coordinates ^ (coordinates >>> 32));
+    }
+
+    /**
+     * Creates the tile of a key packed by {@link #tileKey(int, int, int, int)}, for callers which
+     * only hold on to keys and create a tile when they have to.
+     *
+     * @param aCacheKey the cache key of the tile layer the key was packed with
+     * @param aKey      the packed tile key
+     */
+    public MapTile(final String aCacheKey, final long aKey) {
+        this.z = (int) ((aKey >>> 44) & 0x3F);
+        this.x = (int) ((aKey >>> 22) & 0x3FFFFF);
+        this.y = (int) (aKey & 0x3FFFFF);
+        this.key = aKey;
+        this.prefix = aCacheKey;
+        final long coordinates = aKey & COORDINATES_MASK;
+        this.code = (int) (coordinates ^ (coordinates >>> 32));
+    }
+
+    /**
+     * Packs the layer and the coordinates of a tile into a single long: 13 bits of layer id, 6
+     * bits of zoom level and 22 bits for each of x and y, which covers every zoom level up to
+     * {@link #MAXIMUM_ZOOMLEVEL}. The sign bit is always clear, so these keys never collide with
+     * the keys {@link uk.co.senab.bitmapcache.BitmapLruCache#memoryKeyFor(String)} derives from
+     * urls.
+     *
+     * @param layerId the id of the tile layer, see {@link #layerId(String)}
+     * @return the packed tile key
+     */
+    public static long tileKey(final int layerId, final int z, final int x, final int y) {
+        return ((long) (layerId & LAYER_ID_MASK) << 50) | ((long) (z & 0x3F) << 44)
+                | ((long) (x & 0x3FFFFF) << 22) | (y & 0x3FFFFF);
+    }
+
+    /**
+     * Gets the small integer standing for a layer cache key in {@link #tileKey(int, int, int,
+     * int)}. Ids are handed out the first time a cache key is seen and stay the same for the life
+     * of the process.
+     *
+     * @param aCacheKey the cache key of the tile layer
+     * @return the layer id
+     */
+    public static int layerId(final String aCacheKey) {
+        final String cacheKey = aCacheKey != null ? aCacheKey : "";
+        final Integer id = sLayerIds.get(cacheKey);
+        if (id != null) {
+            return id;
+        }
+        synchronized (sLayerIds) {
+            Integer existing = sLayerIds.get(cacheKey);
+            if (existing == null) {
+                existing = sLayerIds.size();
+                if (existing > LAYER_ID_MASK) {
+                    Log.w(TAG, "Too many tile layers, tiles of '" + cacheKey + "' may share cache entries");
+                }
+                sLayerIds.put(cacheKey, existing);
+            }
+            return existing;
+        }
     }
 
     public int getZ() {
@@ -59,17 +133,33 @@ public class MapTile implements GeoConstants, MapboxConstants, TileLayerConstant
         return y;
     }
 
+    /**
+     * Gets the layer and coordinates of this tile packed into a long, see
+     * {@link #tileKey(int, int, int, int)}.
+     *
+     * @return the packed tile key
+     */
+    public long getKey() {
+        return key;
+    }
+
     public String getPath() {
+        if (path == null) {
+            path = (new StringBuilder()).append(z).append('/').append(x).append('/').append(y).toString();
+        }
         return path;
     }
 
     public String getCacheKey() {
+        if (cacheKey == null) {
+            cacheKey = prefix + "/" + getPath();
+        }
         return cacheKey;
     }
 
     @Override
     public String toString() {
-        return path;
+        return getPath();
     }
 
     @Override
@@ -111,24 +201,24 @@ public class MapTile implements GeoConstants, MapboxConstants, TileLayerConstant
 
     private double[] TileBounds(int tx, int ty, int zoom) {
         // Returns bounds of the given tile in EPSG:900913 coordinates
-        double[] wn = PixelsToMeters(tx * tileSize, ty * tileSize, zoom);
-        double[] es = PixelsToMeters((tx + 1) * tileSize, (ty + 1) * tileSize, zoom);
+        double[] wn = PixelsToMeters(tx * TILE_SIZE, ty * TILE_SIZE, zoom);
+        double[] es = PixelsToMeters((tx + 1) * TILE_SIZE, (ty + 1) * TILE_SIZE, zoom);
         return new double[]{wn[0], wn[1], es[0], es[1]};
     }
 
     private double[] PixelsToMeters(double px, double py, double zoom) {
         // Converts pixel coordinates in given zoom level of pyramid to EPSG:900913
         double res = Resolution(zoom);
-        double mx = px * res - originShift;
-        double my = py * res - originShift;
+        double mx = px * res - ORIGIN_SHIFT;
+        double my = py * res - ORIGIN_SHIFT;
 
         return new double[]{mx, my};
     }
 
     private double[] MetersToLatLon(double mx, double my) {
         // Converts XY point from Spherical Mercator EPSG:900913 to lat/lon in WGS84 Datum
-        double lon = (mx / originShift) * 180.0;
-        double lat = (my / originShift) * 180.0;
+        double lon = (mx / ORIGIN_SHIFT) * 180.0;
+        double lat = (my / ORIGIN_SHIFT) * 180.0;
         lat = -180 / Math.PI * (2 * Math.atan(Math.exp(lat * Math.PI / 180.0)) - Math.PI / 2.0);
 
         return new double[]{lat, lon};
@@ -136,6 +226,6 @@ public class MapTile implements GeoConstants, MapboxConstants, TileLayerConstant
 
     private double Resolution(double zoom) {
         // Resolution (meters/pixel) for given zoom level (measured at Equator)
-        return initialResolution / Math.pow(2, zoom);
+        return INITIAL_RESOLUTION / Math.pow(2, zoom);
     }
 }
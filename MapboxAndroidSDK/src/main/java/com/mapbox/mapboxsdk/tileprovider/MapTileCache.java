@@ -10,13 +10,16 @@ import android.os.Environment;
 import android.util.Log;
 
 import com.mapbox.mapboxsdk.tileprovider.constants.TileLayerConstants;
+import com.mapbox.mapboxsdk.tileprovider.tilesource.ITileLayer;
 import com.mapbox.mapboxsdk.util.BitmapUtils;
 
 import java.io.File;
 import java.io.InputStream;
 
 import uk.co.senab.bitmapcache.BitmapLruCache;
+import uk.co.senab.bitmapcache.BitmapPool;
 import uk.co.senab.bitmapcache.CacheableBitmapDrawable;
+import uk.co.senab.bitmapcache.LongLruCache;
 
 /**
  * A wrapper around a BitmapLruCache that stores tiles on disk in order
@@ -25,10 +28,12 @@ import uk.co.senab.bitmapcache.CacheableBitmapDrawable;
 public class MapTileCache implements TileLayerConstants {
 
     protected static BitmapLruCache sCachedTiles = null;
+    protected static LongLruCache<byte[]> sEncodedTiles = null;
     private Context context;
     static final String TAG = "MapTileCache";
     private static final String DISK_CACHE_SUBDIR = "mapbox_tiles_cache";
     private int mMaximumCacheSize;
+    private int mMaximumEncodedCacheSize = CACHE_MAPTILEENCODEDSIZE_DEFAULT;
 
     private boolean mDiskCacheEnabled = false;
 
@@ -70,6 +75,30 @@ public class MapTileCache implements TileLayerConstants {
         return sCachedTiles;
     }
 
+    /**
+     * Get the cache of encoded tiles, keyed by {@link #getMemoryKey(MapTile)}, creating it first
+     * if there isn't one yet. It holds the tiles as they were loaded from the network, an MBTiles
+     * file or the disk cache, which are a fraction of the size of the decoded Bitmaps, so tiles
+     * evicted from the Bitmap cache are decoded from memory rather than read from storage again.
+     *
+     * @return the cache of encoded tiles
+     */
+    protected LongLruCache<byte[]> getEncodedCache() {
+        if (sEncodedTiles == null) {
+            // Never more than half of what the decoded tiles may use
+            final int maxSize = Math.min(mMaximumEncodedCacheSize,
+                    BitmapUtils.calculateMemoryCacheSize(context) / 2);
+            sEncodedTiles = new LongLruCache<byte[]>(Math.max(maxSize, 1)) {
+                @Override
+                protected int sizeOf(long key, byte[] value) {
+                    return value.length;
+                }
+            };
+            Log.i(TAG, "Encoded tile cache size: '" + maxSize + "'");
+        }
+        return sEncodedTiles;
+    }
+
     /**
      * Computes a prefixed key for a tile.
      *
@@ -80,46 +109,185 @@ public class MapTileCache implements TileLayerConstants {
         return aTile.getCacheKey();
     }
 
+    /**
+     * Computes the memory cache key for a tile. Tiles are looked up in memory for every frame, so
+     * the memory cache uses the packed layer and coordinates of the tile, and only the disk cache
+     * is keyed by {@link #getCacheKey(MapTile)}.
+     *
+     * @param aTile the tile
+     * @return the key
+     */
+    public long getMemoryKey(MapTile aTile) {
+        return aTile.getKey();
+    }
+
     public CacheableBitmapDrawable getMapTile(final MapTile aTile) {
-        String key = getCacheKey(aTile);
-        CacheableBitmapDrawable result = getCache().getFromMemoryCache(key);
+        CacheableBitmapDrawable result = getMapTileFromMemory(aTile);
         if (result == null) {
-            result = getCache().getFromDiskCache(key, null);
+            result = getMapTileFromDisk(aTile);
         }
         return result;
     }
 
     public CacheableBitmapDrawable getMapTileFromMemory(final MapTile aTile) {
-        return getCache().getFromMemoryCache(getCacheKey(aTile));
+        return getMapTileFromMemory(getMemoryKey(aTile));
+    }
+
+    public CacheableBitmapDrawable getMapTileFromMemory(final long aMemoryKey) {
+        return getCache().getFromMemoryCache(aMemoryKey);
     }
 
     public CacheableBitmapDrawable getMapTileFromDisk(final MapTile aTile) {
-        return getCache().getFromDiskCache(getCacheKey(aTile), null);
+        return getMapTileFromDisk(aTile, null);
+    }
+
+    /**
+     * Decodes a tile from the cache of encoded tiles, see {@link #getEncodedCache()}, and puts
+     * the result in the Bitmap cache. Must not be called from the main thread.
+     *
+     * @return the decoded tile, or null if the tile is not in the cache of encoded tiles
+     */
+    public CacheableBitmapDrawable getMapTileFromEncodedCache(final MapTile aTile,
+                                                             final BitmapFactory.Options decodeOpts) {
+        final byte[] data = getEncodedCache().get(getMemoryKey(aTile));
+        return data != null ? decodeTile(aTile, data, decodeOpts) : null;
+    }
+
+    /**
+     * Looks up a tile which is not in the Bitmap cache. The tile is decoded from the cache of
+     * encoded tiles if it is there, and read from the disk cache otherwise. Either way, the
+     * result is put in the Bitmap cache. Must not be called from the main thread.
+     */
+    public CacheableBitmapDrawable getMapTileFromDisk(final MapTile aTile,
+                                                      final BitmapFactory.Options decodeOpts) {
+        final CacheableBitmapDrawable result = getMapTileFromEncodedCache(aTile, decodeOpts);
+        if (result != null || !getCache().isDiskCacheEnabled()) {
+            return result;
+        }
+
+        final byte[] data = getCache().getBytesFromDiskCache(getCacheKey(aTile));
+        if (data == null) {
+            // Not on disk, or only queued there as a Bitmap
+            return getCache().getFromDiskCache(getCacheKey(aTile), getMemoryKey(aTile),
+                    decodeOpts);
+        }
+        getEncodedCache().put(getMemoryKey(aTile), data);
+        return decodeTile(aTile, data, decodeOpts);
+    }
+
+    private CacheableBitmapDrawable decodeTile(final MapTile aTile, final byte[] data,
+                                               final BitmapFactory.Options decodeOpts) {
+        final CacheableBitmapDrawable result =
+                putTileInMemoryCache(aTile, decodeBitmap(data, decodeOpts));
+        if (result == null) {
+            // The contents can't be decoded, don't hand them out again
+            getEncodedCache().remove(getMemoryKey(aTile));
+            if (getCache().isDiskCacheEnabled()) {
+                getCache().removeFromDiskCache(getCacheKey(aTile));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates the options to decode tiles of a layer with. Knowing the tile size up front lets
+     * the cache decode a tile in a single pass, straight into a reused bitmap.
+     *
+     * @param tileSizePixels the tile size of the layer, see
+     *                       {@link com.mapbox.mapboxsdk.tileprovider.tilesource.ITileLayer#getTileSizePixels()}
+     * @return the decode options, a new instance for every tile
+     */
+    public BitmapFactory.Options getDecodeOptions(final int tileSizePixels) {
+        return getDecodeOptions(tileSizePixels, null);
+    }
+
+    /**
+     * Creates the options to decode the tiles of a layer with, in the layer's tile size and
+     * pixel format.
+     *
+     * @param aLayer the tile layer
+     * @return the decode options, a new instance for every tile
+     */
+    public BitmapFactory.Options getDecodeOptions(final ITileLayer aLayer) {
+        if (aLayer == null) {
+            return null;
+        }
+        return getDecodeOptions(aLayer.getTileSizePixels(), aLayer.getBitmapConfig());
+    }
+
+    /**
+     * Creates the options to decode tiles of the given size with, in the given pixel format.
+     *
+     * @param tileSizePixels the tile size, or 0 if unknown
+     * @param config the pixel format, or null for the default one
+     * @return the decode options, a new instance for every tile
+     */
+    public BitmapFactory.Options getDecodeOptions(final int tileSizePixels,
+                                                  final Bitmap.Config config) {
+        final BitmapFactory.Options opts;
+        if (tileSizePixels > 0) {
+            opts = new BitmapLruCache.SizedDecodeOptions(tileSizePixels, tileSizePixels);
+        } else if (config != null) {
+            opts = new BitmapFactory.Options();
+        } else {
+            return null;
+        }
+        if (config != null) {
+            opts.inPreferredConfig = config;
+            // Dithering keeps gradients in imagery smooth when dropping to 16 bits
+            opts.inDither = config == Bitmap.Config.RGB_565;
+        }
+        return opts;
     }
 
     public CacheableBitmapDrawable putTileStream(final MapTile aTile, final InputStream inputStream,
                                                  final BitmapFactory.Options decodeOpts) {
-        return getCache().put(getCacheKey(aTile), inputStream, decodeOpts);
+        return getCache().put(getCacheKey(aTile), getMemoryKey(aTile), inputStream, decodeOpts);
+    }
+
+    /**
+     * Decodes the encoded contents of a tile and caches both the result and the contents in
+     * memory. The contents are also queued to be written to disk as they are, without compressing the Bitmap
+     * again. Must not be called from the main thread.
+     *
+     * @param aTile the tile
+     * @param data the encoded tile, as loaded from its source
+     * @param decodeOpts the options to decode with, see {@link #getDecodeOptions(ITileLayer)}
+     * @return the decoded tile, or null if it could not be decoded
+     */
+    public CacheableBitmapDrawable putTileBytes(final MapTile aTile, final byte[] data,
+                                                final BitmapFactory.Options decodeOpts) {
+        final CacheableBitmapDrawable result =
+                getCache().put(getCacheKey(aTile), getMemoryKey(aTile), data, decodeOpts);
+        if (result != null) {
+            getEncodedCache().put(getMemoryKey(aTile), data);
+        }
+        return result;
     }
 
     public CacheableBitmapDrawable putTileBitmap(final MapTile aTile, final Bitmap bitmap) {
-        return getCache().put(getCacheKey(aTile), bitmap);
+        CacheableBitmapDrawable drawable = putTileInMemoryCache(aTile, bitmap);
+        if (drawable != null && getCache().isDiskCacheEnabled()) {
+            getCache().putInDiskCacheAsync(getCacheKey(aTile), drawable);
+        }
+        return drawable;
     }
 
+    /**
+     * Caches a tile in memory if it is not there yet, and queues it to be written to disk. This
+     * method is safe to be called from the main thread.
+     */
     public CacheableBitmapDrawable putTile(final MapTile aTile, final Drawable aDrawable) {
         if (aDrawable != null && aDrawable instanceof BitmapDrawable) {
-            String key = getCacheKey(aTile);
             CacheableBitmapDrawable drawable = null;
-            if (!getCache().containsInMemoryCache(key)) {
-                drawable = getCache().putInMemoryCache(getCacheKey(aTile),
-                        ((BitmapDrawable) aDrawable).getBitmap());
+            if (!getCache().containsInMemoryCache(getMemoryKey(aTile))) {
+                drawable = putTileInMemoryCache(aTile, aDrawable);
             }
-            if (getCache().isDiskCacheEnabled() && !getCache().containsInDiskCache(key)) {
+            if (getCache().isDiskCacheEnabled()) {
                 if (drawable != null) {
-                    getCache().putInDiskCache(getCacheKey(aTile), drawable);
+                    getCache().putInDiskCacheAsync(getCacheKey(aTile), drawable);
                 } else {
-                    getCache().putInDiskCache(getCacheKey(aTile),
-                            ((BitmapDrawable) aDrawable).getBitmap());
+                    putTileInDiskCache(aTile, aDrawable);
                 }
             }
             return drawable;
@@ -129,7 +297,8 @@ public class MapTileCache implements TileLayerConstants {
 
     public CacheableBitmapDrawable putTileInMemoryCache(final MapTile aTile, final Bitmap aBitmap) {
         if (aBitmap != null) {
-            return getCache().putInMemoryCache(getCacheKey(aTile), aBitmap);
+            return getCache().putInMemoryCache(getCacheKey(aTile),
+                    createCacheableBitmapDrawable(aBitmap, aTile));
         }
         return null;
     }
@@ -138,29 +307,46 @@ public class MapTileCache implements TileLayerConstants {
                                                         final Drawable aDrawable) {
         if (aDrawable != null && aDrawable instanceof BitmapDrawable) {
             String key = getCacheKey(aTile);
-            if (aDrawable instanceof CacheableBitmapDrawable) {
+            if (aDrawable instanceof CacheableBitmapDrawable
+                    && ((CacheableBitmapDrawable) aDrawable).getMemoryKey() == getMemoryKey(aTile)) {
                 return getCache().putInMemoryCache(key, ((CacheableBitmapDrawable) aDrawable));
             } else {
-                return getCache().putInMemoryCache(key, ((BitmapDrawable) aDrawable).getBitmap());
+                return putTileInMemoryCache(aTile, ((BitmapDrawable) aDrawable).getBitmap());
             }
         }
         return null;
     }
 
+    /**
+     * Queues a tile to be written to disk, unless the disk cache has it already. This method is
+     * safe to be called from the main thread.
+     *
+     * @return the drawable queued for writing, or null if nothing was queued
+     */
     public CacheableBitmapDrawable putTileInDiskCache(final MapTile aTile,
                                                       final Drawable aDrawable) {
-        if (aDrawable != null && aDrawable instanceof BitmapDrawable) {
-            String key = getCacheKey(aTile);
-            if (getCache().isDiskCacheEnabled() && !getCache().containsInDiskCache(key)) {
-                return getCache().putInDiskCache(getCacheKey(aTile),
-                        ((BitmapDrawable) aDrawable).getBitmap());
+        if (aDrawable != null && aDrawable instanceof BitmapDrawable
+                && getCache().isDiskCacheEnabled()) {
+            final CacheableBitmapDrawable drawable;
+            if (aDrawable instanceof CacheableBitmapDrawable) {
+                drawable = (CacheableBitmapDrawable) aDrawable;
+            } else {
+                // The Bitmap is not ours, never let the wrapper recycle it
+                drawable = new CacheableBitmapDrawable(getCacheKey(aTile), getMemoryKey(aTile),
+                        context.getResources(), ((BitmapDrawable) aDrawable).getBitmap(),
+                        BitmapLruCache.RecyclePolicy.DISABLED, CacheableBitmapDrawable.SOURCE_UNKNOWN);
+            }
+            // The writer checks the disk cache itself, off the calling thread
+            if (getCache().putInDiskCacheAsync(getCacheKey(aTile), drawable)) {
+                return drawable;
             }
         }
         return null;
     }
 
     public boolean containsTile(final MapTile aTile) {
-        return getCache().contains(getCacheKey(aTile));
+        return getCache().containsInMemoryCache(getMemoryKey(aTile))
+                || getCache().containsInDiskCache(getCacheKey(aTile));
     }
 
     public boolean containsTileInDiskCache(final MapTile aTile) {
@@ -168,16 +354,18 @@ public class MapTileCache implements TileLayerConstants {
     }
 
     public void removeTile(final MapTile aTile) {
-        getCache().remove(getCacheKey(aTile));
+        removeTileFromMemory(aTile);
+        getCache().removeFromDiskCache(getCacheKey(aTile));
     }
 
     public void removeTileFromMemory(final MapTile aTile) {
-        String key = getCacheKey(aTile);
-        getCache().removeFromMemoryCache(key);
+        getCache().removeFromMemoryCache(getMemoryKey(aTile));
+        getEncodedCache().remove(getMemoryKey(aTile));
     }
 
     public void purgeMemoryCache() {
         getCache().purgeMemoryCache();
+        getEncodedCache().evictAll();
     }
 
     public void purgeDiskCache() {
@@ -186,13 +374,25 @@ public class MapTileCache implements TileLayerConstants {
 
     public CacheableBitmapDrawable createCacheableBitmapDrawable(Bitmap bitmap, MapTile aTile) {
         return getCache().createCacheableBitmapDrawable(bitmap, getCacheKey(aTile),
-                CacheableBitmapDrawable.SOURCE_UNKNOWN);
+                getMemoryKey(aTile), CacheableBitmapDrawable.SOURCE_UNKNOWN);
     }
 
     public Bitmap getBitmapFromRemoved(final int width, final int height) {
         return getCache().getBitmapFromRemoved(width, height);
     }
 
+    public Bitmap getBitmapFromRemoved(final int width, final int height,
+                                       final Bitmap.Config config) {
+        return getCache().getBitmapFromRemoved(width, height, config);
+    }
+
+    /**
+     * @return the pool of tile Bitmaps reused for decoding, or null if Bitmaps are not reused
+     */
+    public BitmapPool getBitmapPool() {
+        return getCache().getBitmapPool();
+    }
+
     public Bitmap decodeBitmap(final byte[] data, final BitmapFactory.Options opts) {
         return getCache().decodeBitmap(new BitmapLruCache.ByteArrayInputStreamProvider(data), opts);
     }
@@ -229,4 +429,20 @@ public class MapTileCache implements TileLayerConstants {
     public boolean isDiskCacheEnabled() {
         return mDiskCacheEnabled;
     }
+
+    /**
+     * Sets the size of the in-memory cache of encoded tiles, see {@link #getEncodedCache()}.
+     *
+     * @param maxSize the maximum size in bytes, at most half of the Bitmap cache size is used
+     */
+    public void setEncodedCacheMaxSize(final int maxSize) {
+        if (mMaximumEncodedCacheSize != maxSize) {
+            mMaximumEncodedCacheSize = maxSize;
+            sEncodedTiles = null;
+        }
+    }
+
+    public int getEncodedCacheMaxSize() {
+        return mMaximumEncodedCacheSize;
+    }
 }
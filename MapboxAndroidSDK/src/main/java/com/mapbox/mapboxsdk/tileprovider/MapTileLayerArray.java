@@ -1,17 +1,20 @@
 package com.mapbox.mapboxsdk.tileprovider;
 
 import android.content.Context;
+import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import com.mapbox.mapboxsdk.geometry.BoundingBox;
 import com.mapbox.mapboxsdk.geometry.LatLng;
 import com.mapbox.mapboxsdk.tileprovider.modules.MapTileModuleLayerBase;
 import com.mapbox.mapboxsdk.tileprovider.modules.NetworkAvailabilityCheck;
+import com.mapbox.mapboxsdk.tileprovider.modules.TileRequestScheduler;
 import com.mapbox.mapboxsdk.tileprovider.tilesource.ITileLayer;
 import com.mapbox.mapboxsdk.util.BitmapUtils;
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import uk.co.senab.bitmapcache.CacheableBitmapDrawable;
 
 /**
@@ -32,14 +35,23 @@ import uk.co.senab.bitmapcache.CacheableBitmapDrawable;
  */
 public class MapTileLayerArray extends MapTileLayerBase {
 
-    protected final HashMap<MapTile, MapTileRequestState> mWorking;
+    /**
+     * Requests in progress, keyed by {@link MapTile#getKey()}. This is read from the UI thread
+     * for every visible tile on every frame, so it must never block on the loader threads.
+     */
+    protected final ConcurrentHashMap<Long, MapTileRequestState> mWorking;
 
     protected final List<MapTileModuleLayerBase> mTileProviderList;
 
-    protected final List<MapTile> mUnaccessibleTiles;
+    /**
+     * Keys of the tiles that could not be loaded while offline, see {@link MapTile#getKey()}
+     */
+    protected final Set<Long> mUnaccessibleTiles;
 
     protected final NetworkAvailabilityCheck mNetworkAvailabilityCheck;
 
+    protected final TileRequestScheduler mRequestScheduler;
+
     /**
      * Creates an {@link MapTileLayerArray} with no tile providers.
      *
@@ -61,18 +73,37 @@ public class MapTileLayerArray extends MapTileLayerBase {
                              final MapTileModuleLayerBase[] pTileProviderArray) {
         super(context, pTileSource);
 
-        mWorking = new HashMap<MapTile, MapTileRequestState>();
-        mUnaccessibleTiles = new ArrayList<MapTile>();
+        mWorking = new ConcurrentHashMap<Long, MapTileRequestState>();
+        mUnaccessibleTiles = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
 
         mNetworkAvailabilityCheck = new NetworkAvailabilityCheck(context);
+        mRequestScheduler = new TileRequestScheduler(TILE_DOWNLOAD_MAXIMUM_QUEUE_SIZE);
 
-        mTileProviderList = new ArrayList<MapTileModuleLayerBase>();
+        mTileProviderList = new CopyOnWriteArrayList<MapTileModuleLayerBase>();
         if (pTileProviderArray != null) {
             mCacheKey = pTileProviderArray[0].getCacheKey();
+            for (final MapTileModuleLayerBase provider : pTileProviderArray) {
+                provider.setRequestScheduler(mRequestScheduler);
+            }
             Collections.addAll(mTileProviderList, pTileProviderArray);
         }
     }
 
+    /**
+     * Gets the scheduler shared by the tile providers of this layer, which also exposes the
+     * queue depth and wait time of pending requests.
+     *
+     * @return the request scheduler
+     */
+    public TileRequestScheduler getRequestScheduler() {
+        return mRequestScheduler;
+    }
+
+    @Override
+    public void setViewport(final int zoomLevel, final float centerX, final float centerY) {
+        mRequestScheduler.setViewport(zoomLevel, centerX, centerY);
+    }
+
     @Override
     public void detach() {
         if (getTileSource() != null) {
@@ -85,9 +116,7 @@ public class MapTileLayerArray extends MapTileLayerBase {
             }
         }
 
-        synchronized (mWorking) {
-            mWorking.clear();
-        }
+        mWorking.clear();
     }
 
     private boolean networkAvailable() {
@@ -101,16 +130,37 @@ public class MapTileLayerArray extends MapTileLayerBase {
      * @return whether the tile is unavailable
      */
     private boolean tileUnavailable(final MapTile pTile) {
+        return tileUnavailable(pTile.getKey());
+    }
+
+    private boolean tileUnavailable(final long pTileKey) {
         if (mUnaccessibleTiles.size() > 0) {
             if (networkAvailable() || !useDataConnection()) {
                 mUnaccessibleTiles.clear();
-            } else if (mUnaccessibleTiles.contains(pTile)) {
+            } else if (mUnaccessibleTiles.contains(pTileKey)) {
                 return true;
             }
         }
         return false;
     }
 
+    @Override
+    public Drawable getMapTile(final String pCacheKey, final long pTileKey, final Rect pTileRect,
+                               final boolean allowRemote) {
+        if (tileUnavailable(pTileKey)) {
+            return null;
+        }
+        final CacheableBitmapDrawable tileDrawable = mTileCache.getMapTileFromMemory(pTileKey);
+        if (tileDrawable != null && tileDrawable.isBitmapValid() && !BitmapUtils.isCacheDrawableExpired(tileDrawable)) {
+            tileDrawable.setBeingUsed(true);
+            return tileDrawable;
+        }
+        // Only tiles which aren't in memory yet need a MapTile, to be requested
+        final MapTile tile = new MapTile(pCacheKey, pTileKey);
+        tile.setTileRect(pTileRect);
+        return getMapTile(tile, allowRemote);
+    }
+
     @Override
     public Drawable getMapTile(final MapTile pTile, final boolean allowRemote) {
         //       Log.d(TAG, "getMapTile() with pTile (CacheKey) = '" + pTile.getCacheKey() + "'; allowRemote = '" + allowRemote + "'");
@@ -127,36 +177,13 @@ public class MapTileLayerArray extends MapTileLayerBase {
             return tileDrawable;
         } else if (allowRemote) {
 //            Log.d(TAG, "Tile not found in memory so will load from remote.");
-            boolean alreadyInProgress = false;
-            synchronized (mWorking) {
-                alreadyInProgress = mWorking.containsKey(pTile);
-            }
-
-            if (!alreadyInProgress) {
+            final MapTileRequestState inProgress = mWorking.get(pTile.getKey());
+            if (inProgress == null) {
 //                Log.d(TAG, "MapTileLayerArray.getMapTile() requested but not in cache, trying from async providers: " + pTile);
-
-                final MapTileRequestState state;
-
-                synchronized (mTileProviderList) {
-                    final MapTileModuleLayerBase[] providerArray = new MapTileModuleLayerBase[mTileProviderList.size()];
-                    state = new MapTileRequestState(pTile, mTileProviderList.toArray(providerArray), this);
-                }
-
-                synchronized (mWorking) {
-                    // Check again
-                    alreadyInProgress = mWorking.containsKey(pTile);
-                    if (alreadyInProgress) {
-                        return null;
-                    }
-                    mWorking.put(pTile, state);
-                }
-
-                final MapTileModuleLayerBase provider = findNextAppropriateProvider(state);
-                if (provider != null) {
-                    provider.loadMapTileAsync(state);
-                } else {
-                    mapTileRequestFailed(state);
-                }
+                requestMapTile(pTile, false);
+            } else if (inProgress.isPrefetch()) {
+                // the tile is on screen now, so it is no longer just a prefetch
+                inProgress.setPrefetch(false);
             }
             return tileDrawable;
         }
@@ -169,12 +196,59 @@ public class MapTileLayerArray extends MapTileLayerBase {
         return null;
     }
 
+    @Override
+    public void setPrefetchArea(final float centerX, final float centerY, final float radius) {
+        mRequestScheduler.setPrefetchArea(centerX, centerY, radius);
+    }
+
+    @Override
+    public boolean canPrefetch() {
+        return mRequestScheduler.hasRoomForPrefetch();
+    }
+
+    @Override
+    public void prefetchMapTile(final MapTile pTile) {
+        if (!canPrefetch() || tileUnavailable(pTile)) {
+            return;
+        }
+        final CacheableBitmapDrawable tileDrawable = mTileCache.getMapTileFromMemory(pTile);
+        if (tileDrawable != null && tileDrawable.isBitmapValid()) {
+            return;
+        }
+        if (mWorking.containsKey(pTile.getKey())) {
+            return;
+        }
+        requestMapTile(pTile, true);
+    }
+
+    /**
+     * Sends a tile request through the asynchronous tile request chain, unless the tile is
+     * already in progress.
+     */
+    private void requestMapTile(final MapTile pTile, final boolean prefetch) {
+        // The provider list is copy-on-write, so this takes a consistent snapshot without locking
+        final MapTileModuleLayerBase[] providerArray =
+                mTileProviderList.toArray(new MapTileModuleLayerBase[0]);
+        final MapTileRequestState state = new MapTileRequestState(pTile, providerArray, this);
+        state.setPrefetch(prefetch);
+
+        if (mWorking.putIfAbsent(pTile.getKey(), state) != null) {
+            // Another thread requested this tile in the meantime
+            return;
+        }
+
+        final MapTileModuleLayerBase provider = findNextAppropriateProvider(state);
+        if (provider != null) {
+            provider.loadMapTileAsync(state);
+        } else {
+            mapTileRequestFailed(state);
+        }
+    }
+
     @Override
     public void mapTileRequestCompleted(final MapTileRequestState aState,
                                         final Drawable aDrawable) {
-        synchronized (mWorking) {
-            mWorking.remove(aState.getMapTile());
-        }
+        mWorking.remove(aState.getMapTile().getKey(), aState);
         super.mapTileRequestCompleted(aState, aDrawable);
     }
 
@@ -184,16 +258,20 @@ public class MapTileLayerArray extends MapTileLayerBase {
         if (nextProvider != null) {
             nextProvider.loadMapTileAsync(aState);
         } else {
-            synchronized (mWorking) {
-                mWorking.remove(aState.getMapTile());
-            }
+            mWorking.remove(aState.getMapTile().getKey(), aState);
             if (!networkAvailable()) {
-                mUnaccessibleTiles.add(aState.getMapTile());
+                mUnaccessibleTiles.add(aState.getMapTile().getKey());
             }
             super.mapTileRequestFailed(aState);
         }
     }
 
+    @Override
+    public void mapTileRequestCancelled(final MapTileRequestState aState) {
+        mWorking.remove(aState.getMapTile().getKey(), aState);
+        super.mapTileRequestCancelled(aState);
+    }
+
     @Override
     public void mapTileRequestExpiredTile(MapTileRequestState aState,
                                           CacheableBitmapDrawable aDrawable) {
@@ -206,9 +284,7 @@ public class MapTileLayerArray extends MapTileLayerBase {
         if (nextProvider != null) {
             nextProvider.loadMapTileAsync(aState);
         } else {
-            synchronized (mWorking) {
-                mWorking.remove(aState.getMapTile());
-            }
+            mWorking.remove(aState.getMapTile().getKey(), aState);
         }
     }
 
@@ -244,9 +320,7 @@ public class MapTileLayerArray extends MapTileLayerBase {
     }
 
     public boolean getProviderExists(final MapTileModuleLayerBase provider) {
-        synchronized (mTileProviderList) {
-            return mTileProviderList.contains(provider);
-        }
+        return mTileProviderList.contains(provider);
     }
 
     @Override
@@ -3,8 +3,8 @@ package com.mapbox.mapboxsdk.tileprovider;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
-import android.os.AsyncTask;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
@@ -47,6 +47,23 @@ public abstract class MapTileLayerBase implements IMapTileProviderCallback, Tile
      */
     public abstract Drawable getMapTile(MapTile pTile, boolean allowRemote);
 
+    /**
+     * Same as {@link #getMapTile(MapTile, boolean)} for the tile of a packed key, see
+     * {@link MapTile#getKey()}. This is called for every visible tile on every frame, so
+     * implementations should only create the {@link MapTile} when the tile isn't in memory.
+     *
+     * @param pCacheKey   the cache key of this layer
+     * @param pTileKey    the packed tile key
+     * @param pTileRect   the screen rect of the tile, to invalidate once it is loaded
+     * @param allowRemote whether the tile may be requested if it isn't in memory
+     */
+    public Drawable getMapTile(final String pCacheKey, final long pTileKey, final Rect pTileRect,
+                               final boolean allowRemote) {
+        final MapTile tile = new MapTile(pCacheKey, pTileKey);
+        tile.setTileRect(pTileRect);
+        return getMapTile(tile, allowRemote);
+    }
+
     public abstract void detach();
 
     /**
@@ -197,6 +214,19 @@ public abstract class MapTileLayerBase implements IMapTileProviderCallback, Tile
         }
     }
 
+    /**
+     * Called by the request scheduler when a pending request is dropped because its tile is no
+     * longer needed. Nothing is sent to the handler, the map has moved on already.
+     *
+     * @param pState the map tile request state object
+     */
+    @Override
+    public void mapTileRequestCancelled(final MapTileRequestState pState) {
+        if (DEBUG_TILE_PROVIDERS) {
+            Log.d(TAG, "MapTileLayerBase.mapTileRequestCancelled(): " + pState.getMapTile());
+        }
+    }
+
     /**
      * Called by implementation class methods indicating that they have produced an expired result
      * that can be used but better results may be delivered later. The tile is added to the cache,
@@ -221,26 +251,13 @@ public abstract class MapTileLayerBase implements IMapTileProviderCallback, Tile
         }
     }
 
-    private void putTileIntoCacheInternal(final MapTile pTile, final Drawable pDrawable) {
-        mTileCache.putTile(pTile, pDrawable);
-    }
-
-    private class CacheTask extends AsyncTask<Object, Void, Void> {
-
-        @Override
-        protected Void doInBackground(Object... params) {
-            putTileIntoCacheInternal((MapTile) params[0], (Drawable) params[1]);
-            return null;
-        }
-    }
-
+    /**
+     * Caches a tile. Only the memory cache is updated on the calling thread, the disk cache is
+     * written from its own background queue, so this is safe to call from the main thread.
+     */
     private void putTileIntoCache(final MapTile pTile, final Drawable pDrawable) {
         if (pDrawable != null) {
-            if (Looper.myLooper() == Looper.getMainLooper()) {
-                (new CacheTask()).execute(pTile, pDrawable);
-            } else {
-                putTileIntoCacheInternal(pTile, pDrawable);
-            }
+            mTileCache.putTile(pTile, pDrawable);
         }
     }
 
@@ -260,6 +277,46 @@ public abstract class MapTileLayerBase implements IMapTileProviderCallback, Tile
         BitmapUtils.setCacheDrawableExpired(drawable);
     }
 
+    /**
+     * Tells the tile provider which part of the map is being drawn, so that pending tile
+     * requests can be prioritized. Does nothing by default.
+     *
+     * @param zoomLevel the integer zoom level of the tiles being drawn
+     * @param centerX the x coordinate of the viewport center, in tiles at that zoom level
+     * @param centerY the y coordinate of the viewport center, in tiles at that zoom level
+     */
+    public void setViewport(final int zoomLevel, final float centerX, final float centerY) {
+    }
+
+    /**
+     * Sets the area around the viewport in which tiles are prefetched. Pending prefetch
+     * requests outside of it are cancelled. Does nothing by default.
+     *
+     * @param centerX the x coordinate of the area center, in tiles at the current zoom level
+     * @param centerY the y coordinate of the area center, in tiles at the current zoom level
+     * @param radius the radius of the area, in tiles at the current zoom level
+     */
+    public void setPrefetchArea(final float centerX, final float centerY, final float radius) {
+    }
+
+    /**
+     * Whether this tile provider can take more prefetch requests right now.
+     *
+     * @return false by default, as prefetching is not supported
+     */
+    public boolean canPrefetch() {
+        return false;
+    }
+
+    /**
+     * Requests a tile that is not on screen yet, at a lower priority than the tiles on screen.
+     * Does nothing by default.
+     *
+     * @param pTile the tile to load ahead of time
+     */
+    public void prefetchMapTile(final MapTile pTile) {
+    }
+
     public void setTileRequestCompleteHandler(final Handler handler) {
         mTileRequestCompleteHandler = handler;
     }
@@ -315,6 +372,11 @@ public abstract class MapTileLayerBase implements IMapTileProviderCallback, Tile
         return (mTileCache != null) ? mTileCache.getBitmapFromRemoved(width, height) : null;
     }
 
+    public Bitmap getBitmapFromRemoved(final int width, final int height,
+            final Bitmap.Config config) {
+        return (mTileCache != null) ? mTileCache.getBitmapFromRemoved(width, height, config) : null;
+    }
+
     /**
      * If a given MapTile is present in this cache, remove it from memory.
      * @param aTile
@@ -63,6 +63,7 @@ public class MapTileLayerBasic extends MapTileLayerArray implements IMapTileProv
         }
         final MapTileDownloader downloaderProvider =
                 new MapTileDownloader(pTileSource, mTileCache, mNetworkAvailabilityCheck, mMapView);
+        downloaderProvider.setRequestScheduler(mRequestScheduler);
         if (hasNoSource()) {
             mCacheKey = pTileSource.getCacheKey();
         }
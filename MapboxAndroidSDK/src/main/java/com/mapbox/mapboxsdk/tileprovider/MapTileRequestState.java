@@ -15,6 +15,7 @@ public class MapTileRequestState {
     private final MapTile mMapTile;
     private final IMapTileProviderCallback mCallback;
     private MapTileModuleLayerBase mCurrentProvider;
+    private volatile boolean mPrefetch;
 
     /**
      * Initialize a new state to keep track of a map tile
@@ -47,6 +48,25 @@ public class MapTileRequestState {
         return mCallback;
     }
 
+    /**
+     * Whether this tile is only being loaded ahead of time and isn't on screen yet.
+     *
+     * @return true for a prefetch request
+     */
+    public boolean isPrefetch() {
+        return mPrefetch;
+    }
+
+    /**
+     * Marks this request as a prefetch, or promotes it to a regular request once the tile
+     * is on screen.
+     *
+     * @param prefetch true for a prefetch request
+     */
+    public void setPrefetch(final boolean prefetch) {
+        mPrefetch = prefetch;
+    }
+
     public MapTileModuleLayerBase getNextProvider() {
         mCurrentProvider = mProviderQueue.poll();
         return mCurrentProvider;
@@ -34,6 +34,12 @@ public interface TileLayerConstants {
     public static final int CACHE_MAPTILECOUNT_DEFAULT = 9;
 
     public static final int CACHE_MAPTILEDISKSIZE_DEFAULT = 100 * 1024 * 1024;
+
+    /**
+     * Size in bytes of the in-memory cache of encoded tiles, which sits between the decoded tiles
+     * and the disk. At 10-30 KB per tile this keeps several hundred tiles a decode away.
+     */
+    public static final int CACHE_MAPTILEENCODEDSIZE_DEFAULT = 8 * 1024 * 1024;
     /**
      * number of tile download threads, conforming to OSM policy:
      * http://wiki.openstreetmap.org/wiki/Tile_usage_policy
@@ -41,4 +47,9 @@ public interface TileLayerConstants {
     public static final int NUMBER_OF_TILE_DOWNLOAD_THREADS = 8;
 
     public static final int TILE_DOWNLOAD_MAXIMUM_QUEUE_SIZE = 40;
+
+    /**
+     * number of threads reading and decoding tiles from a local database
+     */
+    public static final int NUMBER_OF_TILE_FILESYSTEM_THREADS = 4;
 }
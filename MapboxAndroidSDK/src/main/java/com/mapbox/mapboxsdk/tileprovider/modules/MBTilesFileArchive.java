@@ -39,9 +39,19 @@ public class MBTilesFileArchive implements IArchiveFile {
 
     @Override
     public InputStream getInputStream(final ITileLayer pTileSource, final MapTile pTile) {
+        final byte[] data = getTileData(pTileSource, pTile);
+        return data != null ? new ByteArrayInputStream(data) : null;
+    }
+
+    /**
+     * Reads the encoded contents of a tile.
+     *
+     * @return the tile data, or null if the archive doesn't have the tile
+     */
+    public byte[] getTileData(final ITileLayer pTileSource, final MapTile pTile) {
 
         try {
-            InputStream ret = null;
+            byte[] ret = null;
             final String[] tile = { COL_TILES_TILE_DATA };
             final String[] xyz = {
                     Integer.toString(pTile.getX()),
@@ -54,7 +64,7 @@ public class MBTilesFileArchive implements IArchiveFile {
 
             if (cur.getCount() != 0) {
                 cur.moveToFirst();
-                ret = new ByteArrayInputStream(cur.getBlob(0));
+                ret = cur.getBlob(0);
             }
             cur.close();
             if (ret != null) {
@@ -112,6 +122,13 @@ public class MBTilesFileArchive implements IArchiveFile {
         return getStringValue("template");
     }
 
+    /**
+     * @return the image format of the tiles, "png" or "jpg"
+     */
+    public String getFormat() {
+        return getStringValue("format");
+    }
+
     public String getVersion() {
         return getStringValue("version");
     }
@@ -1,5 +1,6 @@
 package com.mapbox.mapboxsdk.tileprovider.modules;
 
+import android.graphics.BitmapFactory;
 import android.graphics.drawable.Drawable;
 import android.util.Log;
 import com.mapbox.mapboxsdk.geometry.BoundingBox;
@@ -152,9 +153,18 @@ public class MapTileDownloader extends MapTileModuleLayerBase {
         public Drawable loadTile(final MapTileRequestState aState) throws CantContinueException {
             final MapTile tile = aState.getMapTile();
 //            Log.d(TAG, "loadTile() with tile = '" + tile + "'");
-            if (mTileCache != null && mTileCache.get().containsTileInDiskCache(tile)) {
-//                Log.d(TAG, "tile found in Disk Cache, so returning it. tile = '" + tile + "'");
-                return mTileCache.get().getMapTileFromDisk(tile);
+            final MapTileCache cache = mTileCache.get();
+            if (cache != null) {
+                final BitmapFactory.Options decodeOpts = cache.getDecodeOptions(mTileSource.get());
+                // Recently seen tiles are decoded from memory, without touching the disk
+                final Drawable encoded = cache.getMapTileFromEncodedCache(tile, decodeOpts);
+                if (encoded != null) {
+                    return encoded;
+                }
+                if (cache.containsTileInDiskCache(tile)) {
+//                    Log.d(TAG, "tile found in Disk Cache, so returning it. tile = '" + tile + "'");
+                    return cache.getMapTileFromDisk(tile, decodeOpts);
+                }
             }
             TileLayer tileLayer = mTileSource.get();
             Drawable result =
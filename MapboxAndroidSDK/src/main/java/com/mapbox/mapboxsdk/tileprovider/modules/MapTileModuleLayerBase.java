@@ -11,8 +11,6 @@ import com.mapbox.mapboxsdk.tileprovider.constants.TileLayerConstants;
 import com.mapbox.mapboxsdk.tileprovider.tilesource.ITileLayer;
 import com.mapbox.mapboxsdk.util.BitmapUtils;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
@@ -115,14 +113,7 @@ public abstract class MapTileModuleLayerBase implements TileLayerConstants {
 
     protected final Object mQueueLockObject = new Object();
     protected final HashMap<MapTile, MapTileRequestState> mWorking;
-    protected final LinkedHashMap<MapTile, MapTileRequestState> mPending;
-
-    public MapTileRequestState popFirstPending() {
-        for (MapTile tile : mPending.keySet()) {
-            return mPending.remove(tile);
-        }
-        return null;
-    }
+    private TileRequestScheduler mScheduler;
 
     /**
      * Initialize a new tile provider, given a thread pool and a pending queue size. The pending
@@ -139,40 +130,38 @@ public abstract class MapTileModuleLayerBase implements TileLayerConstants {
                 new ConfigurablePriorityThreadFactory(Thread.NORM_PRIORITY, getThreadGroupName()));
 
         mWorking = new HashMap<MapTile, MapTileRequestState>();
-        mPending =
-                new LinkedHashMap<MapTile, MapTileRequestState>(pPendingQueueSize + 2, 0.1f, true) {
-
-                    private static final long serialVersionUID = 6455337315681858866L;
-
-                    @Override
-                    protected boolean removeEldestEntry(
-                            final Map.Entry<MapTile, MapTileRequestState> pEldest) {
-                        while (size() > pPendingQueueSize) {
-                            MapTileRequestState state = popFirstPending();
-                            state.getCallback().mapTileRequestFailed(state);
-                        }
-                        return false;
-                    }
-                };
+        mScheduler = new TileRequestScheduler(pPendingQueueSize);
+    }
+
+    /**
+     * Gets the scheduler ordering the pending requests of this provider.
+     *
+     * @return the request scheduler
+     */
+    public TileRequestScheduler getRequestScheduler() {
+        return mScheduler;
+    }
+
+    /**
+     * Sets the scheduler ordering the pending requests of this provider. Providers of the same
+     * tile layer share one scheduler so that a tile is only queued once. This should be called
+     * before any tile is requested from this provider.
+     *
+     * @param pScheduler the request scheduler
+     */
+    public void setRequestScheduler(final TileRequestScheduler pScheduler) {
+        if (pScheduler != null) {
+            mScheduler = pScheduler;
+        }
     }
 
     /**
      * Loads a map tile asynchronously, adding it to the queue and calling getTileLoader.
      */
     public void loadMapTileAsync(final MapTileRequestState pState) {
-        synchronized (mQueueLockObject) {
-/*
-                Log.d(TAG, "MapTileModuleLayerBase.loadMaptileAsync() on provider: " + getName() + " for tile: " + pState.getMapTile());
-                if (mPending.containsKey(pState.getMapTile())) {
-                    Log.d(TAG, "MapTileModuleLayerBase.loadMaptileAsync() tile already exists in request queue for modular provider. Moving to front of queue.");
-                } else {
-                    Log.d(TAG, "MapTileModuleLayerBase.loadMaptileAsync() adding tile to request queue for modular provider.");
-                }
-*/
-            // this will put the tile in the queue, or move it to the front of
-            // the queue if it's already present
-            mPending.put(pState.getMapTile(), pState);
-        }
+        // this will put the tile in the queue, or hand it over to this provider
+        // if it's already queued for another one
+        mScheduler.offer(pState, this);
 
         try {
             mExecutor.execute(getTileLoader());
@@ -185,8 +174,8 @@ public abstract class MapTileModuleLayerBase implements TileLayerConstants {
      * Clears both pending and working queues.
      */
     protected void clearQueue() {
+        mScheduler.clear(this);
         synchronized (mQueueLockObject) {
-            mPending.clear();
             mWorking.clear();
         }
     }
@@ -210,7 +199,7 @@ public abstract class MapTileModuleLayerBase implements TileLayerConstants {
                         + " for tile: "
                         + mapTile);
             }
-            mPending.remove(mapTile);
+            mScheduler.remove(mapTile, this);
             mWorking.remove(mapTile);
         }
     }
@@ -241,23 +230,20 @@ public abstract class MapTileModuleLayerBase implements TileLayerConstants {
         }
 
         protected MapTileRequestState nextTile() {
-
-            synchronized (mQueueLockObject) {
-                // get the most recently accessed tile
-                // - the last item in the iterator that's not already being
-                // processed
-                MapTileRequestState state = popFirstPending();
-                if (state != null) {
+            // get the most urgent tile for this provider, stale ones are dropped on the way
+            MapTileRequestState state = mScheduler.poll(MapTileModuleLayerBase.this);
+            if (state != null) {
+                synchronized (mQueueLockObject) {
                     mWorking.put(state.getMapTile(), state);
-                    if (DEBUG_TILE_PROVIDERS) {
-                        Log.d(TAG, "TileLoader.nextTile() on provider: "
-                                + getName()
-                                + " adding tile to working queue: "
-                                + state.getMapTile());
-                    }
                 }
-                return state;
+                if (DEBUG_TILE_PROVIDERS) {
+                    Log.d(TAG, "TileLoader.nextTile() on provider: "
+                            + getName()
+                            + " adding tile to working queue: "
+                            + state.getMapTile());
+                }
             }
+            return state;
         }
 
         /**
@@ -0,0 +1,130 @@
+package com.mapbox.mapboxsdk.tileprovider.modules;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.drawable.Drawable;
+import com.mapbox.mapboxsdk.constants.MapboxConstants;
+import com.mapbox.mapboxsdk.geometry.BoundingBox;
+import com.mapbox.mapboxsdk.geometry.LatLng;
+import com.mapbox.mapboxsdk.offline.OfflineMapDatabase;
+import com.mapbox.mapboxsdk.tileprovider.MapTile;
+import com.mapbox.mapboxsdk.tileprovider.MapTileCache;
+import com.mapbox.mapboxsdk.tileprovider.MapTileRequestState;
+import com.mapbox.mapboxsdk.tileprovider.tilesource.ITileLayer;
+
+/**
+ * The {@link MapTileOfflineDatabaseReader} loads tiles from an {@link OfflineMapDatabase}, on its
+ * own worker threads. Tiles are only decoded into the memory cache: they are on disk already.
+ */
+public class MapTileOfflineDatabaseReader extends MapTileModuleLayerBase {
+    private static final String TAG = "MapTileOfflineDatabaseReader";
+
+    private final OfflineMapDatabase mOfflineMapDatabase;
+    private final MapTileCache mTileCache;
+    private final Bitmap.Config mBitmapConfig;
+
+    public MapTileOfflineDatabaseReader(final OfflineMapDatabase offlineMapDatabase,
+            final MapTileCache tileCache) {
+        super(NUMBER_OF_TILE_FILESYSTEM_THREADS, TILE_DOWNLOAD_MAXIMUM_QUEUE_SIZE);
+        mOfflineMapDatabase = offlineMapDatabase;
+        mTileCache = tileCache;
+        mBitmapConfig = isJPEG(offlineMapDatabase.getImageQuality())
+                ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+    }
+
+    /**
+     * JPEG tiles have no alpha channel, so they are decoded without one.
+     */
+    private static boolean isJPEG(final MapboxConstants.RasterImageQuality imageQuality) {
+        return imageQuality == MapboxConstants.RasterImageQuality.MBXRasterImageQualityJPEG70
+                || imageQuality == MapboxConstants.RasterImageQuality.MBXRasterImageQualityJPEG80
+                || imageQuality == MapboxConstants.RasterImageQuality.MBXRasterImageQualityJPEG90;
+    }
+
+    public OfflineMapDatabase getOfflineMapDatabase() {
+        return mOfflineMapDatabase;
+    }
+
+    @Override
+    public boolean getUsesDataConnection() {
+        return false;
+    }
+
+    @Override
+    protected String getName() {
+        return "Offline Map Database Provider";
+    }
+
+    @Override
+    protected String getThreadGroupName() {
+        return "offlinedatabase";
+    }
+
+    @Override
+    protected Runnable getTileLoader() {
+        return new TileLoader();
+    }
+
+    @Override
+    public float getMinimumZoomLevel() {
+        return MINIMUM_ZOOMLEVEL;
+    }
+
+    @Override
+    public float getMaximumZoomLevel() {
+        return MAXIMUM_ZOOMLEVEL;
+    }
+
+    @Override
+    public BoundingBox getBoundingBox() {
+        return null;
+    }
+
+    @Override
+    public LatLng getCenterCoordinate() {
+        return null;
+    }
+
+    @Override
+    public float getCenterZoom() {
+        return (getMaximumZoomLevel() + getMinimumZoomLevel()) / 2;
+    }
+
+    @Override
+    public int getTileSizePixels() {
+        return DEFAULT_TILE_SIZE;
+    }
+
+    @Override
+    public void setTileSource(final ITileLayer tileSource) {
+        // Tiles only come from the offline map database
+    }
+
+    @Override
+    public ITileLayer getTileSource() {
+        return null;
+    }
+
+    @Override
+    public String getCacheKey() {
+        return mOfflineMapDatabase.getMapID();
+    }
+
+    protected class TileLoader extends MapTileModuleLayerBase.TileLoader {
+
+        @Override
+        public Drawable loadTile(final MapTileRequestState aState) throws CantContinueException {
+            final MapTile tile = aState.getMapTile();
+            final byte[] data = mOfflineMapDatabase.dataForTile(tile.getZ(), tile.getX(), tile.getY());
+            if (data == null || data.length == 0) {
+                // No data found, the default gray tile is displayed
+                return null;
+            }
+
+            final BitmapFactory.Options decodeOpts =
+                    mTileCache.getDecodeOptions(getTileSizePixels(), mBitmapConfig);
+            final Bitmap bitmap = mTileCache.decodeBitmap(data, decodeOpts);
+            return bitmap != null ? mTileCache.putTileInMemoryCache(tile, bitmap) : null;
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.mapbox.mapboxsdk.tileprovider.modules;
+
+import android.os.SystemClock;
+import com.mapbox.mapboxsdk.tileprovider.MapTile;
+import com.mapbox.mapboxsdk.tileprovider.MapTileRequestState;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Orders pending tile requests for the {@link MapTileModuleLayerBase} providers of a tile layer.
+ * Tiles at the current zoom level come first, then tiles closest to the center of the viewport.
+ * Requests for a zoom level the user has left are dropped instead of occupying a worker.
+ * <p/>
+ * Prefetch requests (see {@link MapTileRequestState#isPrefetch()}) always come after the tiles
+ * on screen. They may be one zoom level away and are dropped once they fall outside of the
+ * prefetch area.
+ * <p/>
+ * A scheduler is shared by all the providers of a
+ * {@link com.mapbox.mapboxsdk.tileprovider.MapTileLayerArray}, so a given tile is queued at most
+ * once, for whichever provider is currently responsible for it.
+ * <p/>
+ * The pending queue is small (see {@link
+ * com.mapbox.mapboxsdk.tileprovider.constants.TileLayerConstants#TILE_DOWNLOAD_MAXIMUM_QUEUE_SIZE})
+ * and the viewport moves between requests, so the best request is found with a linear scan
+ * rather than a heap whose ordering would go stale.
+ */
+public class TileRequestScheduler {
+
+    private final int mMaximumQueueSize;
+    private final HashMap<MapTile, Entry> mPending = new HashMap<MapTile, Entry>();
+
+    private int mZoomLevel = -1;
+    private float mCenterX;
+    private float mCenterY;
+    private float mPrefetchCenterX;
+    private float mPrefetchCenterY;
+    private float mPrefetchRadius;
+
+    private long mDequeuedCount;
+    private long mDroppedCount;
+    private long mTotalWaitMillis;
+    private long mMaximumWaitMillis;
+
+    public TileRequestScheduler(final int pMaximumQueueSize) {
+        mMaximumQueueSize = pMaximumQueueSize;
+    }
+
+    /**
+     * Sets the current viewport, used to prioritize pending requests.
+     *
+     * @param pZoomLevel the integer zoom level of the tiles being drawn
+     * @param pCenterX the x coordinate of the viewport center, in tiles at that zoom level
+     * @param pCenterY the y coordinate of the viewport center, in tiles at that zoom level
+     */
+    public void setViewport(final int pZoomLevel, final float pCenterX, final float pCenterY) {
+        List<Entry> dropped = null;
+        synchronized (this) {
+            final boolean zoomChanged = pZoomLevel != mZoomLevel;
+            mZoomLevel = pZoomLevel;
+            mCenterX = pCenterX;
+            mCenterY = pCenterY;
+            if (zoomChanged) {
+                dropped = removeStale();
+            }
+        }
+        cancel(dropped);
+    }
+
+    /**
+     * Sets the area around the viewport in which tiles are prefetched. Queued prefetch requests
+     * outside of it are dropped.
+     *
+     * @param pCenterX the x coordinate of the area center, in tiles at the current zoom level
+     * @param pCenterY the y coordinate of the area center, in tiles at the current zoom level
+     * @param pRadius the radius of the area, in tiles at the current zoom level
+     */
+    public void setPrefetchArea(final float pCenterX, final float pCenterY, final float pRadius) {
+        List<Entry> dropped;
+        synchronized (this) {
+            mPrefetchCenterX = pCenterX;
+            mPrefetchCenterY = pCenterY;
+            mPrefetchRadius = pRadius;
+            dropped = removeStale();
+        }
+        cancel(dropped);
+    }
+
+    /**
+     * Whether there is room left in the queue for prefetch requests. Prefetching is limited to
+     * half of the queue so that it never pushes out tiles that are on screen.
+     *
+     * @return true if a prefetch request may be queued
+     */
+    public synchronized boolean hasRoomForPrefetch() {
+        return mPending.size() < mMaximumQueueSize / 2;
+    }
+
+    /**
+     * Queues a request for the given provider. If the tile is already queued, the existing entry
+     * is handed over to that provider and keeps its original wait time.
+     */
+    public void offer(final MapTileRequestState pState, final MapTileModuleLayerBase pProvider) {
+        Entry evicted = null;
+        synchronized (this) {
+            final MapTile tile = pState.getMapTile();
+            final Entry existing = mPending.get(tile);
+            if (existing != null) {
+                existing.provider = pProvider;
+                existing.state = pState;
+                return;
+            }
+            mPending.put(tile, new Entry(pState, pProvider, SystemClock.uptimeMillis()));
+            if (mPending.size() > mMaximumQueueSize) {
+                evicted = worst();
+                mPending.remove(evicted.state.getMapTile());
+                mDroppedCount++;
+            }
+        }
+        if (evicted != null) {
+            evicted.state.getCallback().mapTileRequestCancelled(evicted.state);
+        }
+    }
+
+    /**
+     * Removes and returns the highest priority request queued for the given provider, or null if
+     * there is none. Stale requests found along the way are dropped.
+     */
+    public MapTileRequestState poll(final MapTileModuleLayerBase pProvider) {
+        List<Entry> dropped;
+        Entry best = null;
+        synchronized (this) {
+            dropped = removeStale();
+            float bestPriority = Float.MAX_VALUE;
+            for (Entry entry : mPending.values()) {
+                if (entry.provider != pProvider) {
+                    continue;
+                }
+                final float priority = priority(entry.state);
+                if (priority < bestPriority) {
+                    bestPriority = priority;
+                    best = entry;
+                }
+            }
+            if (best != null) {
+                mPending.remove(best.state.getMapTile());
+                final long wait = SystemClock.uptimeMillis() - best.enqueuedAt;
+                mDequeuedCount++;
+                mTotalWaitMillis += wait;
+                mMaximumWaitMillis = Math.max(mMaximumWaitMillis, wait);
+            }
+        }
+        cancel(dropped);
+        return best != null ? best.state : null;
+    }
+
+    /**
+     * Removes a tile from the queue if it is queued for the given provider.
+     */
+    public synchronized void remove(final MapTile pTile, final MapTileModuleLayerBase pProvider) {
+        final Entry entry = mPending.get(pTile);
+        if (entry != null && entry.provider == pProvider) {
+            mPending.remove(pTile);
+        }
+    }
+
+    /**
+     * Cancels every request queued for the given provider.
+     */
+    public void clear(final MapTileModuleLayerBase pProvider) {
+        final List<Entry> cleared = new ArrayList<Entry>();
+        synchronized (this) {
+            final Iterator<Entry> it = mPending.values().iterator();
+            while (it.hasNext()) {
+                final Entry entry = it.next();
+                if (entry.provider == pProvider) {
+                    it.remove();
+                    cleared.add(entry);
+                }
+            }
+        }
+        cancel(cleared);
+    }
+
+    /**
+     * @return the number of requests waiting for a worker
+     */
+    public synchronized int getQueueDepth() {
+        return mPending.size();
+    }
+
+    /**
+     * @return the number of requests handed to a worker so far
+     */
+    public synchronized long getDequeuedCount() {
+        return mDequeuedCount;
+    }
+
+    /**
+     * @return the number of requests dropped because they went stale or the queue was full
+     */
+    public synchronized long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * @return the average time a request waited in the queue before reaching a worker
+     */
+    public synchronized long getAverageWaitMillis() {
+        return mDequeuedCount > 0 ? mTotalWaitMillis / mDequeuedCount : 0;
+    }
+
+    /**
+     * @return the longest time a request waited in the queue before reaching a worker
+     */
+    public synchronized long getMaximumWaitMillis() {
+        return mMaximumWaitMillis;
+    }
+
+    /**
+     * Lower is more urgent. Prefetch requests come after everything else, then the zoom
+     * distance dominates, then the squared distance from the viewport center (or from the
+     * prefetch center, which leads in the direction of motion), measured in tiles of the
+     * requested zoom level.
+     */
+    private float priority(final MapTileRequestState pState) {
+        if (mZoomLevel < 0) {
+            return 0;
+        }
+        final MapTile tile = pState.getMapTile();
+        final boolean prefetch = pState.isPrefetch();
+        final int zoomDiff = tile.getZ() - mZoomLevel;
+        final float distance = prefetch
+                ? distanceSquared(tile, zoomDiff, mPrefetchCenterX, mPrefetchCenterY)
+                : distanceSquared(tile, zoomDiff, mCenterX, mCenterY);
+        return (prefetch ? PREFETCH_WEIGHT : 0) + Math.abs(zoomDiff) * ZOOM_LEVEL_WEIGHT + distance;
+    }
+
+    private boolean isStale(final MapTileRequestState pState) {
+        if (mZoomLevel < 0) {
+            return false;
+        }
+        final MapTile tile = pState.getMapTile();
+        final int zoomDiff = tile.getZ() - mZoomLevel;
+        if (!pState.isPrefetch()) {
+            return zoomDiff != 0;
+        }
+        if (Math.abs(zoomDiff) > 1) {
+            return true;
+        }
+        final float radius = mPrefetchRadius * scale(zoomDiff);
+        return distanceSquared(tile, zoomDiff, mPrefetchCenterX, mPrefetchCenterY) > radius * radius;
+    }
+
+    private static float scale(final int pZoomDiff) {
+        return pZoomDiff >= 0 ? (1 << pZoomDiff) : 1f / (1 << -pZoomDiff);
+    }
+
+    private static float distanceSquared(final MapTile pTile, final int pZoomDiff,
+            final float pCenterX, final float pCenterY) {
+        final float scale = scale(pZoomDiff);
+        final float dx = pTile.getX() + 0.5f - pCenterX * scale;
+        final float dy = pTile.getY() + 0.5f - pCenterY * scale;
+        return dx * dx + dy * dy;
+    }
+
+    private Entry worst() {
+        Entry worst = null;
+        float worstPriority = -1;
+        for (Entry entry : mPending.values()) {
+            final float priority = priority(entry.state);
+            if (priority > worstPriority) {
+                worstPriority = priority;
+                worst = entry;
+            }
+        }
+        return worst;
+    }
+
+    private List<Entry> removeStale() {
+        List<Entry> stale = null;
+        final Iterator<Entry> it = mPending.values().iterator();
+        while (it.hasNext()) {
+            final Entry entry = it.next();
+            if (isStale(entry.state)) {
+                it.remove();
+                if (stale == null) {
+                    stale = new ArrayList<Entry>();
+                }
+                stale.add(entry);
+                mDroppedCount++;
+            }
+        }
+        return stale;
+    }
+
+    /**
+     * Notify outside of the lock, the callbacks take the tile layer's own locks.
+     */
+    private static void cancel(final List<Entry> pEntries) {
+        if (pEntries == null) {
+            return;
+        }
+        for (Entry entry : pEntries) {
+            entry.state.getCallback().mapTileRequestCancelled(entry.state);
+        }
+    }
+
+    /**
+     * Large enough that any tile on screen beats any tile one zoom level away.
+     */
+    private static final float ZOOM_LEVEL_WEIGHT = 1 << 20;
+
+    /**
+     * Larger than any zoom level distance, so prefetching never delays a tile on screen.
+     */
+    private static final float PREFETCH_WEIGHT = 4 * ZOOM_LEVEL_WEIGHT;
+
+    private static final class Entry {
+        MapTileRequestState state;
+        MapTileModuleLayerBase provider;
+        final long enqueuedAt;
+
+        Entry(final MapTileRequestState pState, final MapTileModuleLayerBase pProvider,
+                final long pEnqueuedAt) {
+            state = pState;
+            provider = pProvider;
+            enqueuedAt = pEnqueuedAt;
+        }
+    }
+}
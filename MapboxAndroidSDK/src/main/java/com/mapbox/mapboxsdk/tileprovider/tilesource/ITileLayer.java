@@ -1,5 +1,6 @@
 package com.mapbox.mapboxsdk.tileprovider.tilesource;
 
+import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 import com.mapbox.mapboxsdk.geometry.BoundingBox;
 import com.mapbox.mapboxsdk.geometry.LatLng;
@@ -49,6 +50,15 @@ public interface ITileLayer {
      */
     public int getTileSizePixels();
 
+    /**
+     * Get the pixel format tiles of this tile source are decoded into. Opaque tile sources
+     * may use {@link Bitmap.Config#RGB_565}, which takes half the memory of
+     * {@link Bitmap.Config#ARGB_8888}.
+     *
+     * @return the pixel format of the tiles
+     */
+    public Bitmap.Config getBitmapConfig();
+
     /**
      * Get the tile source bounding box.
      *
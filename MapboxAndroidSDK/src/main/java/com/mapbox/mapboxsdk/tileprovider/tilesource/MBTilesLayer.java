@@ -3,11 +3,13 @@ package com.mapbox.mapboxsdk.tileprovider.tilesource;
 import android.content.Context;
 import android.content.res.AssetManager;
 import android.database.sqlite.SQLiteDatabase;
+import android.graphics.Bitmap;
 import android.os.Environment;
 import android.util.Log;
 
 import com.mapbox.mapboxsdk.constants.MapboxConstants;
 import com.mapbox.mapboxsdk.tileprovider.MapTile;
+import com.mapbox.mapboxsdk.tileprovider.MapTileCache;
 import com.mapbox.mapboxsdk.tileprovider.modules.MBTilesFileArchive;
 import com.mapbox.mapboxsdk.tileprovider.modules.MapTileDownloader;
 import com.mapbox.mapboxsdk.views.util.constants.MapViewConstants;
@@ -124,6 +126,7 @@ public class MBTilesLayer extends TileLayer implements MapViewConstants, MapboxC
             mAttribution = mbTilesFileArchive.getAttribution();
             mBoundingBox = mbTilesFileArchive.getBounds();
             mCenter = mbTilesFileArchive.getCenter();
+            initializeBitmapConfig();
         }
     }
 
@@ -143,6 +146,17 @@ public class MBTilesLayer extends TileLayer implements MapViewConstants, MapboxC
             mAttribution = mbTilesFileArchive.getAttribution();
             mBoundingBox = mbTilesFileArchive.getBounds();
             mCenter = mbTilesFileArchive.getCenter();
+            initializeBitmapConfig();
+        }
+    }
+
+    /**
+     * JPEG tiles have no alpha channel, so they are decoded without one.
+     */
+    private void initializeBitmapConfig() {
+        final String format = mbTilesFileArchive.getFormat();
+        if ("jpg".equalsIgnoreCase(format) || "jpeg".equalsIgnoreCase(format)) {
+            mBitmapConfig = Bitmap.Config.RGB_565;
         }
     }
 
@@ -193,10 +207,11 @@ public class MBTilesLayer extends TileLayer implements MapViewConstants, MapboxC
     public CacheableBitmapDrawable getDrawableFromTile(final MapTileDownloader downloader,
                                                        final MapTile aTile, boolean hdpi) {
         if (mbTilesFileArchive != null) {
-            InputStream stream = mbTilesFileArchive.getInputStream(this, aTile);
-            if (stream != null) {
-                CacheableBitmapDrawable result =
-                        downloader.getCache().putTileStream(aTile, stream, null);
+            byte[] data = mbTilesFileArchive.getTileData(this, aTile);
+            if (data != null) {
+                final MapTileCache cache = downloader.getCache();
+                CacheableBitmapDrawable result = cache.putTileBytes(aTile, data,
+                        cache.getDecodeOptions(this));
                 if (result == null) {
                     Log.d(TAG, "error reading stream from mbtiles");
                 }
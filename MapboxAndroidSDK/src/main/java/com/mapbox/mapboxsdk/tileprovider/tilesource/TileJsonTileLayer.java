@@ -10,7 +10,6 @@ import com.squareup.okhttp.Cache;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -131,15 +130,6 @@ public class TileJsonTileLayer extends WebSourceTileLayer {
         return defaultValue;
     }
 
-    byte[] readFully(InputStream in) throws IOException {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        byte[] buffer = new byte[1024];
-        for (int count; (count = in.read(buffer)) != -1;) {
-            out.write(buffer, 0, count);
-        }
-        return out.toByteArray();
-    }
-
     private void fetchBrandedJSONAndInit(String url) {
         new RetrieveJSONTask() {
             @Override
@@ -1,5 +1,6 @@
 package com.mapbox.mapboxsdk.tileprovider.tilesource;
 
+import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 import com.mapbox.mapboxsdk.geometry.BoundingBox;
 import com.mapbox.mapboxsdk.geometry.LatLng;
@@ -22,6 +23,7 @@ public class TileLayer implements ITileLayer, TileLayerConstants, MapViewConstan
     protected BoundingBox mBoundingBox = WORLD_BOUNDING_BOX;
     protected LatLng mCenter = new LatLng(0, 0);
     private final int mTileSizePixels = DEFAULT_TILE_SIZE;
+    protected Bitmap.Config mBitmapConfig = Bitmap.Config.ARGB_8888;
 
     public TileLayer(final String pId, final String aUrl) {
         mUrl = aUrl;
@@ -76,6 +78,16 @@ public class TileLayer implements ITileLayer, TileLayerConstants, MapViewConstan
         return this;
     }
 
+    /**
+     * Sets the pixel format the layer's tiles are decoded into. Use {@link Bitmap.Config#RGB_565}
+     * for opaque layers, such as imagery basemaps, to halve the memory used per tile. Tiles of
+     * such layers lose their transparency, if they have any.
+     */
+    public TileLayer setBitmapConfig(final Bitmap.Config aBitmapConfig) {
+        this.mBitmapConfig = aBitmapConfig != null ? aBitmapConfig : Bitmap.Config.ARGB_8888;
+        return this;
+    }
+
     public Drawable getDrawableFromTile(final MapTileDownloader downloader, final MapTile aTile,
             boolean hdpi) {
         return null;
@@ -101,6 +113,11 @@ public class TileLayer implements ITileLayer, TileLayerConstants, MapViewConstan
         return mTileSizePixels;
     }
 
+    @Override
+    public Bitmap.Config getBitmapConfig() {
+        return mBitmapConfig;
+    }
+
     @Override
     public String getCacheKey() {
         return mCacheKey;
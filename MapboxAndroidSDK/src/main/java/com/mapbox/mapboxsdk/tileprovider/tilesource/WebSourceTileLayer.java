@@ -1,7 +1,6 @@
 package com.mapbox.mapboxsdk.tileprovider.tilesource;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.text.TextUtils;
@@ -10,13 +9,26 @@ import android.util.Log;
 import com.mapbox.mapboxsdk.constants.MapboxConstants;
 import com.mapbox.mapboxsdk.tileprovider.MapTile;
 import com.mapbox.mapboxsdk.tileprovider.MapTileCache;
+import com.mapbox.mapboxsdk.tileprovider.modules.ConfigurablePriorityThreadFactory;
 import com.mapbox.mapboxsdk.tileprovider.modules.MapTileDownloader;
 import com.mapbox.mapboxsdk.util.NetworkUtils;
 import com.mapbox.mapboxsdk.views.util.TileLoadedListener;
 import com.mapbox.mapboxsdk.views.util.TilesLoadedListener;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import uk.co.senab.bitmapcache.BitmapPool;
 import uk.co.senab.bitmapcache.CacheableBitmapDrawable;
 
 /**
@@ -25,7 +37,7 @@ import uk.co.senab.bitmapcache.CacheableBitmapDrawable;
 public class WebSourceTileLayer extends TileLayer implements MapboxConstants {
     private static final String TAG = "WebSourceTileLayer";
 
-    // Tracks the number of threads active in the getBitmapFromURL method.
+    // Tracks the number of threads active in the getBytesFromURL method.
     private AtomicInteger activeThreads = new AtomicInteger(0);
     protected boolean mEnableSSL = false;
 
@@ -93,6 +105,19 @@ public class WebSourceTileLayer extends TileLayer implements MapboxConstants {
 
     private static final Paint compositePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
 
+    /**
+     * Fetches the components of composite tiles alongside the tile downloader threads, so that a
+     * composite tile takes as long as its slowest component rather than the sum of them.
+     */
+    private static final ThreadPoolExecutor sComponentExecutor = new ThreadPoolExecutor(
+            NUMBER_OF_TILE_DOWNLOAD_THREADS, NUMBER_OF_TILE_DOWNLOAD_THREADS, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new ConfigurablePriorityThreadFactory(Thread.NORM_PRIORITY, TAG));
+
+    static {
+        sComponentExecutor.allowCoreThreadTimeOut(true);
+    }
+
     private Bitmap compositeBitmaps(final Bitmap source, Bitmap dest) {
         Canvas canvas = new Canvas(dest);
         canvas.drawBitmap(source, 0, 0, compositePaint);
@@ -104,6 +129,7 @@ public class WebSourceTileLayer extends TileLayer implements MapboxConstants {
             final MapTile aTile, boolean hdpi) {
         if (downloader.isNetworkAvailable()) {
             TilesLoadedListener listener = downloader.getTilesLoadedListener();
+            TileLoadedListener listener2 = downloader.getTileLoadedListener();
 
             boolean tempHDPI = hdpi;
             if (this instanceof MapboxTileLayer) {
@@ -112,22 +138,37 @@ public class WebSourceTileLayer extends TileLayer implements MapboxConstants {
 
             String[] urls = getTileURLs(aTile, tempHDPI);
             CacheableBitmapDrawable result = null;
-            Bitmap resultBitmap = null;
             MapTileCache cache = downloader.getCache();
 
             if (urls != null) {
                 if (listener != null) {
                     listener.onTilesLoadStarted();
                 }
-                for (final String url : urls) {
-                    Bitmap bitmap = getBitmapFromURL(aTile, url, cache);
-                    if (bitmap == null) {
-                        continue;
+                if (urls.length == 1 && listener2 == null) {
+                    // A single tile is cached as it was downloaded, without compressing it again
+                    byte[] data = getBytesFromURL(urls[0]);
+                    if (data != null) {
+                        result = cache.putTileBytes(aTile, data,
+                                cache.getDecodeOptions(this));
                     }
-                    if (resultBitmap == null) {
-                        resultBitmap = bitmap;
-                    } else {
-                        resultBitmap = compositeBitmaps(bitmap, resultBitmap);
+                } else {
+                    Bitmap resultBitmap = getCompositeBitmapFromURLs(urls, cache);
+                    if (resultBitmap != null && listener2 != null) {
+                        //pass it to onTileLoaded callback for customization, and return the customized CacheableBitmapDrawable object
+                        result = listener2.onTileLoaded(
+                                cache.createCacheableBitmapDrawable(resultBitmap, aTile));
+
+                        // The customized drawable is cached as it is, rather than drawn into a
+                        // copy of its Bitmap first
+                        if (result != null && result.isBitmapValid()) {
+                            CacheableBitmapDrawable cached = cache.putTile(aTile, result);
+                            if (cached != null) {
+                                result = cached;
+                            }
+                        }
+                    } else if (resultBitmap != null) {
+                        //get drawable by putting it into cache (memory and disk)
+                        result = cache.putTileBitmap(aTile, resultBitmap);
                     }
                 }
 
@@ -138,37 +179,82 @@ public class WebSourceTileLayer extends TileLayer implements MapboxConstants {
                 }
             }
 
-            TileLoadedListener listener2 = downloader.getTileLoadedListener();
-            if (listener2 != null) {
-                //create the CacheableBitmapDrawable object from the bitmap
-                result = cache.createCacheableBitmapDrawable(resultBitmap, aTile);
-
-                //pass it to onTileLoaded callback for customization, and return the customized CacheableBitmapDrawable object
-                result = listener2.onTileLoaded(result);
+            return result;
+        }
+        return null;
+    }
 
-                //null pointer checking
-                if (result != null) {
-                    int resultWidth = result.getIntrinsicWidth();
-                    int resultHeight = result.getIntrinsicHeight();
+    /**
+     * Requests the components of a composite tile concurrently and draws them, in order, into the
+     * Bitmap of the first one which could be loaded. The other components are decoded into pooled
+     * Bitmaps which are given back once they have been drawn.
+     *
+     * @param urls the urls of the components, from bottom to top
+     * @param aCache a cache, an instance of MapTileCache
+     * @return the composite tile, or null if none of the components could be loaded
+     */
+    protected Bitmap getCompositeBitmapFromURLs(final String[] urls, final MapTileCache aCache) {
+        final List<Future<byte[]>> components = new ArrayList<Future<byte[]>>(urls.length);
+        for (int i = 1; i < urls.length; i++) {
+            final String url = urls[i];
+            components.add(sComponentExecutor.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    return getBytesFromURL(url);
+                }
+            }));
+        }
 
-                    //convert the drawable updated in onTileLoaded callback to a bitmap
-                    Bitmap bitmapToCache = Bitmap.createBitmap(resultWidth, resultHeight, Bitmap.Config.ARGB_8888);
-                    Canvas canvas = new Canvas(bitmapToCache);
-                    result.setBounds(0, 0, resultWidth, resultHeight);
-                    result.draw(canvas);
+        // The calling thread fetches the first component itself
+        Bitmap result = decodeBaseComponent(getBytesFromURL(urls[0]), aCache);
 
-                    cache.putTileBitmap(aTile, bitmapToCache);
+        for (int i = 0; i < components.size(); i++) {
+            final byte[] data;
+            try {
+                data = components.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (Future<byte[]> component : components) {
+                    component.cancel(true);
                 }
-            } else {
-                if (resultBitmap != null) {
-                    //get drawable by putting it into cache (memory and disk)
-                    result = cache.putTileBitmap(aTile, resultBitmap);
+                return result;
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Error downloading MapTile: " + urls[i + 1] + ":" + e.getCause());
+                continue;
+            }
+            if (data == null) {
+                continue;
+            }
+            if (result == null) {
+                result = decodeBaseComponent(data, aCache);
+                continue;
+            }
+
+            // Upper components keep their alpha, whatever the format of the layer
+            final Bitmap component = aCache.decodeBitmap(data,
+                    aCache.getDecodeOptions(getTileSizePixels()));
+            if (component != null) {
+                compositeBitmaps(component, result);
+                final BitmapPool pool = aCache.getBitmapPool();
+                if (pool != null) {
+                    pool.put(component);
                 }
             }
+        }
+        return result;
+    }
 
-            return result;
+    private Bitmap decodeBaseComponent(final byte[] data, final MapTileCache aCache) {
+        if (data == null) {
+            return null;
         }
-        return null;
+        Bitmap bitmap = aCache.decodeBitmap(data, aCache.getDecodeOptions(this));
+        if (bitmap != null && !bitmap.isMutable()) {
+            // Components are drawn into it
+            bitmap = bitmap.copy(bitmap.getConfig() != null ? bitmap.getConfig()
+                    : getBitmapConfig(), true);
+        }
+        return bitmap;
     }
 
     /**
@@ -181,6 +267,25 @@ public class WebSourceTileLayer extends TileLayer implements MapboxConstants {
      * @return the tile if valid, otherwise null
      */
     public Bitmap getBitmapFromURL(MapTile mapTile, final String url, final MapTileCache aCache) {
+        // Buffered so that a tile of unexpected size can be decoded a second time
+        byte[] data = getBytesFromURL(url);
+        if (data == null) {
+            return null;
+        }
+        Bitmap bitmap = aCache.decodeBitmap(data, aCache.getDecodeOptions(this));
+        if (bitmap != null) {
+            aCache.putTileInMemoryCache(mapTile, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Requests the encoded contents of a tile from a given URL.
+     *
+     * @param url the map tile url. should refer to a valid bitmap resource.
+     * @return the contents of the response, or null if the request failed
+     */
+    byte[] getBytesFromURL(final String url) {
         // We track the active threads here, every exit point should decrement this value.
         activeThreads.incrementAndGet();
 
@@ -189,18 +294,32 @@ public class WebSourceTileLayer extends TileLayer implements MapboxConstants {
             return null;
         }
 
+        InputStream in = null;
         try {
             HttpURLConnection connection = NetworkUtils.getHttpURLConnection(new URL(url));
-            Bitmap bitmap = BitmapFactory.decodeStream(connection.getInputStream());
-            if (bitmap != null) {
-                aCache.putTileInMemoryCache(mapTile, bitmap);
-            }
-            return bitmap;
+            in = connection.getInputStream();
+            return readFully(in);
         } catch (final Throwable e) {
             Log.e(TAG, "Error downloading MapTile: " + url + ":" + e);
         } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    Log.w(TAG, "Error closing tile stream: " + url, e);
+                }
+            }
             activeThreads.decrementAndGet();
         }
         return null;
     }
+
+    byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        for (int count; (count = in.read(buffer)) != -1;) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
 }
@@ -54,8 +54,14 @@ public class DataLoadingUtils {
         } else {
             is = new URL(url).openStream();
         }
-        BufferedReader rd = new BufferedReader(new InputStreamReader(is, Charset.forName("UTF-8")));
-        String jsonText = readAll(rd);
+        String jsonText;
+        try {
+            BufferedReader rd = new BufferedReader(new InputStreamReader(is, Charset.forName("UTF-8")));
+            jsonText = readAll(rd);
+        } finally {
+            // Hands the connection back to the shared pool
+            is.close();
+        }
 
         FeatureCollection parsed = (FeatureCollection) GeoJSON.parse(jsonText);
         if (UtilConstants.DEBUGMODE) {
@@ -9,15 +9,27 @@ import android.content.Context;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.ConnectionPool;
 import com.squareup.okhttp.OkHttpClient;
 import com.squareup.okhttp.OkUrlFactory;
+import com.squareup.okhttp.Protocol;
 import javax.net.ssl.SSLSocketFactory;
 import java.io.File;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 public class NetworkUtils {
+    private static final int CONNECT_TIMEOUT_SECONDS = 15;
+    private static final int READ_TIMEOUT_SECONDS = 30;
+    // Enough for every tile download thread to keep its connection between tiles
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    private static final long KEEP_ALIVE_DURATION_MILLIS = 5 * 60 * 1000;
+
+    private static OkHttpClient sClient;
+
     public static boolean isNetworkAvailable(Context context) {
         ConnectivityManager connectivityManager =
                 (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
@@ -34,18 +46,48 @@ public class NetworkUtils {
     }
 
     public static HttpURLConnection getHttpURLConnection(final URL url, final Cache cache, final SSLSocketFactory sslSocketFactory) {
-        OkHttpClient client = new OkHttpClient();
-        if (cache != null) {
-            client.setCache(cache);
-        }
-        if (sslSocketFactory != null) {
-            client.setSslSocketFactory(sslSocketFactory);
+        OkHttpClient client = getOkHttpClient();
+        if (cache != null || sslSocketFactory != null) {
+            // A copy still shares the connection pool of the shared client
+            client = client.clone();
+            if (cache != null) {
+                client.setCache(cache);
+            }
+            if (sslSocketFactory != null) {
+                client.setSslSocketFactory(sslSocketFactory);
+            }
         }
         HttpURLConnection connection = new OkUrlFactory(client).open(url);
         connection.setRequestProperty("User-Agent", MapboxUtils.getUserAgent());
         return connection;
     }
 
+    /**
+     * Get the client shared by all the downloads of the SDK: tiles, offline maps and data.
+     * Sharing it keeps connections to the tile servers alive between requests, and lets
+     * requests to the same server share an HTTP/2 or SPDY connection where the server supports
+     * it. Responses are transparently gzip-decoded.
+     * <p/>
+     * Settings of a single connection, like its timeouts, can be changed on the
+     * {@link HttpURLConnection} without affecting the shared client. Reading a response to its
+     * end and closing its stream hands the connection back to the pool; calling
+     * {@link HttpURLConnection#disconnect()} closes it instead.
+     *
+     * @return the shared client
+     */
+    public static synchronized OkHttpClient getOkHttpClient() {
+        if (sClient == null) {
+            sClient = new OkHttpClient();
+            sClient.setConnectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            sClient.setReadTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            sClient.setConnectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS,
+                    KEEP_ALIVE_DURATION_MILLIS));
+            sClient.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.SPDY_3,
+                    Protocol.HTTP_1_1));
+        }
+        return sClient;
+    }
+
     public static Cache getCache(final File cacheDir, final int maxSize) throws IOException {
         return new Cache(cacheDir, maxSize);
     }
@@ -15,6 +15,11 @@ import uk.co.senab.bitmapcache.CacheableBitmapDrawable;
  */
 public abstract class TileLooper {
 
+    /**
+     * Number of tiles looped around the viewport, so that its edges are drawn while panning
+     */
+    public static final int VIEWPORT_PADDING = 1;
+
     protected final Point mUpperLeft = new Point();
     protected final Point mLowerRight = new Point();
     protected final Point center = new Point();
@@ -25,15 +30,16 @@ public abstract class TileLooper {
             final int pTileSizePx, final Rect pViewPort, final Rect pClipRect) {
         // Calculate the amount of tiles needed for each side around the center one.
         Projection.pixelXYToTileXY(pViewPort.left, pViewPort.top, mUpperLeft);
-        mUpperLeft.offset(-1, -1);
+        mUpperLeft.offset(-VIEWPORT_PADDING, -VIEWPORT_PADDING);
 
         Projection.pixelXYToTileXY(pViewPort.right, pViewPort.bottom, mLowerRight);
-        mLowerRight.offset(1, 1);
+        mLowerRight.offset(VIEWPORT_PADDING, VIEWPORT_PADDING);
 
         center.set((mUpperLeft.x + mLowerRight.x) / 2, (mUpperLeft.y + mLowerRight.y) / 2);
 
         final int roundedZoom = (int) Math.floor(pZoomLevel);
         final int mapTileUpperBound = 1 << roundedZoom;
+        final int layerId = MapTile.layerId(pCacheKey);
         initializeLoop(pZoomLevel, pTileSizePx);
 
         int tileX, tileY;
@@ -42,8 +48,8 @@ public abstract class TileLooper {
             for (int x = mUpperLeft.x; x <= mLowerRight.x; x++) {
                 tileY = GeometryMath.mod(y, mapTileUpperBound);
                 tileX = GeometryMath.mod(x, mapTileUpperBound);
-                final MapTile tile = new MapTile(pCacheKey, roundedZoom, tileX, tileY);
-                handleTile(pCanvas, pCacheKey, pTileSizePx, tile, x, y, pClipRect);
+                final long tileKey = MapTile.tileKey(layerId, roundedZoom, tileX, tileY);
+                handleTile(pCanvas, pCacheKey, pTileSizePx, tileKey, x, y, pClipRect);
             }
         }
         finalizeLoop();
@@ -54,8 +60,12 @@ public abstract class TileLooper {
 
     public abstract void initializeLoop(float pZoomLevel, int pTileSizePx);
 
+    /**
+     * Handles one tile of the loop. Tiles are passed as packed keys, see {@link MapTile#getKey()},
+     * so that looping doesn't allocate a {@link MapTile} per visible tile on every frame.
+     */
     public abstract void handleTile(Canvas pCanvas, final String pCacheKey, int pTileSizePx,
-            MapTile pTile, int pX, int pY, final Rect pClipRect);
+            long pTileKey, int pX, int pY, final Rect pClipRect);
 
     public void finalizeLoop() {
         //we delay just to make sure drawable bitmaps are not reused while being drawn.
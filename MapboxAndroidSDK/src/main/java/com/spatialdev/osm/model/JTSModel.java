@@ -18,7 +18,7 @@ import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.Polygon;
 import com.vividsolutions.jts.index.quadtree.Quadtree;
 
-import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -31,10 +31,17 @@ public class JTSModel {
     private GeometryFactory geometryFactory;
     private Quadtree spatialIndex;
 
+    /**
+     * The way in the spatial index for each way id, whichever data set it comes from. This is
+     * what lets an edited way replace the original one without looking it up in every data set.
+     */
+    private Map<Long, OSMWay> indexedWays;
+
     public JTSModel() {
         geometryFactory = new GeometryFactory();
         spatialIndex = new Quadtree();
         dataSetHash = new ConcurrentHashMap<>();
+        indexedWays = new HashMap<>();
     }
 
     public synchronized void addOSMDataSet(String filePath, OSMDataSet ds) {
@@ -44,23 +51,35 @@ public class JTSModel {
         addOSMStandaloneNodes(ds);
     }
     
+    /**
+     * Adds a data set of edited elements. Its modified ways replace the ways with the same
+     * ids that are already in the model, whichever data set they came from.
+     * * *
+     * @param absPath
+     * @param ds
+     */
     public synchronized void mergeEditedOSMDataSet(String absPath, OSMDataSet ds) {
-        Collection<OSMDataSet> dataSets = dataSetHash.values();
-        for (OSMDataSet existingDataSet : dataSets) {
-            // closed ways
-            removeWaysFromExistingDataSet(existingDataSet, ds.getClosedWays());
-            //open ways
-            removeWaysFromExistingDataSet(existingDataSet, ds.getOpenWays());
-        }
         addOSMDataSet(absPath, ds);
     }
 
+    /**
+     * Merges a batch of edited data sets at once, in iteration order, so a later edit of
+     * a way wins over an earlier one.
+     * * *
+     * @param dataSets edited data sets by absolute file path
+     */
+    public synchronized void mergeEditedOSMDataSets(Map<String, OSMDataSet> dataSets) {
+        for (Map.Entry<String, OSMDataSet> entry : dataSets.entrySet()) {
+            addOSMDataSet(entry.getKey(), entry.getValue());
+        }
+    }
+
     /**
      * Removes a specific OSM XML Data Set based off of the path of the file.
      * * * 
      * @param absoluteFilePath
      */
-    public void removeDataSet(String absoluteFilePath) {
+    public synchronized void removeDataSet(String absoluteFilePath) {
         OSMDataSet ds = dataSetHash.get(absoluteFilePath);
         List<OSMWay> closedWays = ds.getClosedWays();
         List<OSMWay> openWays = ds.getOpenWays();
@@ -73,6 +92,7 @@ public class JTSModel {
             } catch (Exception e) {
                 Log.e("NO_GEOM", "Cannot remove a closed way with no JTS geom.");
             }
+            unindexWay(w);
         }
         for (OSMWay w : openWays) {
             try {
@@ -82,6 +102,7 @@ public class JTSModel {
             } catch (Exception e) {
                 Log.e("NO_GEOM", "Cannot remove an open way with no JTS geom.");
             }
+            unindexWay(w);
         }
         for (OSMNode n : standaloneNodes) {
             try {
@@ -94,16 +115,30 @@ public class JTSModel {
         }
     }
     
-    private void removeWaysFromExistingDataSet(OSMDataSet existingDataSet, List<OSMWay> ways) {
-        for (OSMWay w : ways) {
-            OSMWay oldWay = existingDataSet.getWay(w.getId());
-            if (oldWay != null) {
-                Geometry geom = oldWay.getJTSGeom();
-                if (geom != null) {
-                    Envelope env = geom.getEnvelopeInternal();
-                    spatialIndex.remove(env, oldWay);
-                }
+    /**
+     * Puts a way in the spatial index, in place of the way with the same id if there is one,
+     * unless that one has been edited and this one hasn't.
+     * * *
+     * @param w
+     * @param geom
+     */
+    private void indexWay(OSMWay w, Geometry geom) {
+        OSMWay indexedWay = indexedWays.get(w.getId());
+        if (indexedWay != null && indexedWay != w) {
+            if (indexedWay.isModified() && !w.isModified()) {
+                return;
             }
+            removeOSMElement(indexedWay);
+        }
+        w.setJTSGeom(geom);
+        Envelope envelope = geom.getEnvelopeInternal();
+        spatialIndex.insert(envelope, w);
+        indexedWays.put(w.getId(), w);
+    }
+
+    private void unindexWay(OSMWay w) {
+        if (indexedWays.get(w.getId()) == w) {
+            indexedWays.remove(w.getId());
         }
     }
     
@@ -218,9 +253,7 @@ public class JTSModel {
             List<OSMNode> nodes = w.getNodes();
             Coordinate[] coords = coordArrayFromNodeList(nodes);
             Polygon poly = geometryFactory.createPolygon(coords);
-            w.setJTSGeom(poly);
-            Envelope envelope = poly.getEnvelopeInternal();
-            spatialIndex.insert(envelope, w);
+            indexWay(w, poly);
         }
     }
 
@@ -237,9 +270,7 @@ public class JTSModel {
             List<OSMNode> nodes = w.getNodes();
             Coordinate[] coords = coordArrayFromNodeList(nodes);
             LineString line = geometryFactory.createLineString(coords);
-            w.setJTSGeom(line);
-            Envelope envelope = line.getEnvelopeInternal();
-            spatialIndex.insert(envelope, w);
+            indexWay(w, line);
         }
     }
 
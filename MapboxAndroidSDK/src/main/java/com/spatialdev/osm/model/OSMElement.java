@@ -5,17 +5,23 @@
 package com.spatialdev.osm.model;
 
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.spatialdev.osm.OSMUtil;
 import com.spatialdev.osm.renderer.OSMPath;
 import com.vividsolutions.jts.geom.Geometry;
 
+import org.apache.commons.codec.binary.Hex;
+
 import org.xmlpull.v1.XmlSerializer;
 
 
@@ -27,6 +33,15 @@ public abstract class OSMElement {
     private static LinkedList<OSMElement> modifiedElements = new LinkedList<>();
     private static LinkedList<OSMElement> modifiedElementsInInstance = new LinkedList<>();
 
+    protected static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Incremented whenever the checksum of any element changes. The checksum of a way or relation
+     * depends on the elements it links to, which don't know about it, so its cached checksum is
+     * only used while this hasn't changed.
+     */
+    private static final AtomicLong checksumGeneration = new AtomicLong();
+
 
     /**
      * When creating a new OSMElement, it needs to be assigned a unique negative ID within
@@ -67,6 +82,17 @@ public abstract class OSMElement {
      */
     protected Map<String, String> originalTags = new LinkedHashMap<>();
 
+    /**
+     * The tag keys in alphabetical order, null until needed or after the tags change.
+     */
+    private List<String> sortedTagKeys;
+
+    /**
+     * The last checksum computed and the checksum generation it was computed at.
+     */
+    private String cachedChecksum;
+    private long cachedChecksumGeneration;
+
     /**
      * This is the object that actually gets drawn by OSMOverlay. 
      */
@@ -174,13 +200,85 @@ public abstract class OSMElement {
     }
 
     /**
-     * All OSM Element types need to have this implemented. This checksum is composed
-     * of the tags sorted alphabetically by key. The rest of the implementation is
-     * defined differently whether it is Node, Way, or Relation.
+     * This checksum is composed of the tags sorted alphabetically by key. The rest of
+     * the implementation is defined differently whether it is Node, Way, or Relation,
+     * see updateChecksumDigest(). It is only computed again once the element changes.
      *
      * @return SHA-1 HEX checksum of the element
      */
-    public abstract String checksum();
+    public String checksum() {
+        long generation = checksumGeneration.get();
+        String checksum = cachedChecksum;
+        if (checksum == null || (dependsOnLinkedElements() && cachedChecksumGeneration != generation)) {
+            MessageDigest digest = sha1();
+            updateChecksumDigest(digest);
+            checksum = new String(Hex.encodeHex(digest.digest()));
+            cachedChecksum = checksum;
+            cachedChecksumGeneration = generation;
+        }
+        return checksum;
+    }
+
+    /**
+     * Feeds the same bytes to digest as the UTF-8 encoding of the string the checksum of the
+     * element is defined on, without building that string.
+     *
+     * @param digest
+     */
+    protected abstract void updateChecksumDigest(MessageDigest digest);
+
+    /**
+     * @return true if the checksum includes the checksums of linked elements
+     */
+    protected boolean dependsOnLinkedElements() {
+        return false;
+    }
+
+    /**
+     * Must be called whenever something the checksum is computed from changes.
+     */
+    protected void invalidateChecksum() {
+        cachedChecksum = null;
+        checksumGeneration.incrementAndGet();
+    }
+
+    private void invalidateTags() {
+        sortedTagKeys = null;
+        invalidateChecksum();
+    }
+
+    protected static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private List<String> getSortedTagKeys() {
+        List<String> keys = sortedTagKeys;
+        if (keys == null) {
+            keys = new ArrayList<>(tags.keySet());
+            java.util.Collections.sort(keys);
+            sortedTagKeys = keys;
+        }
+        return keys;
+    }
+
+    /**
+     * Feeds the tags to digest the way tagsAsSortedKVString() concatenates them.
+     *
+     * @param digest
+     */
+    protected void updateDigestWithTags(MessageDigest digest) {
+        for (String k : getSortedTagKeys()) {
+            String v = tags.get(k);
+            if (v.length() > 0) {
+                digest.update(k.getBytes(UTF_8));
+                digest.update(v.getBytes(UTF_8));
+            }
+        }
+    }
 
     /**
      * The tags are sorted by key, and each key, value is
@@ -189,10 +287,8 @@ public abstract class OSMElement {
      * @return
      */
     public StringBuilder tagsAsSortedKVString() {
-        List<String> keys = new ArrayList<>(tags.keySet());
-        java.util.Collections.sort(keys);
         StringBuilder tagsStr = new StringBuilder();
-        for (String k : keys) {
+        for (String k : getSortedTagKeys()) {
             String v = tags.get(k);
             if (v.length() > 0) {
                 tagsStr.append(k);
@@ -274,6 +370,7 @@ public abstract class OSMElement {
         }
         setAsModifiedInInstance();
         tags.put(trimKey, trimVal);
+        invalidateTags();
     }
 
     /**
@@ -288,6 +385,7 @@ public abstract class OSMElement {
         }
         setAsModifiedInInstance();
         tags.remove(k);
+        invalidateTags();
     }
     
     public boolean isModified() {
@@ -323,6 +421,7 @@ public abstract class OSMElement {
     public void addParsedTag(String k, String v) {
         originalTags.put(k, v);
         tags.put(k, v);
+        invalidateTags();
     }
     
 
@@ -10,11 +10,10 @@ import com.mapbox.mapboxsdk.overlay.ItemizedOverlay;
 import com.mapbox.mapboxsdk.overlay.Marker;
 import com.spatialdev.osm.marker.OSMMarker;
 
-import org.apache.commons.codec.binary.Hex;
-import org.apache.commons.codec.digest.DigestUtils;
 import org.xmlpull.v1.XmlSerializer;
 
 import java.io.IOException;
+import java.security.MessageDigest;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Timer;
@@ -85,6 +84,7 @@ public class OSMNode extends OSMElement {
     public void move(JTSModel jtsModel, LatLng latLng) {
         lat = latLng.getLatitude();
         lng = latLng.getLongitude();
+        invalidateChecksum();
         jtsModel.removeOSMElement(this);
         jtsModel.addOSMStandaloneNode(this);
         if (marker != null) {
@@ -152,12 +152,13 @@ public class OSMNode extends OSMElement {
      * The checksum of an OSMNode is the sorted k,v of the tags
      * with the lat and long following.
      *
-     * @return
+     * @param digest
      */
     @Override
-    public String checksum() {
-        String str = preChecksum();
-        return new String(Hex.encodeHex(DigestUtils.sha1(str)));
+    protected void updateChecksumDigest(MessageDigest digest) {
+        updateDigestWithTags(digest);
+        digest.update(String.valueOf(lat).getBytes(UTF_8));
+        digest.update(String.valueOf(lng).getBytes(UTF_8));
     }
 
     @Override
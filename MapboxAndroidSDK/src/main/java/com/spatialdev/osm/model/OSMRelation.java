@@ -4,11 +4,10 @@
  */
 package com.spatialdev.osm.model;
 
-import org.apache.commons.codec.binary.Hex;
-import org.apache.commons.codec.digest.DigestUtils;
 import org.xmlpull.v1.XmlSerializer;
 
 import java.io.IOException;
+import java.security.MessageDigest;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -51,18 +50,22 @@ public class OSMRelation extends OSMElement {
     }
 
     @Override
-    public String checksum() {
-        StringBuilder str = tagsAsSortedKVString();
+    protected void updateChecksumDigest(MessageDigest digest) {
+        updateDigestWithTags(digest);
         for (OSMNode n : linkedNodes) {
-            str.append(n.checksum());
+            digest.update(n.checksum().getBytes(UTF_8));
         }
         for (OSMWay w : linkedWays) {
-            str.append(w.checksum());
+            digest.update(w.checksum().getBytes(UTF_8));
         }
         for (OSMRelation r : linkedRelations) {
-            str.append(r.checksum());
+            digest.update(r.checksum().getBytes(UTF_8));
         }
-        return new String(Hex.encodeHex(DigestUtils.sha1(str.toString())));
+    }
+
+    @Override
+    protected boolean dependsOnLinkedElements() {
+        return true;
     }
 
     @Override
@@ -116,6 +119,7 @@ public class OSMRelation extends OSMElement {
         int unlinkedWays = linkWays(ways);
         int unlinkedRelations = linkRelations(relations);
         unlinkedMembersCount = unlinkedNodes + unlinkedWays + unlinkedRelations;
+        invalidateChecksum();
         return unlinkedMembersCount;
     }
 
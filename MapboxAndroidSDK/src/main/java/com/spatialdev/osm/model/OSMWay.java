@@ -7,11 +7,10 @@ package com.spatialdev.osm.model;
 import com.mapbox.mapboxsdk.views.MapView;
 import com.spatialdev.osm.renderer.OSMPath;
 
-import org.apache.commons.codec.binary.Hex;
-import org.apache.commons.codec.digest.DigestUtils;
 import org.xmlpull.v1.XmlSerializer;
 
 import java.io.IOException;
+import java.security.MessageDigest;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -73,9 +72,16 @@ public class OSMWay extends OSMElement {
     }
 
     @Override
-    public String checksum() {
-        String str = preChecksum();
-        return new String(Hex.encodeHex(DigestUtils.sha1(str)));
+    protected void updateChecksumDigest(MessageDigest digest) {
+        updateDigestWithTags(digest);
+        for (OSMNode n : linkedNodes) {
+            digest.update(n.checksum().getBytes(UTF_8));
+        }
+    }
+
+    @Override
+    protected boolean dependsOnLinkedElements() {
+        return true;
     }
 
     public String preChecksum() {
@@ -91,6 +97,20 @@ public class OSMWay extends OSMElement {
         for (OSMNode node : linkedNodes) {
             node.xml(xmlSerializer, omkOsmUser);
         }
+        wayXml(xmlSerializer, omkOsmUser);
+        for (OSMRelation relation : linkedRelations) {
+            relation.xml(xmlSerializer, omkOsmUser);
+        }
+    }
+
+    /**
+     * Writes only the way element itself, without the nodes and relations it is linked to.
+     * * *
+     * @param xmlSerializer
+     * @param omkOsmUser
+     * @throws IOException
+     */
+    void wayXml(XmlSerializer xmlSerializer, String omkOsmUser) throws IOException {
         xmlSerializer.startTag(null, "way");
         setOsmElementXmlAttributes(xmlSerializer, omkOsmUser);
         // generate nds
@@ -98,9 +118,6 @@ public class OSMWay extends OSMElement {
         // generate tags
         super.xml(xmlSerializer, omkOsmUser);
         xmlSerializer.endTag(null, "way");
-        for (OSMRelation relation : linkedRelations) {
-            relation.xml(xmlSerializer, omkOsmUser);
-        }
     }
 
     private void setWayXmlNds(XmlSerializer xmlSerializer) throws IOException {
@@ -135,6 +152,7 @@ public class OSMWay extends OSMElement {
                 unlinkedRefs.add(refId);
             } else {
                 linkedNodes.add(node);
+                invalidateChecksum();
             }
         }
         nodeRefs = unlinkedRefs;
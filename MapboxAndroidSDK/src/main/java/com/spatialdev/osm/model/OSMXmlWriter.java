@@ -9,22 +9,47 @@ import android.util.Xml;
 
 import org.xmlpull.v1.XmlSerializer;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
 
 public class OSMXmlWriter {
 
     private static final String OSM_API_VERSION = "0.6";
 
+    private static final String ENCODING = "UTF-8";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Extension of OsmChange files, see writeModifiedElementsToFile().
+     */
+    public static final String OSM_CHANGE_EXTENSION = ".osc";
+
     // We are not using namespaces.
     private static final String ns = null;
 
-    private LinkedList<OSMElement> elements;
+    private Iterable<? extends OSMElement> elements;
     private String generator = "unknown";
     private String osmUser = "";
     private XmlSerializer xmlSerializer;
-    StringWriter stringWriter;
+    private Writer writer;
+
+    // Keys of the elements written so far, when each element is to be written once
+    private Set<String> written;
+    private boolean osmChange = false;
+    private String changeBlock;
     
     public static String elementToString(OSMElement element, String osmUser, String appNameAndVersion) throws IOException {
         LinkedList<OSMElement> elements = null;
@@ -36,42 +61,239 @@ public class OSMXmlWriter {
     }
     
     public static String elementsToString(LinkedList<OSMElement> elements, String osmUser, String appNameAndVersion) throws IOException {
-        OSMXmlWriter writer = new OSMXmlWriter(elements, appNameAndVersion, osmUser);
-        writer.start();
-        
-        if (elements != null) {
-            writer.iterateElements();
+        StringWriter stringWriter = new StringWriter();
+        OSMXmlWriter writer = new OSMXmlWriter(elements, appNameAndVersion, osmUser, stringWriter);
+        writer.write();
+        return stringWriter.toString();
+    }
+
+    /**
+     * Serializes elements as UTF-8 straight to a stream, one element at a time, so that the
+     * memory used doesn't grow with the number of elements. The stream is flushed, not closed.
+     * * *
+     * @param elements elements to write, or null for an empty document
+     * @param out
+     * @param osmUser
+     * @param appNameAndVersion
+     * @throws IOException
+     */
+    public static void writeElements(Iterable<? extends OSMElement> elements, OutputStream out, String osmUser, String appNameAndVersion) throws IOException {
+        write(elements, out, false, false, osmUser, appNameAndVersion);
+    }
+
+    /**
+     * Streams modified elements, such as those of every loaded data set, to a single file. Every
+     * element is written once, even if it is in elements several times or several modified ways
+     * share it.
+     *
+     * A file with the .osc extension is an OsmChange document: new elements are in its create
+     * block, before the elements referencing them, and the other ones in its modify block.
+     * Other files are OSM XML, with the nodes of the modified ways, like the files saved in
+     * ODK Collect for each edit.
+     *
+     * The elements are copied before anything is written, so that a collection which is added to
+     * by other threads is only iterated briefly, by the calling thread.
+     * * *
+     * @param elements modified elements to write
+     * @param file
+     * @param osmUser
+     * @param appNameAndVersion
+     * @throws IOException
+     */
+    public static void writeModifiedElementsToFile(Collection<? extends OSMElement> elements, File file, final String osmUser, final String appNameAndVersion) throws IOException {
+        final List<OSMElement> snapshot = new ArrayList<>(elements);
+        final boolean osmChange = file.getName().endsWith(OSM_CHANGE_EXTENSION);
+        writeToFile(file, new Body() {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                OSMXmlWriter.write(snapshot, out, osmChange, true, osmUser, appNameAndVersion);
+            }
+        });
+    }
+
+    private interface Body {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private static void write(Iterable<? extends OSMElement> elements, OutputStream out, boolean osmChange, boolean distinct,
+                              String osmUser, String appNameAndVersion) throws IOException {
+        Writer bufferedWriter = new BufferedWriter(new OutputStreamWriter(out, ENCODING), BUFFER_SIZE);
+        OSMXmlWriter writer = new OSMXmlWriter(elements, appNameAndVersion, osmUser, bufferedWriter);
+        writer.osmChange = osmChange;
+        if (distinct || osmChange) {
+            writer.written = new HashSet<>();
+        }
+        writer.write();
+        bufferedWriter.flush();
+    }
+
+    /**
+     * Writes elements to a file. The XML goes to a temporary file next to it first, which then
+     * replaces the file in one rename, so that the file is never left half written.
+     * * *
+     * @param elements elements to write, or null for an empty document
+     * @param file
+     * @param osmUser
+     * @param appNameAndVersion
+     * @throws IOException
+     */
+    public static void writeElementsToFile(final Iterable<? extends OSMElement> elements, File file, final String osmUser, final String appNameAndVersion) throws IOException {
+        writeToFile(file, new Body() {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                writeElements(elements, out, osmUser, appNameAndVersion);
+            }
+        });
+    }
+
+    private static void writeToFile(File file, Body body) throws IOException {
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        boolean renamed = false;
+        FileOutputStream fos = new FileOutputStream(tmp);
+        try {
+            try {
+                body.write(fos);
+                // The data has to be on disk before the rename makes it visible
+                fos.getFD().sync();
+            } finally {
+                fos.close();
+            }
+            renamed = tmp.renameTo(file);
+            if (!renamed) {
+                throw new IOException("Unable to rename " + tmp.getAbsolutePath() + " to " + file.getAbsolutePath());
+            }
+        } finally {
+            if (!renamed) {
+                tmp.delete();
+            }
         }
-        
-        return writer.end();
     }
     
-    private OSMXmlWriter(LinkedList<OSMElement> elements, String generator, String osmUser) {
+    private OSMXmlWriter(Iterable<? extends OSMElement> elements, String generator, String osmUser, Writer writer) {
         this.elements = elements;
         this.generator = generator;
         this.osmUser = osmUser;
+        this.writer = writer;
         xmlSerializer = Xml.newSerializer();
-        stringWriter = new StringWriter();
+    }
+
+    private void write() throws IOException {
+        start();
+        if (elements != null) {
+            if (osmChange) {
+                iterateChanges();
+            } else {
+                iterateElements();
+            }
+        }
+        end();
     }
 
     private void start() throws IOException {
-        xmlSerializer.setOutput(stringWriter);
-        xmlSerializer.startDocument("UTF-8", null);
-        xmlSerializer.startTag(ns, "osm");
+        xmlSerializer.setOutput(writer);
+        xmlSerializer.startDocument(ENCODING, null);
+        xmlSerializer.startTag(ns, rootTag());
         xmlSerializer.attribute(ns, "version", OSM_API_VERSION);
         xmlSerializer.attribute(ns, "generator", generator);
-        xmlSerializer.attribute(ns, "user", osmUser);
+        if (!osmChange) {
+            xmlSerializer.attribute(ns, "user", osmUser);
+        }
     }
     
-    private String end() throws IOException {
-        xmlSerializer.endTag(ns, "osm");
+    private void end() throws IOException {
+        if (changeBlock != null) {
+            xmlSerializer.endTag(ns, changeBlock);
+        }
+        xmlSerializer.endTag(ns, rootTag());
         xmlSerializer.endDocument();
-        return stringWriter.toString();
+    }
+
+    private String rootTag() {
+        return osmChange ? "osmChange" : "osm";
     }
     
     private void iterateElements() throws IOException {
         for (OSMElement element : elements) {
+            if (written == null) {
+                element.xml(xmlSerializer, osmUser);
+            } else if (element instanceof OSMWay) {
+                OSMWay way = (OSMWay) element;
+                for (OSMNode node : way.getNodes()) {
+                    if (written.add(key(node))) {
+                        node.xml(xmlSerializer, osmUser);
+                    }
+                }
+                if (written.add(key(way))) {
+                    way.wayXml(xmlSerializer, osmUser);
+                }
+                for (OSMRelation relation : way.getRelations()) {
+                    if (written.add(key(relation))) {
+                        relation.xml(xmlSerializer, osmUser);
+                    }
+                }
+            } else if (written.add(key(element))) {
+                element.xml(xmlSerializer, osmUser);
+            }
+        }
+    }
+
+    /**
+     * Only modified elements go in an OsmChange document, the nodes of a modified way are
+     * already on the server unless they are new themselves.
+     */
+    private void iterateChanges() throws IOException {
+        // New elements are created before the elements referencing them
+        for (OSMElement element : elements) {
+            if (element instanceof OSMNode && element.getId() < 0) {
+                writeChange("create", element);
+            }
+        }
+        for (OSMElement element : elements) {
+            if (element instanceof OSMWay && element.getId() < 0) {
+                writeChange("create", element);
+            }
+        }
+        for (OSMElement element : elements) {
+            if (element instanceof OSMRelation && element.getId() < 0) {
+                writeChange("create", element);
+            }
+        }
+        for (OSMElement element : elements) {
+            if (element.getId() >= 0) {
+                writeChange("modify", element);
+            }
+        }
+    }
+
+    private void writeChange(String block, OSMElement element) throws IOException {
+        if (!written.add(key(element))) {
+            return;
+        }
+        if (!block.equals(changeBlock)) {
+            if (changeBlock != null) {
+                xmlSerializer.endTag(ns, changeBlock);
+            }
+            xmlSerializer.startTag(ns, block);
+            changeBlock = block;
+        }
+        if (element instanceof OSMWay) {
+            ((OSMWay) element).wayXml(xmlSerializer, osmUser);
+        } else {
             element.xml(xmlSerializer, osmUser);
         }
     }
+
+    /**
+     * Ids are only unique within a type of element, and the same element may have been
+     * loaded from several files.
+     */
+    private static String key(OSMElement element) {
+        if (element instanceof OSMNode) {
+            return "n" + element.getId();
+        }
+        if (element instanceof OSMWay) {
+            return "w" + element.getId();
+        }
+        return "r" + element.getId();
+    }
 }
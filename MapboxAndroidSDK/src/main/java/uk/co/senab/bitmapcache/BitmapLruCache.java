@@ -137,6 +137,28 @@ public class BitmapLruCache {
         return Md5.encode(url);
     }
 
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * The memory cache is keyed by {@code long}s. Callers which can pack their own keys, such as
+     * map tiles, use the methods taking a {@code memoryKey} and must keep the sign bit clear. Urls are hashed into the other half of
+     * the key space, and the url of an entry is checked on lookup so that a collision is a miss.
+     *
+     * @param url - Key to be transformed
+     * @return key which can be used for the memory cache
+     */
+    public static long memoryKeyFor(String url) {
+        long hash = FNV_OFFSET_BASIS;
+        if (null != url) {
+            for (int i = 0, length = url.length(); i < length; i++) {
+                hash ^= url.charAt(i);
+                hash *= FNV_PRIME;
+            }
+        }
+        return hash | Long.MIN_VALUE;
+    }
+
     private File mTempDir;
 
     private Resources mResources;
@@ -158,6 +180,8 @@ public class BitmapLruCache {
 
     private ScheduledThreadPoolExecutor mDiskCacheFlusherExecutor;
 
+    private DiskCacheWriter mDiskCacheWriter;
+
     private DiskCacheFlushRunnable mDiskCacheFlusherRunnable;
 
     // Transient
@@ -195,6 +219,9 @@ public class BitmapLruCache {
      */
     public boolean containsInDiskCache(String url) {
         if (null != mDiskCache) {
+            if (null != mDiskCacheWriter.get(url)) {
+                return true;
+            }
             checkNotOnMainThread();
 
             try {
@@ -216,7 +243,19 @@ public class BitmapLruCache {
      *         false} otherwise.
      */
     public boolean containsInMemoryCache(String url) {
-        return null != mMemoryCache && null != mMemoryCache.get(url);
+        return null != getFromMemoryCache(memoryKeyFor(url), url);
+    }
+
+    /**
+     * Returns whether the Memory Cache contains the specified key. This method is safe to be called
+     * from the main thread.
+     *
+     * @param memoryKey the key to search for.
+     * @return {@code true} if the Memory Cache is enabled and contains the specified key, {@code
+     *         false} otherwise.
+     */
+    public boolean containsInMemoryCache(long memoryKey) {
+        return null != mMemoryCache && null != mMemoryCache.get(memoryKey);
     }
 
     /**
@@ -263,15 +302,51 @@ public class BitmapLruCache {
      */
     public CacheableBitmapDrawable getFromDiskCache(final String url,
             final BitmapFactory.Options decodeOpts) {
+        return getFromDiskCache(url, memoryKeyFor(url), decodeOpts);
+    }
+
+    /**
+     * Returns the value for {@code url} in the disk cache only, caching it in the memory cache
+     * under {@code memoryKey}. You should not call this method from main/UI thread.
+     *
+     * @param url        - String representing the URL of the image
+     * @param memoryKey  - Key of the image in the memory cache
+     * @param decodeOpts - Options used for decoding the contents from the disk cache.
+     * @return Value for {@code url} from disk cache, or {@code null} if the disk cache is not
+     *         enabled.
+     */
+    public CacheableBitmapDrawable getFromDiskCache(final String url, final long memoryKey,
+            final BitmapFactory.Options decodeOpts) {
         CacheableBitmapDrawable result = null;
 
         if (null != mDiskCache) {
             checkNotOnMainThread();
 
+            // Writes still queued are read back from memory
+            final DiskCacheWriter.Entry pending = mDiskCacheWriter.get(url);
+            if (null != pending) {
+                if (null != pending.data) {
+                    result = decodeBitmapToDrawable(new ByteArrayInputStreamProvider(pending.data),
+                            url, memoryKey, decodeOpts);
+                } else if (pending.drawable.isBitmapValid()
+                        && pending.drawable.getMemoryKey() == memoryKey) {
+                    result = pending.drawable;
+                }
+                if (null != result) {
+                    if (null != mMemoryCache) {
+                        synchronized (mMemoryCache) {
+                            mMemoryCache.put(result);
+                        }
+                    }
+                    return result;
+                }
+            }
+
             try {
                 final String key = transformUrlForDiskCacheKey(url);
                 // Try and decode bitmap
-                result = decodeBitmapToDrawable(new SnapshotInputStreamProvider(key), url, decodeOpts);
+                result = decodeBitmapToDrawable(new SnapshotInputStreamProvider(key), url, memoryKey,
+                        decodeOpts);
 
                 if (null != result) {
                     if (null != mMemoryCache) {
@@ -291,6 +366,35 @@ public class BitmapLruCache {
         return result;
     }
 
+    /**
+     * Returns the encoded contents stored for {@code url} in the disk cache, without decoding
+     * them. The result is not cached in the memory cache. You should not call this method from
+     * main/UI thread.
+     *
+     * @param url - String representing the URL of the image
+     * @return The contents, or {@code null} if the disk cache is not enabled, does not contain
+     *         {@code url}, or only has a Bitmap for it which is still waiting to be compressed.
+     */
+    public byte[] getBytesFromDiskCache(final String url) {
+        if (null != mDiskCache) {
+            final DiskCacheWriter.Entry pending = mDiskCacheWriter.get(url);
+            if (null != pending) {
+                return pending.data;
+            }
+            checkNotOnMainThread();
+
+            try {
+                DiskLruCache.Snapshot snapshot = mDiskCache.get(transformUrlForDiskCacheKey(url));
+                if (null != snapshot) {
+                    return IoUtils.toByteArray(snapshot.getInputStream(0));
+                }
+            } catch (IOException e) {
+                Log.e(Constants.LOG_TAG, "Could not read disk cache for url: " + url, e);
+            }
+        }
+        return null;
+    }
+
     /**
      * Returns the value for {@code url} in the memory cache only. This method is safe to be called
      * from the main thread. <p /> You should check the result of this method before starting a
@@ -301,31 +405,66 @@ public class BitmapLruCache {
      *         enabled.
      */
     public CacheableBitmapDrawable getFromMemoryCache(final String url) {
+        return getFromMemoryCache(memoryKeyFor(url), url);
+    }
+
+    /**
+     * Returns the value for {@code memoryKey} in the memory cache only. This method is safe to be
+     * called from the main thread.
+     *
+     * @param memoryKey - Key of the image in the memory cache
+     * @return Value for {@code memoryKey} from memory cache, or {@code null} if the memory cache
+     *         is not enabled.
+     */
+    public CacheableBitmapDrawable getFromMemoryCache(final long memoryKey) {
+        return getFromMemoryCache(memoryKey, null);
+    }
+
+    private CacheableBitmapDrawable getFromMemoryCache(final long memoryKey, final String url) {
         CacheableBitmapDrawable result = null;
 
         if (null != mMemoryCache) {
             synchronized (mMemoryCache) {
-                result = mMemoryCache.get(url);
+                result = mMemoryCache.get(memoryKey);
 
                 // If we get a value, but it has a invalid bitmap, remove it
                 if (null != result && !result.isBitmapValid()) {
-                    mMemoryCache.remove(url);
+                    mMemoryCache.remove(memoryKey);
                     result = null;
                 }
             }
         }
 
+        // A url which only shares the hash of another one
+        if (null != result && null != url && !url.equals(result.getUrl())) {
+            result = null;
+        }
+
         return result;
     }
 
 
     public Bitmap getBitmapFromRemoved(final int width, final int height) {
-        if (null != mMemoryCache) {
-            synchronized (mMemoryCache) {
-                return mMemoryCache.getBitmapFromRemoved(width, height);
-            }
-        }
-        return null;
+        return getBitmapFromRemoved(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Takes a Bitmap which is no longer cached nor displayed out of the {@link BitmapPool}, so it
+     * can be drawn or decoded into again. This method is safe to be called from the main thread.
+     *
+     * @return a Bitmap of the given shape, or {@code null} if there is none to reuse
+     */
+    public Bitmap getBitmapFromRemoved(final int width, final int height,
+            final Bitmap.Config config) {
+        return null != mMemoryCache ? mMemoryCache.getBitmapFromRemoved(width, height, config)
+                : null;
+    }
+
+    /**
+     * @return the pool of Bitmaps reused for decoding, or {@code null} if Bitmaps are not reused
+     */
+    public BitmapPool getBitmapPool() {
+        return null != mMemoryCache ? mMemoryCache.getBitmapPool() : null;
     }
 
     /**
@@ -420,28 +559,95 @@ public class BitmapLruCache {
         if (null != mDiskCache) {
             checkNotOnMainThread();
 
-            final String key = transformUrlForDiskCacheKey(url);
-            final ReentrantLock lock = getLockForDiskCacheEdit(key);
-            lock.lock();
+            writeToDiskCache(url, null, drawable, compressFormat, compressQuality);
+            scheduleDiskCacheFlush();
+        }
 
-            OutputStream os = null;
+        return drawable;
+    }
 
-            try {
-                DiskLruCache.Editor editor = mDiskCache.edit(key);
-                os = editor.newOutputStream(0);
-                drawable.getBitmap().compress(compressFormat, compressQuality, os);
-                os.flush();
-                editor.commit();
-            } catch (IOException e) {
-                Log.e(Constants.LOG_TAG, "Error while writing to disk cache", e);
-            } finally {
-                IoUtils.closeStream(os);
-                lock.unlock();
-                scheduleDiskCacheFlush();
+    /**
+     * Queues the original encoded contents of an image, such as a PNG or JPEG file, to be written
+     * to the disk cache on a background thread. This method is safe to be called from the main
+     * thread.
+     *
+     * @param url  - String representing the URL of the image
+     * @param data - Contents opened from {@code url}, which must not be modified afterwards
+     * @return {@code true} if the write has been queued, {@code false} if the disk cache is not
+     *         enabled or too many writes are queued already.
+     */
+    public boolean putInDiskCacheAsync(final String url, final byte[] data) {
+        return null != mDiskCache && null != data && mDiskCacheWriter.put(url, data);
+    }
+
+    /**
+     * Queues the Bitmap of {@code drawable} to be compressed losslessly and written to the disk
+     * cache on a background thread. Prefer {@link #putInDiskCacheAsync(String, byte[])} when the
+     * original contents are at hand. This method is safe to be called from the main thread.
+     *
+     * @return {@code true} if the write has been queued, {@code false} if the disk cache is not
+     *         enabled or too many writes are queued already.
+     */
+    public boolean putInDiskCacheAsync(final String url, final CacheableBitmapDrawable drawable) {
+        return null != mDiskCache && null != drawable
+                && mDiskCacheWriter.put(url, drawable, Bitmap.CompressFormat.PNG, 100);
+    }
+
+    /**
+     * Writes a queued entry, called on the disk cache thread by {@link DiskCacheWriter}. Bitmaps
+     * are not compressed again if the disk cache has an entry for the url already.
+     */
+    void writeToDiskCache(final DiskCacheWriter.Entry entry) {
+        if (null == entry.data && containsInDiskCacheUnchecked(entry.url)) {
+            return;
+        }
+        writeToDiskCache(entry.url, entry.data, entry.drawable, entry.compressFormat,
+                entry.compressQuality);
+    }
+
+    private boolean containsInDiskCacheUnchecked(final String url) {
+        DiskLruCache.Snapshot snapshot = null;
+        try {
+            snapshot = mDiskCache.get(transformUrlForDiskCacheKey(url));
+            return null != snapshot;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (null != snapshot) {
+                snapshot.close();
             }
         }
+    }
 
-        return drawable;
+    private void writeToDiskCache(final String url, final byte[] data,
+            final CacheableBitmapDrawable drawable, Bitmap.CompressFormat compressFormat,
+            int compressQuality) {
+        final String key = transformUrlForDiskCacheKey(url);
+        final ReentrantLock lock = getLockForDiskCacheEdit(key);
+        lock.lock();
+
+        OutputStream os = null;
+
+        try {
+            DiskLruCache.Editor editor = mDiskCache.edit(key);
+            if (null == editor) {
+                // Another edit of this entry is in progress
+                return;
+            }
+            os = editor.newOutputStream(0);
+            if (null != data) {
+                os.write(data);
+            } else {
+                drawable.getBitmap().compress(compressFormat, compressQuality, os);
+            }
+            os.flush();
+            editor.commit();
+        } catch (IOException e) {
+            Log.e(Constants.LOG_TAG, "Error while writing to disk cache", e);
+        } finally {
+            IoUtils.closeStream(os);
+            lock.unlock();
+        }
     }
 
     public CacheableBitmapDrawable putInDiskCache(final String url, final Bitmap bitmap,
@@ -480,8 +686,8 @@ public class BitmapLruCache {
      * <ul>
      * <li>If the memory cache is enabled, the decoded Bitmap will be cached to
      * memory.</li>
-     * <li>If the disk cache is enabled, a temporay version of the contents is
-     * copied to disk before decoding and then cached to disk.</li>
+     * <li>If the disk cache is enabled, the contents are queued to be written
+     * to disk, see {@link #putInDiskCacheAsync(String, byte[])}.</li>
      * </ul>
      * <p/>
      * You should not call this method from the main/UI thread.
@@ -494,22 +700,28 @@ public class BitmapLruCache {
      */
     public CacheableBitmapDrawable put(final String url, final byte[] data,
             final BitmapFactory.Options decodeOpts) {
+        return put(url, memoryKeyFor(url), data, decodeOpts);
+    }
+
+    /**
+     * Same as {@link #put(String, byte[], android.graphics.BitmapFactory.Options)}, caching the
+     * decoded Bitmap in memory under {@code memoryKey}.
+     */
+    public CacheableBitmapDrawable put(final String url, final long memoryKey, final byte[] data,
+            final BitmapFactory.Options decodeOpts) {
         checkNotOnMainThread();
 
-        if (null == mDiskCache) {
-            // shortcut to avoid temporary storage on disk
-            CacheableBitmapDrawable d = decodeBitmapToDrawable(new ByteArrayInputStreamProvider(data), url,
-                    decodeOpts);
-            if (null != d) {
-                if (null != mMemoryCache) {
-                    d.setCached(true);
-                    mMemoryCache.put(d.getUrl(), d);
+        CacheableBitmapDrawable d = decodeBitmapToDrawable(new ByteArrayInputStreamProvider(data), url,
+                memoryKey, decodeOpts);
+        if (null != d) {
+            if (null != mMemoryCache) {
+                synchronized (mMemoryCache) {
+                    mMemoryCache.put(d);
                 }
-                return d;
             }
+            putInDiskCacheAsync(url, data);
         }
-
-        return put(url, new ByteArrayInputStream(data), decodeOpts);
+        return d;
     }
 
     /**
@@ -538,6 +750,15 @@ public class BitmapLruCache {
      */ //todo
     public CacheableBitmapDrawable put(final String url, final InputStream inputStream,
             final BitmapFactory.Options decodeOpts) {
+        return put(url, memoryKeyFor(url), inputStream, decodeOpts);
+    }
+
+    /**
+     * Same as {@link #put(String, InputStream, android.graphics.BitmapFactory.Options)}, caching
+     * the decoded Bitmap in memory under {@code memoryKey}.
+     */
+    public CacheableBitmapDrawable put(final String url, final long memoryKey,
+            final InputStream inputStream, final BitmapFactory.Options decodeOpts) {
         if (inputStream == null) return null;
         checkNotOnMainThread();
 
@@ -557,13 +778,13 @@ public class BitmapLruCache {
 
         if (null != tmpFile) {
             // Try and decode File
-            d = decodeBitmapToDrawable(new FileInputStreamProvider(tmpFile), url, decodeOpts);
+            d = decodeBitmapToDrawable(new FileInputStreamProvider(tmpFile), url, memoryKey,
+                    decodeOpts);
 
             if (d != null) {
                 if (null != mMemoryCache) {
-                    d.setCached(true);
                     synchronized (mMemoryCache) {
-                        mMemoryCache.put(d.getUrl(), d);
+                        mMemoryCache.put(d);
                     }
                 }
 
@@ -597,31 +818,32 @@ public class BitmapLruCache {
      * disk cache enabled, you should not call this method from main/UI thread.
      */
     public void remove(String url) {
+        removeFromMemoryCache(url);
+        removeFromDiskCache(url);
+    }
+
+    /**
+     * Removes the entry for {@code url} from memory, if it exists. <p/>
+     */
+    public void removeFromMemoryCache(String url) {
         if (null != mMemoryCache) {
+            final long memoryKey = memoryKeyFor(url);
             synchronized (mMemoryCache) {
-                mMemoryCache.remove(url);
-            }
-        }
-
-        if (null != mDiskCache) {
-            checkNotOnMainThread();
-
-            try {
-                mDiskCache.remove(transformUrlForDiskCacheKey(url));
-                scheduleDiskCacheFlush();
-            } catch (IOException e) {
-                e.printStackTrace();
+                final CacheableBitmapDrawable d = mMemoryCache.peek(memoryKey);
+                if (null != d && null != url && url.equals(d.getUrl())) {
+                    mMemoryCache.remove(memoryKey);
+                }
             }
         }
     }
 
     /**
-     * Removes the entry for {@code url} from memory, if it exists. <p/>
+     * Removes the entry for {@code memoryKey} from memory, if it exists. <p/>
      */
-    public void removeFromMemoryCache(String url) {
+    public void removeFromMemoryCache(long memoryKey) {
         if (null != mMemoryCache) {
             synchronized (mMemoryCache) {
-                mMemoryCache.remove(url);
+                mMemoryCache.remove(memoryKey);
             }
         }
     }
@@ -679,13 +901,16 @@ public class BitmapLruCache {
     }
 
     synchronized void setDiskCache(DiskLruCache diskCache) {
-        mDiskCache = diskCache;
-
         if (null != diskCache) {
             mDiskCacheEditLocks = new HashMap<String, ReentrantLock>();
             mDiskCacheFlusherExecutor = new ScheduledThreadPoolExecutor(1);
             mDiskCacheFlusherRunnable = new DiskCacheFlushRunnable(diskCache);
+            mDiskCacheWriter = new DiskCacheWriter(this, mDiskCacheFlusherExecutor,
+                    DiskCacheWriter.DEFAULT_MAX_PENDING);
         }
+
+        // Last, as the rest is only used once the disk cache is set
+        mDiskCache = diskCache;
     }
 
     void setMemoryCache(BitmapMemoryLruCache memoryCache) {
@@ -704,7 +929,7 @@ public class BitmapLruCache {
         }
     }
 
-    private void scheduleDiskCacheFlush() {
+    void scheduleDiskCacheFlush() {
         // If we already have a flush scheduled, cancel it
         if (null != mDiskCacheFuture) {
             mDiskCacheFuture.cancel(false);
@@ -718,17 +943,23 @@ public class BitmapLruCache {
 
     public CacheableBitmapDrawable createCacheableBitmapDrawable(Bitmap bitmap, String url, int source)
     {
+        return createCacheableBitmapDrawable(bitmap, url, memoryKeyFor(url), source);
+    }
+
+    public CacheableBitmapDrawable createCacheableBitmapDrawable(Bitmap bitmap, String url,
+            long memoryKey, int source) {
         if (bitmap != null) {
-            return new CacheableBitmapDrawable(url, mResources, bitmap, mRecyclePolicy, source);
+            return new CacheableBitmapDrawable(url, memoryKey, mResources, bitmap, mRecyclePolicy,
+                    source);
         }
         return null;
     }
 
     private CacheableBitmapDrawable decodeBitmapToDrawable(InputStreamProvider ip, String url,
-            BitmapFactory.Options opts) {
+            long memoryKey, BitmapFactory.Options opts) {
         AtomicInteger source = new AtomicInteger(0);
         Bitmap result = decodeBitmap(ip, opts, source);
-        return createCacheableBitmapDrawable(result, url, source.get());
+        return createCacheableBitmapDrawable(result, url, memoryKey, source.get());
     }
 
     public Bitmap decodeBitmap(InputStreamProvider ip, BitmapFactory.Options opts) {
@@ -742,6 +973,23 @@ public class BitmapLruCache {
             source.set(CacheableBitmapDrawable.SOURCE_NEW);
         }
 
+        if (opts instanceof SizedDecodeOptions && mRecyclePolicy.canInBitmap()) {
+            try {
+                return decodeSizedBitmap(ip, (SizedDecodeOptions) opts, source);
+            } catch (IllegalArgumentException e) {
+                // Not the expected size, fall back to reading the bounds first
+                if (Constants.DEBUG) {
+                    Log.d(Constants.LOG_TAG, "Unexpected bitmap size, decoding again", e);
+                }
+                if (source != null) {
+                    source.set(CacheableBitmapDrawable.SOURCE_NEW);
+                }
+            } catch (RuntimeException e) {
+                Log.e(Constants.LOG_TAG, "Unable to decode stream", e);
+                return null;
+            }
+        }
+
         try {
             if (mRecyclePolicy.canInBitmap()) {
                 // Create an options instance if we haven't been provided with one
@@ -776,6 +1024,48 @@ public class BitmapLruCache {
         return bm;
     }
 
+    /**
+     * Decodes in a single pass, straight into a pooled Bitmap of the expected size if there is
+     * one, instead of reading the bounds first.
+     *
+     * @throws IllegalArgumentException if the image could not be decoded into the pooled Bitmap,
+     *                                  which has then been given back to the pool
+     */
+    private Bitmap decodeSizedBitmap(InputStreamProvider ip, SizedDecodeOptions opts,
+            AtomicInteger source) {
+        opts.inJustDecodeBounds = false;
+        opts.inSampleSize = 1;
+        opts.inMutable = true;
+
+        final Bitmap.Config config = null != opts.inPreferredConfig
+                ? opts.inPreferredConfig : Bitmap.Config.ARGB_8888;
+        final Bitmap reusableBm = getBitmapFromRemoved(opts.width, opts.height, config);
+        if (reusableBm != null) {
+            SDK11.addInBitmapOption(opts, reusableBm);
+            if (source != null) {
+                source.set(CacheableBitmapDrawable.SOURCE_INBITMAP);
+            }
+        }
+
+        InputStream is = null;
+        try {
+            is = ip.getInputStream();
+            if (is == null && ip instanceof ByteArrayInputStreamProvider) {
+                byte[] data = ((ByteArrayInputStreamProvider) ip).array;
+                return BitmapFactory.decodeByteArray(data, 0, data.length, opts);
+            }
+            return BitmapFactory.decodeStream(is, null, opts);
+        } catch (IllegalArgumentException e) {
+            if (reusableBm != null) {
+                SDK11.addInBitmapOption(opts, null);
+                getBitmapPool().put(reusableBm);
+            }
+            throw e;
+        } finally {
+            IoUtils.closeStream(is);
+        }
+    }
+
     private boolean addInBitmapOptions(InputStreamProvider ip, BitmapFactory.Options opts) {
         // Create InputStream for decoding the bounds
         final InputStream is = ip.getInputStream();
@@ -795,18 +1085,17 @@ public class BitmapLruCache {
         opts.inMutable = true;
 
         // Try and find Bitmap to use for inBitmap
-        synchronized (mMemoryCache) {
-            Bitmap reusableBm = mMemoryCache.getBitmapFromRemoved(opts.outWidth, opts.outHeight);
-            if (reusableBm != null) {
-                if (Constants.DEBUG) {
-                    Log.i(Constants.LOG_TAG, "Using inBitmap");
-                }
-                SDK11.addInBitmapOption(opts, reusableBm);
-                return true;
+        final Bitmap.Config config = null != opts.inPreferredConfig
+                ? opts.inPreferredConfig : Bitmap.Config.ARGB_8888;
+        Bitmap reusableBm = getBitmapFromRemoved(opts.outWidth, opts.outHeight, config);
+        if (reusableBm != null) {
+            if (Constants.DEBUG) {
+                Log.i(Constants.LOG_TAG, "Using inBitmap");
             }
+            SDK11.addInBitmapOption(opts, reusableBm);
+            return true;
         }
 
-
         return false;
     }
 
@@ -835,6 +1124,8 @@ public class BitmapLruCache {
 
         static final int DEFAULT_MEM_CACHE_MAX_SIZE_MB = 3;
 
+        static final float DEFAULT_BITMAP_POOL_MEMORY_CACHE_RATIO = 1f / 4f;
+
         static final RecyclePolicy DEFAULT_RECYCLE_POLICY = RecyclePolicy.PRE_HONEYCOMB_ONLY;
 
         // Only used for Javadoc
@@ -859,6 +1150,8 @@ public class BitmapLruCache {
 
         private int mMemoryCacheMaxSize;
 
+        private int mBitmapPoolMaxSize = -1;
+
         private RecyclePolicy mRecyclePolicy;
 
         /**
@@ -892,7 +1185,10 @@ public class BitmapLruCache {
                 if (Constants.DEBUG) {
                     Log.d("BitmapLruCache.Builder", "Creating Memory Cache");
                 }
-                cache.setMemoryCache(new BitmapMemoryLruCache(mMemoryCacheMaxSize, mRecyclePolicy));
+                final int bitmapPoolMaxSize = mBitmapPoolMaxSize >= 0 ? mBitmapPoolMaxSize
+                        : Math.round(mMemoryCacheMaxSize * DEFAULT_BITMAP_POOL_MEMORY_CACHE_RATIO);
+                cache.setMemoryCache(new BitmapMemoryLruCache(mMemoryCacheMaxSize,
+                        bitmapPoolMaxSize, mRecyclePolicy));
             }
 
             if (isValidOptionsForDiskCache()) {
@@ -971,6 +1267,18 @@ public class BitmapLruCache {
             return this;
         }
 
+        /**
+         * Set the maximum number of bytes of Bitmaps, evicted from the Memory Cache, which are
+         * kept to be decoded into again. Defaults to a quarter of the Memory Cache maximum size,
+         * 0 disables reuse.
+         *
+         * @return This Builder object to allow for chaining of calls to set methods.
+         */
+        public Builder setBitmapPoolMaxSize(int size) {
+            mBitmapPoolMaxSize = size;
+            return this;
+        }
+
         /**
          * Sets the Memory Cache maximum size to be the default value of {@value
          * #DEFAULT_MEMORY_CACHE_HEAP_PERCENTAGE}% of heap size.
@@ -1057,6 +1365,21 @@ public class BitmapLruCache {
         }
     }
 
+    /**
+     * Decode options for images whose size is known up front, such as map tiles of a given tile
+     * layer. The image is decoded in a single pass into a reused Bitmap of that size, rather than
+     * reading its bounds first; images of another size are still decoded, only more slowly.
+     */
+    public static class SizedDecodeOptions extends BitmapFactory.Options {
+        final int width;
+        final int height;
+
+        public SizedDecodeOptions(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+    }
+
     public interface InputStreamProvider {
         InputStream getInputStream();
     }
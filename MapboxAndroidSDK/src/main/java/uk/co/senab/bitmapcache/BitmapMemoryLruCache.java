@@ -16,30 +16,21 @@
 package uk.co.senab.bitmapcache;
 
 import android.graphics.Bitmap;
-import android.graphics.Color;
-import android.support.v4.util.LruCache;
 import android.util.Log;
 
-import java.lang.ref.SoftReference;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Map.Entry;
-import java.util.Set;
-
-final class BitmapMemoryLruCache extends LruCache<String, CacheableBitmapDrawable> {
+final class BitmapMemoryLruCache extends LongLruCache<CacheableBitmapDrawable> {
 
     public static final String TAG = "BitmapMemoryLruCache";
-    private final Set<SoftReference<CacheableBitmapDrawable>> mRemovedEntries;
+    private final BitmapPool mBitmapPool;
     private final BitmapLruCache.RecyclePolicy mRecyclePolicy;
     private int largestValueSeenBytes;
 
-    BitmapMemoryLruCache(int maxSize, BitmapLruCache.RecyclePolicy policy) {
+    BitmapMemoryLruCache(int maxSize, int bitmapPoolMaxSize, BitmapLruCache.RecyclePolicy policy) {
         super(maxSize);
 
         mRecyclePolicy = policy;
-        mRemovedEntries = policy.canInBitmap()
-                ? Collections.synchronizedSet(new HashSet<SoftReference<CacheableBitmapDrawable>>())
+        mBitmapPool = policy.canInBitmap() && bitmapPoolMaxSize > 0
+                ? new BitmapPool(bitmapPoolMaxSize)
                 : null;
         largestValueSeenBytes = 0;
     }
@@ -48,7 +39,7 @@ final class BitmapMemoryLruCache extends LruCache<String, CacheableBitmapDrawabl
         if (null != value) {
             value.setCached(true);
             largestValueSeenBytes = Math.max(value.getMemorySize(), largestValueSeenBytes);
-            return put(value.getUrl(), value);
+            return put(value.getMemoryKey(), value);
         }
 
         return null;
@@ -58,6 +49,10 @@ final class BitmapMemoryLruCache extends LruCache<String, CacheableBitmapDrawabl
         return mRecyclePolicy;
     }
 
+    BitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
+
     public void resizeMemoryForTiles(int numberOfTiles) {
         if (largestValueSeenBytes > 0 && numberOfTiles > 0) {
             float factor = numberOfTiles * 1.05f; //increase by 5%
@@ -70,52 +65,24 @@ final class BitmapMemoryLruCache extends LruCache<String, CacheableBitmapDrawabl
     }
 
     @Override
-    protected int sizeOf(String key, CacheableBitmapDrawable value) {
+    protected int sizeOf(long key, CacheableBitmapDrawable value) {
         return value.getMemorySize();
     }
 
     @Override
-    protected void entryRemoved(boolean evicted, String key, CacheableBitmapDrawable oldValue,
+    protected void entryRemoved(boolean evicted, long key, CacheableBitmapDrawable oldValue,
             CacheableBitmapDrawable newValue) {
         // Notify the wrapper that it's no longer being cached
         oldValue.setCached(false);
 
-        if (mRemovedEntries != null && canUseForInBitmap(oldValue)) {
-            synchronized (mRemovedEntries) {
-                mRemovedEntries.add(new SoftReference<CacheableBitmapDrawable>(oldValue));
-            }
+        // The Bitmap goes to the pool as soon as nothing displays it anymore
+        if (mBitmapPool != null && oldValue != newValue && canUseForInBitmap(oldValue)) {
+            oldValue.releaseToPool(mBitmapPool);
         }
     }
 
-    public Bitmap getBitmapFromRemoved(final int width, final int height) {
-        if (mRemovedEntries == null) {
-            return null;
-        }
-
-        Bitmap result = null;
-
-        synchronized (mRemovedEntries) {
-            final Iterator<SoftReference<CacheableBitmapDrawable>> it = mRemovedEntries.iterator();
-
-            while (it.hasNext()) {
-                CacheableBitmapDrawable value = it.next().get();
-
-                if (canUseForInBitmap(value)) {
-                    if (canUseForInBitmapForSize(value, width, height) && !value.isBeingDisplayed() && !value.isReferencedByCache()) {
-                        result = value.getBitmap();
-                        SDK12.setHasAlpha(result, true);
-                        result.eraseColor(Color.TRANSPARENT);
-                        value.setReused();
-                        it.remove();
-                        break;
-                    }
-                } else {
-                    it.remove();
-                }
-            }
-        }
-
-        return result;
+    public Bitmap getBitmapFromRemoved(final int width, final int height, final Bitmap.Config config) {
+        return mBitmapPool != null ? mBitmapPool.get(width, height, config) : null;
     }
 
     private static boolean canUseForInBitmap(
@@ -125,26 +92,15 @@ final class BitmapMemoryLruCache extends LruCache<String, CacheableBitmapDrawabl
                 candidate.isBitmapMutable();
     }
 
-    private static boolean canUseForInBitmapForSize(
-            CacheableBitmapDrawable candidate, int width, int height) {
-        return
-                candidate.getIntrinsicWidth() == width &&
-                candidate.getIntrinsicHeight() == height;
-    }
-
     void trimMemory() {
-        final Set<Entry<String, CacheableBitmapDrawable>> values = snapshot().entrySet();
-
-        for (Entry<String, CacheableBitmapDrawable> entry : values) {
-            CacheableBitmapDrawable value = entry.getValue();
+        for (long key : keys()) {
+            CacheableBitmapDrawable value = peek(key);
             if (null == value || !value.isBeingDisplayed()) {
-                remove(entry.getKey());
+                remove(key);
             }
         }
-        if (mRemovedEntries != null) {
-            synchronized (mRemovedEntries) {
-                mRemovedEntries.clear();
-            }
+        if (mBitmapPool != null) {
+            mBitmapPool.clear();
         }
     }
 }
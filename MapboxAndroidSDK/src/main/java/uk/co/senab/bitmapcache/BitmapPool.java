@@ -0,0 +1,227 @@
+package uk.co.senab.bitmapcache;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import java.util.HashMap;
+
+/**
+ * A pool of mutable Bitmaps which are neither cached nor displayed anymore, kept around to be
+ * decoded into again with {@link android.graphics.BitmapFactory.Options#inBitmap}. Bitmaps are
+ * bucketed by width, height and config, so taking one of a given shape or giving one back does not
+ * scan the pool. The pool is bounded by a byte budget and drops the Bitmaps which have been
+ * waiting the longest first.
+ */
+public final class BitmapPool {
+
+    private final HashMap<Long, Bucket> mBuckets = new HashMap<Long, Bucket>();
+
+    // Sentinel of the release ordered list: mHead.after is the eldest entry, mHead.before the newest
+    private final Entry mHead = new Entry(null, null);
+
+    private int mSize;
+    private int mMaxSize;
+
+    private int mPutCount;
+    private int mEvictionCount;
+    private int mHitCount;
+    private int mMissCount;
+
+    /**
+     * @param maxSize the maximum number of bytes of Bitmap memory held by the pool
+     */
+    public BitmapPool(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        mMaxSize = maxSize;
+        mHead.before = mHead;
+        mHead.after = mHead;
+    }
+
+    /**
+     * Takes a Bitmap of the given shape out of the pool. The Bitmap is cleared to transparent.
+     *
+     * @return a Bitmap, or {@code null} if the pool has none of that shape
+     */
+    public Bitmap get(int width, int height, Bitmap.Config config) {
+        final Bitmap result;
+        synchronized (this) {
+            final Bucket bucket = mBuckets.get(bucketKey(width, height, config));
+            final Entry entry = null != bucket ? bucket.newest() : null;
+            if (null == entry) {
+                mMissCount++;
+                return null;
+            }
+            remove(entry);
+            mHitCount++;
+            result = entry.bitmap;
+        }
+
+        SDK12.setHasAlpha(result, true);
+        result.eraseColor(Color.TRANSPARENT);
+        return result;
+    }
+
+    /**
+     * Gives a Bitmap to the pool. The caller must not use the Bitmap anymore if this returns
+     * {@code true}.
+     *
+     * @return {@code true} if the Bitmap has been pooled, {@code false} if it can not be reused
+     */
+    public boolean put(Bitmap bitmap) {
+        if (null == bitmap || bitmap.isRecycled() || !bitmap.isMutable()
+                || null == bitmap.getConfig()) {
+            return false;
+        }
+
+        final int size = sizeOf(bitmap);
+        synchronized (this) {
+            if (size > mMaxSize) {
+                return false;
+            }
+            final Long key = bucketKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+            Bucket bucket = mBuckets.get(key);
+            if (null == bucket) {
+                bucket = new Bucket();
+                mBuckets.put(key, bucket);
+            }
+            final Entry entry = new Entry(bitmap, bucket);
+            bucket.add(entry);
+            entry.after = mHead;
+            entry.before = mHead.before;
+            mHead.before.after = entry;
+            mHead.before = entry;
+            mSize += size;
+            mPutCount++;
+            trimToSize(mMaxSize);
+        }
+        return true;
+    }
+
+    /**
+     * Drops the Bitmaps which have been in the pool the longest until it holds at most
+     * {@code maxSize} bytes.
+     */
+    public synchronized void trimToSize(int maxSize) {
+        while (mSize > maxSize && mHead.after != mHead) {
+            remove(mHead.after);
+            mEvictionCount++;
+        }
+    }
+
+    /**
+     * Drops every Bitmap in the pool.
+     */
+    public synchronized void clear() {
+        trimToSize(-1);
+    }
+
+    public synchronized void resize(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        mMaxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    /**
+     * @return the number of bytes of Bitmap memory held by the pool
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+
+    public synchronized int maxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * @return the number of times {@link #get} returned a Bitmap
+     */
+    public synchronized int hitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return the number of times {@link #get} returned {@code null}
+     */
+    public synchronized int missCount() {
+        return mMissCount;
+    }
+
+    public synchronized int putCount() {
+        return mPutCount;
+    }
+
+    public synchronized int evictionCount() {
+        return mEvictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        int accesses = mHitCount + mMissCount;
+        int hitPercent = accesses != 0 ? (100 * mHitCount / accesses) : 0;
+        return String.format("BitmapPool[size=%d,maxSize=%d,hits=%d,misses=%d,hitRate=%d%%]",
+                mSize, mMaxSize, mHitCount, mMissCount, hitPercent);
+    }
+
+    private void remove(Entry entry) {
+        entry.before.after = entry.after;
+        entry.after.before = entry.before;
+        entry.bucket.remove(entry);
+        mSize -= sizeOf(entry.bitmap);
+    }
+
+    private static int sizeOf(Bitmap bitmap) {
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    private static long bucketKey(int width, int height, Bitmap.Config config) {
+        return ((long) width << 40) | ((long) (height & 0xFFFFFF) << 16)
+                | (null != config ? config.ordinal() : 0xFFFF);
+    }
+
+    private static final class Entry {
+        final Bitmap bitmap;
+        final Bucket bucket;
+
+        // Neighbours in the release order of the whole pool
+        Entry before;
+        Entry after;
+
+        // Neighbours in the release order of the bucket
+        Entry older;
+        Entry newer;
+
+        Entry(Bitmap bitmap, Bucket bucket) {
+            this.bitmap = bitmap;
+            this.bucket = bucket;
+        }
+    }
+
+    private static final class Bucket {
+        private final Entry mHead = new Entry(null, null);
+
+        Bucket() {
+            mHead.older = mHead;
+            mHead.newer = mHead;
+        }
+
+        Entry newest() {
+            return mHead.older != mHead ? mHead.older : null;
+        }
+
+        void add(Entry entry) {
+            entry.newer = mHead;
+            entry.older = mHead.older;
+            mHead.older.newer = entry;
+            mHead.older = entry;
+        }
+
+        void remove(Entry entry) {
+            entry.older.newer = entry.newer;
+            entry.newer.older = entry.older;
+        }
+    }
+}
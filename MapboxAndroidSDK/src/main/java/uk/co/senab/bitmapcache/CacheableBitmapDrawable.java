@@ -35,6 +35,9 @@ public class CacheableBitmapDrawable extends BitmapDrawable {
     // URL Associated with this Bitmap
     private final String mUrl;
 
+    // Key of this Bitmap in the memory cache
+    private final long mMemoryKey;
+
     private BitmapLruCache.RecyclePolicy mRecyclePolicy;
 
     // Number of Views currently displaying bitmap
@@ -61,12 +64,21 @@ public class CacheableBitmapDrawable extends BitmapDrawable {
 
     private boolean mReused;
 
+    // Pool the Bitmap goes to once it is neither cached nor displayed
+    private BitmapPool mPool;
+
     public CacheableBitmapDrawable(String url, Resources resources, Bitmap bitmap,
             BitmapLruCache.RecyclePolicy recyclePolicy, int source) {
+        this(url, BitmapLruCache.memoryKeyFor(url), resources, bitmap, recyclePolicy, source);
+    }
+
+    public CacheableBitmapDrawable(String url, long memoryKey, Resources resources, Bitmap bitmap,
+            BitmapLruCache.RecyclePolicy recyclePolicy, int source) {
         super(resources, bitmap);
 
         mMemorySize = null != bitmap ? (bitmap.getRowBytes() * bitmap.getHeight()) : 0;
         mUrl = url;
+        mMemoryKey = memoryKey;
         mRecyclePolicy = recyclePolicy;
         mDisplayingCount = 0;
         mHasBeenDisplayed = false;
@@ -109,6 +121,13 @@ public class CacheableBitmapDrawable extends BitmapDrawable {
         return mUrl;
     }
 
+    /**
+     * @return the key of the BitmapDrawable in the memory cache
+     */
+    public long getMemoryKey() {
+        return mMemoryKey;
+    }
+
     /**
      * @return One of {@link #SOURCE_NEW}, {@link #SOURCE_INBITMAP} or {@link #SOURCE_UNKNOWN}
      * depending on how this Bitmap was created.
@@ -169,6 +188,7 @@ public class CacheableBitmapDrawable extends BitmapDrawable {
     synchronized void setCached(boolean added) {
         if (added) {
             mCacheCount++;
+            mPool = null;
         } else {
             mCacheCount--;
         }
@@ -176,12 +196,14 @@ public class CacheableBitmapDrawable extends BitmapDrawable {
     }
 
     /**
-     * Used to signal to the wrapper that the attached bitmap has been reused.
+     * Used to signal to the wrapper that it has left the memory cache, and that its bitmap should
+     * be given to {@code pool} once it is not displayed anymore.
+     *
+     * @param pool - the pool to give the bitmap to
      */
-    synchronized void setReused() {
-        if (mReused == false) {
-            mReused = true;
-        }
+    synchronized void releaseToPool(BitmapPool pool) {
+        mPool = pool;
+        checkState();
     }
 
 
@@ -230,6 +252,18 @@ public class CacheableBitmapDrawable extends BitmapDrawable {
                     mHasBeenDisplayed, mDisplayingCount, mCacheCount, mUrl));
         }
 
+        // Hand the bitmap over to the pool rather than recycling it
+        if (null != mPool && mCacheCount <= 0 && mDisplayingCount <= 0) {
+            cancelCheckStateCallback();
+            if (isBitmapValid()) {
+                // Flag first, the pool may hand the bitmap out straight away
+                mReused = true;
+                mReused = mPool.put(getBitmap());
+            }
+            mPool = null;
+            return;
+        }
+
         // If the policy doesn't let us recycle, return now
         if (!mRecyclePolicy.canRecycle()) {
             return;
@@ -0,0 +1,207 @@
+package uk.co.senab.bitmapcache;
+
+import android.graphics.Bitmap;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Writes entries to the disk cache of a {@link BitmapLruCache} from its single disk cache thread,
+ * in the order they were queued. A batch of writes is followed by a single flush of the journal.
+ *
+ * <p> The queue is bounded. When it is full, background threads wait for the writer to catch up
+ * for a short while, which slows down the loaders feeding it, and the main thread never waits.
+ * Writes which can not be queued are dropped: the disk cache is only a cache. </p>
+ */
+final class DiskCacheWriter {
+
+    static final int DEFAULT_MAX_PENDING = 64;
+
+    static final long MAX_WAIT_MS = 250;
+
+    private final BitmapLruCache mCache;
+
+    private final Executor mExecutor;
+
+    private final int mMaxPending;
+
+    // Pending writes by url, in the order they were queued. A write stays here until it is on disk
+    private final LinkedHashMap<String, Entry> mPending = new LinkedHashMap<String, Entry>();
+
+    private boolean mDrainScheduled;
+
+    // The entry being written, released by the writer once it is done
+    private Entry mWriting;
+
+    private int mWrittenCount;
+
+    private int mDroppedCount;
+
+    private final Runnable mDrainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    DiskCacheWriter(BitmapLruCache cache, Executor executor, int maxPending) {
+        mCache = cache;
+        mExecutor = executor;
+        mMaxPending = maxPending;
+    }
+
+    /**
+     * Queues the original encoded contents of an image.
+     *
+     * @return {@code true} if the write has been queued
+     */
+    boolean put(String url, byte[] data) {
+        return enqueue(new Entry(url, data, null, null, 0));
+    }
+
+    /**
+     * Queues a Bitmap, which is compressed on the writer thread. The drawable is marked as being
+     * used until then, so that its Bitmap is neither recycled nor reused in the meantime.
+     *
+     * @return {@code true} if the write has been queued
+     */
+    boolean put(String url, CacheableBitmapDrawable drawable, Bitmap.CompressFormat compressFormat,
+            int compressQuality) {
+        drawable.setBeingUsed(true);
+        return enqueue(new Entry(url, null, drawable, compressFormat, compressQuality));
+    }
+
+    /**
+     * @return the write queued for {@code url}, or {@code null} if there is none
+     */
+    synchronized Entry get(String url) {
+        return mPending.get(url);
+    }
+
+    synchronized int getPendingCount() {
+        return mPending.size();
+    }
+
+    synchronized int getWrittenCount() {
+        return mWrittenCount;
+    }
+
+    synchronized int getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    private boolean enqueue(Entry entry) {
+        final boolean mayWait = Looper.myLooper() != Looper.getMainLooper();
+        Entry replaced = null;
+        boolean queued = false;
+
+        synchronized (this) {
+            long deadline = 0;
+            while (!mPending.containsKey(entry.url) && mPending.size() >= mMaxPending) {
+                final long now = SystemClock.uptimeMillis();
+                if (deadline == 0) {
+                    deadline = now + MAX_WAIT_MS;
+                }
+                if (!mayWait || now >= deadline) {
+                    break;
+                }
+                try {
+                    wait(deadline - now);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            if (mPending.containsKey(entry.url) || mPending.size() < mMaxPending) {
+                replaced = mPending.put(entry.url, entry);
+                if (replaced == mWriting) {
+                    replaced = null;
+                }
+                queued = true;
+                if (!mDrainScheduled) {
+                    mDrainScheduled = true;
+                    mExecutor.execute(mDrainRunnable);
+                }
+            } else {
+                mDroppedCount++;
+            }
+        }
+
+        if (null != replaced) {
+            replaced.release();
+        }
+        if (!queued) {
+            if (Constants.DEBUG) {
+                Log.d(Constants.LOG_TAG, "Disk cache write queue full, dropping: " + entry.url);
+            }
+            entry.release();
+        }
+        return queued;
+    }
+
+    private void drain() {
+        // Make sure we're running with a background priority
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+        while (true) {
+            final Entry entry;
+            synchronized (this) {
+                final Iterator<Entry> it = mPending.values().iterator();
+                if (!it.hasNext()) {
+                    mDrainScheduled = false;
+                    break;
+                }
+                entry = it.next();
+                mWriting = entry;
+            }
+
+            try {
+                mCache.writeToDiskCache(entry);
+            } catch (RuntimeException e) {
+                // The disk cache may have been closed or deleted meanwhile
+                Log.e(Constants.LOG_TAG, "Error while writing to disk cache: " + entry.url, e);
+            }
+
+            synchronized (this) {
+                if (mPending.get(entry.url) == entry) {
+                    mPending.remove(entry.url);
+                }
+                mWriting = null;
+                mWrittenCount++;
+                notifyAll();
+            }
+            entry.release();
+        }
+
+        mCache.scheduleDiskCacheFlush();
+    }
+
+    static final class Entry {
+        final String url;
+        final byte[] data;
+        final CacheableBitmapDrawable drawable;
+        final Bitmap.CompressFormat compressFormat;
+        final int compressQuality;
+
+        Entry(String url, byte[] data, CacheableBitmapDrawable drawable,
+                Bitmap.CompressFormat compressFormat, int compressQuality) {
+            this.url = url;
+            this.data = data;
+            this.drawable = drawable;
+            this.compressFormat = compressFormat;
+            this.compressQuality = compressQuality;
+        }
+
+        void release() {
+            if (null != drawable) {
+                drawable.setBeingUsed(false);
+            }
+        }
+    }
+}
@@ -17,6 +17,7 @@ package uk.co.senab.bitmapcache;
 
 import android.util.Log;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -54,6 +55,15 @@ class IoUtils {
         return copy(in, new FileOutputStream(out));
     }
 
+    /**
+     * Reads an InputStream to its end, and closes it.
+     */
+    static byte[] toByteArray(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        copy(in, out);
+        return out.toByteArray();
+    }
+
     /**
      * Pipe an InputStream to the given OutputStream <p /> Taken from Apache Commons IOUtils.
      */
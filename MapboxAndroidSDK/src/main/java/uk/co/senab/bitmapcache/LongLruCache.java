@@ -0,0 +1,349 @@
+package uk.co.senab.bitmapcache;
+
+/**
+ * A size bounded LRU cache keyed by primitive {@code long}s. It follows the contract of
+ * {@link android.support.v4.util.LruCache}, but looking up a value neither boxes the key nor
+ * allocates, which matters for caches that are queried for every visible map tile on every frame.
+ *
+ * @param <V> the type of the cached values
+ */
+public class LongLruCache<V> {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private Node<V>[] mTable;
+    private int mCount;
+    private int mThreshold;
+
+    // Sentinel of the access ordered list: mHead.after is the eldest entry, mHead.before the newest
+    private final Node<V> mHead = new Node<V>(0, null, null);
+
+    private int mSize;
+    private int mMaxSize;
+
+    private int mPutCount;
+    private int mEvictionCount;
+    private int mHitCount;
+    private int mMissCount;
+
+    /**
+     * @param maxSize for caches that do not override {@link #sizeOf}, this is the maximum number
+     *                of entries in the cache. For all other caches, this is the maximum sum of the
+     *                sizes of the entries in this cache.
+     */
+    public LongLruCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        mMaxSize = maxSize;
+        mTable = newTable(INITIAL_CAPACITY);
+        mThreshold = INITIAL_CAPACITY * 3 / 4;
+        mHead.before = mHead;
+        mHead.after = mHead;
+    }
+
+    /**
+     * Returns the value for {@code key} if it exists in the cache, and moves it to the head of
+     * the queue. Returns null otherwise.
+     */
+    public final synchronized V get(long key) {
+        Node<V> node = find(key);
+        if (node == null) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        unlink(node);
+        linkNewest(node);
+        return node.value;
+    }
+
+    /**
+     * Returns the value for {@code key} if it exists in the cache, without changing its position
+     * in the queue.
+     */
+    public final synchronized V peek(long key) {
+        Node<V> node = find(key);
+        return node != null ? node.value : null;
+    }
+
+    /**
+     * Caches {@code value} for {@code key}. The value is moved to the head of the queue.
+     *
+     * @return the previous value mapped by {@code key}.
+     */
+    public final V put(long key, V value) {
+        if (value == null) {
+            throw new NullPointerException("value == null");
+        }
+
+        V previous = null;
+        synchronized (this) {
+            mPutCount++;
+            mSize += safeSizeOf(key, value);
+            Node<V> node = find(key);
+            if (node != null) {
+                previous = node.value;
+                mSize -= safeSizeOf(key, previous);
+                node.value = value;
+                unlink(node);
+                linkNewest(node);
+            } else {
+                insert(key, value);
+            }
+        }
+
+        if (previous != null) {
+            entryRemoved(false, key, previous, value);
+        }
+
+        trimToSize(mMaxSize);
+        return previous;
+    }
+
+    /**
+     * Removes the entry for {@code key} if it exists.
+     *
+     * @return the previous value mapped by {@code key}.
+     */
+    public final V remove(long key) {
+        V previous = null;
+        synchronized (this) {
+            Node<V> node = delete(key);
+            if (node != null) {
+                previous = node.value;
+                mSize -= safeSizeOf(key, previous);
+            }
+        }
+
+        if (previous != null) {
+            entryRemoved(false, key, previous, null);
+        }
+        return previous;
+    }
+
+    /**
+     * Remove the eldest entries until the total of remaining entries is at or below the requested
+     * size.
+     *
+     * @param maxSize the maximum size of the cache before returning. May be -1 to evict even
+     *                0-sized elements.
+     */
+    public void trimToSize(int maxSize) {
+        while (true) {
+            long key;
+            V value;
+            synchronized (this) {
+                if (mSize <= maxSize || mCount == 0) {
+                    break;
+                }
+                Node<V> eldest = mHead.after;
+                key = eldest.key;
+                value = eldest.value;
+                delete(key);
+                mSize -= safeSizeOf(key, value);
+                mEvictionCount++;
+            }
+            entryRemoved(true, key, value, null);
+        }
+    }
+
+    /**
+     * Sets the size of the cache, evicting entries if it shrinks.
+     *
+     * @param maxSize the new maximum size
+     */
+    public void resize(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        synchronized (this) {
+            mMaxSize = maxSize;
+        }
+        trimToSize(maxSize);
+    }
+
+    /**
+     * Called for entries that have been evicted or removed. This method is invoked when a value
+     * is evicted to make space, removed by a call to {@link #remove}, or replaced by a call to
+     * {@link #put}. The default implementation does nothing.
+     *
+     * <p>The method is called without synchronization: other threads may access the cache while
+     * this method is executing.
+     *
+     * @param evicted  true if the entry is being removed to make space, false if the removal was
+     *                 caused by a {@link #put} or {@link #remove}.
+     * @param newValue the new value for {@code key}, if it exists. If non-null, this removal was
+     *                 caused by a {@link #put}. Otherwise it was caused by an eviction or a
+     *                 {@link #remove}.
+     */
+    protected void entryRemoved(boolean evicted, long key, V oldValue, V newValue) {
+    }
+
+    /**
+     * Returns the size of the entry for {@code key} and {@code value} in user-defined units. The
+     * default implementation returns 1 so that size is the number of entries and max size is the
+     * maximum number of entries.
+     */
+    protected int sizeOf(long key, V value) {
+        return 1;
+    }
+
+    private int safeSizeOf(long key, V value) {
+        int result = sizeOf(key, value);
+        if (result < 0) {
+            throw new IllegalStateException("Negative size: " + key + "=" + value);
+        }
+        return result;
+    }
+
+    /**
+     * Clear the cache, calling {@link #entryRemoved} on each removed entry.
+     */
+    public final void evictAll() {
+        trimToSize(-1); // -1 will evict 0-sized elements
+    }
+
+    /**
+     * Returns the keys currently in the cache, from the least to the most recently accessed.
+     */
+    public final synchronized long[] keys() {
+        long[] keys = new long[mCount];
+        int i = 0;
+        for (Node<V> node = mHead.after; node != mHead; node = node.after) {
+            keys[i++] = node.key;
+        }
+        return keys;
+    }
+
+    public final synchronized int size() {
+        return mSize;
+    }
+
+    public final synchronized int maxSize() {
+        return mMaxSize;
+    }
+
+    public final synchronized int count() {
+        return mCount;
+    }
+
+    public final synchronized int hitCount() {
+        return mHitCount;
+    }
+
+    public final synchronized int missCount() {
+        return mMissCount;
+    }
+
+    public final synchronized int putCount() {
+        return mPutCount;
+    }
+
+    public final synchronized int evictionCount() {
+        return mEvictionCount;
+    }
+
+    @Override
+    public final synchronized String toString() {
+        int accesses = mHitCount + mMissCount;
+        int hitPercent = accesses != 0 ? (100 * mHitCount / accesses) : 0;
+        return String.format("LongLruCache[maxSize=%d,hits=%d,misses=%d,hitRate=%d%%]",
+                mMaxSize, mHitCount, mMissCount, hitPercent);
+    }
+
+    private static int indexFor(long key, int length) {
+        int h = (int) (key ^ (key >>> 32));
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return h & (length - 1);
+    }
+
+    private Node<V> find(long key) {
+        Node<V> node = mTable[indexFor(key, mTable.length)];
+        while (node != null && node.key != key) {
+            node = node.next;
+        }
+        return node;
+    }
+
+    private void insert(long key, V value) {
+        if (mCount >= mThreshold) {
+            grow();
+        }
+        int index = indexFor(key, mTable.length);
+        Node<V> node = new Node<V>(key, value, mTable[index]);
+        mTable[index] = node;
+        linkNewest(node);
+        mCount++;
+    }
+
+    private Node<V> delete(long key) {
+        int index = indexFor(key, mTable.length);
+        Node<V> prev = null;
+        Node<V> node = mTable[index];
+        while (node != null && node.key != key) {
+            prev = node;
+            node = node.next;
+        }
+        if (node == null) {
+            return null;
+        }
+        if (prev == null) {
+            mTable[index] = node.next;
+        } else {
+            prev.next = node.next;
+        }
+        unlink(node);
+        mCount--;
+        return node;
+    }
+
+    private void grow() {
+        Node<V>[] oldTable = mTable;
+        Node<V>[] newTable = newTable(oldTable.length * 2);
+        for (Node<V> head : oldTable) {
+            Node<V> node = head;
+            while (node != null) {
+                Node<V> next = node.next;
+                int index = indexFor(node.key, newTable.length);
+                node.next = newTable[index];
+                newTable[index] = node;
+                node = next;
+            }
+        }
+        mTable = newTable;
+        mThreshold = newTable.length * 3 / 4;
+    }
+
+    private void linkNewest(Node<V> node) {
+        node.after = mHead;
+        node.before = mHead.before;
+        mHead.before.after = node;
+        mHead.before = node;
+    }
+
+    private static <V> void unlink(Node<V> node) {
+        node.before.after = node.after;
+        node.after.before = node.before;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> Node<V>[] newTable(int capacity) {
+        return (Node<V>[]) new Node[capacity];
+    }
+
+    private static final class Node<V> {
+        final long key;
+        V value;
+        Node<V> next;
+        Node<V> before;
+        Node<V> after;
+
+        Node(long key, V value, Node<V> next) {
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+    }
+}
@@ -42,6 +42,7 @@ public class ExternalStorage {
     public static final String OSM_DIR = "osm";
     public static final String DEPLOYMENTS_DIR = "deployments";
     public static final String CONSTRAINTS_DIR = "constraints";
+    public static final String ODK_DIR = "odk";
     public static final String DEFAULT_CONSTRAINT = "default.json";
 
     /**
@@ -96,6 +97,15 @@ public class ExternalStorage {
                 + OSM_DIR + "/";
     }
     
+    /**
+     * Where OpenMapKit keeps what it knows about the ODK Collect forms it has been used with.
+     * * *
+     * @return
+     */
+    public static File getODKDir() {
+        return new File(Environment.getExternalStorageDirectory(), APP_DIR + "/" + ODK_DIR);
+    }
+    
     public static String getOSMDirRelativeToExternalDir() {
         return "/" + APP_DIR + "/" + OSM_DIR + "/";
     }
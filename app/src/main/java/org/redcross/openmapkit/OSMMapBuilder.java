@@ -13,8 +13,11 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
@@ -55,6 +58,7 @@ public class OSMMapBuilder extends AsyncTask<File, Long, JTSModel> {
     private CountingInputStream countingInputStream;
     private long fileSize = 0;
     private long fileBytesLoaded = 0;
+    private long previousFilesBytes = 0;
     
     // Should be set to true if we are loading edited OSM XML
     private boolean isOSMEdit = false;
@@ -80,13 +84,18 @@ public class OSMMapBuilder extends AsyncTask<File, Long, JTSModel> {
         // load the edited OSM files in ODK Collect
         if (ODKCollectHandler.isODKCollectMode()) {
             List<File> editedOsmFiles = ODKCollectHandler.getODKCollectData().getEditedOSM();
+            List<File> filesToLoad = new ArrayList<>();
             for (File f : editedOsmFiles) {
                 if (!loadedOSMFiles.contains(f.getAbsolutePath())) {
-                    ++totalFiles;
-                    OSMMapBuilder builder = new OSMMapBuilder(true);
-                    builder.executeOnExecutor(LARGE_STACK_THREAD_POOL_EXECUTOR, f);
+                    filesToLoad.add(f);
                 }
             }
+            // The edits are small, so a single builder parses all of them and merges them at once
+            if (filesToLoad.size() > 0) {
+                ++totalFiles;
+                OSMMapBuilder builder = new OSMMapBuilder(true);
+                builder.executeOnExecutor(LARGE_STACK_THREAD_POOL_EXECUTOR, filesToLoad.toArray(new File[filesToLoad.size()]));
+            }
         }
 
         if (totalFiles > 0) {
@@ -236,24 +245,41 @@ public class OSMMapBuilder extends AsyncTask<File, Long, JTSModel> {
     
     @Override
     protected JTSModel doInBackground(File... params) {
-        File f = params[0];
-        fileName = f.getName();
-        String absPath = f.getAbsolutePath();
-        
-        Log.i("BEGIN_PARSING", fileName);
-        setFileSize(f.length());
-        try {
-            InputStream is = new FileInputStream(f);
-            countingInputStream = new CountingInputStream(is);
-            OSMDataSet ds = OSMXmlParserInOSMMapBuilder.parseFromInputStream(countingInputStream, this);
-            if (isOSMEdit) {
-                jtsModel.mergeEditedOSMDataSet(absPath, ds);
-            } else {
-                jtsModel.addOSMDataSet(absPath, ds);
+        long size = 0;
+        for (File f : params) {
+            size += f.length();
+        }
+        setFileSize(size);
+
+        // Edited data sets are merged together once they are all parsed
+        Map<String, OSMDataSet> editedDataSets = new LinkedHashMap<>();
+        for (File f : params) {
+            fileName = f.getName();
+            String absPath = f.getAbsolutePath();
+
+            Log.i("BEGIN_PARSING", fileName);
+            try {
+                InputStream is = new FileInputStream(f);
+                try {
+                    countingInputStream = new CountingInputStream(is);
+                    OSMDataSet ds = OSMXmlParserInOSMMapBuilder.parseFromInputStream(countingInputStream, this);
+                    if (isOSMEdit) {
+                        editedDataSets.put(absPath, ds);
+                    } else {
+                        jtsModel.addOSMDataSet(absPath, ds);
+                        loadedOSMFiles.add(absPath);
+                    }
+                } finally {
+                    is.close();
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
             }
-            loadedOSMFiles.add(absPath);
-        } catch (Exception e) {
-            e.printStackTrace();
+            previousFilesBytes += f.length();
+        }
+        if (editedDataSets.size() > 0) {
+            jtsModel.mergeEditedOSMDataSets(editedDataSets);
+            loadedOSMFiles.addAll(editedDataSets.keySet());
         }
         return jtsModel;
     }
@@ -302,7 +328,7 @@ public class OSMMapBuilder extends AsyncTask<File, Long, JTSModel> {
                                  long relationReadCount, 
                                  long tagReadCount) {
         
-        fileBytesLoaded = countingInputStream.getCount();
+        fileBytesLoaded = previousFilesBytes + countingInputStream.getCount();
         computeTotalProgress();
         long percent = (long)(((float)totalBytesLoaded / (float)totalFileSizes) * 100);
         publishProgress(percent,
@@ -2,6 +2,8 @@ package org.redcross.openmapkit.deployments;
 
 import android.os.AsyncTask;
 
+import com.mapbox.mapboxsdk.util.NetworkUtils;
+
 import org.apache.commons.io.FileUtils;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -154,7 +156,7 @@ public class Deployments {
                     endpoint = urlStr + "/omk/deployments";
                 }
                 URL url = new URL(endpoint);
-                urlConnection = (HttpURLConnection) url.openConnection();
+                urlConnection = NetworkUtils.getHttpURLConnection(url);
                 urlConnection.setConnectTimeout(3000);
                 urlConnection.setReadTimeout(7000);
                 int statusCode = urlConnection.getResponseCode();
@@ -167,6 +169,7 @@ public class Deployments {
                     while ((line = r.readLine()) != null) {
                         response.append(line);
                     }
+                    r.close();
                     parseJsonFromApi(response.toString());
                     status = Deployments.Status.ONLINE; // Successful
                 }
@@ -0,0 +1,204 @@
+package org.redcross.openmapkit.odkcollect;
+
+import android.os.AsyncTask;
+import android.util.Log;
+
+import org.redcross.openmapkit.ExternalStorage;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps track of the OSM XML files saved in the ODK Collect instance directories of a form,
+ * so that finding them doesn't require listing every instance directory on every launch.
+ *
+ * The index is a text file with one absolute path per line in the app's ODK directory. It is
+ * updated as edits are written and deleted, and a scan of the instance directories in the
+ * background catches the changes made outside of OpenMapKit.
+ * * *
+ */
+public class EditedOSMIndex {
+
+    private static final String TAG = "EditedOSMIndex";
+    private static final String INDEX_EXTENSION = ".index";
+    private static final String OSM_EXTENSION = ".osm";
+
+    private final String formFileName;
+    private final File instancesDir;
+    private final File indexFile;
+    private final Set<String> paths = new LinkedHashSet<>();
+
+    // Counts the changes made by add() and remove(), which a scan running meanwhile may miss
+    private int modCount = 0;
+
+    public EditedOSMIndex(String formFileName, File instancesDir) {
+        this.formFileName = formFileName;
+        this.instancesDir = instancesDir;
+        this.indexFile = new File(ExternalStorage.getODKDir(), formFileName + INDEX_EXTENSION);
+    }
+
+    /**
+     * Reads the index, or scans the instance directories right away the first time a form is
+     * opened, and then checks the instance directories in the background.
+     */
+    public void load() {
+        if (!read()) {
+            reconcile();
+        } else {
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    reconcile();
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the indexed files that still exist
+     */
+    public synchronized List<File> getFiles() {
+        List<File> files = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            File f = new File(path);
+            if (f.exists()) {
+                files.add(f);
+            }
+        }
+        return files;
+    }
+
+    public synchronized void add(File osmFile) {
+        if (paths.add(osmFile.getAbsolutePath())) {
+            ++modCount;
+            write();
+        }
+    }
+
+    public synchronized void remove(File osmFile) {
+        if (paths.remove(osmFile.getAbsolutePath())) {
+            ++modCount;
+            write();
+        }
+    }
+
+    /**
+     * Replaces the index with the OSM files actually found in the instance directories of
+     * the form.
+     */
+    public void reconcile() {
+        int scanModCount;
+        synchronized (this) {
+            scanModCount = modCount;
+        }
+        Set<String> found = scan();
+        if (found == null) {
+            return;
+        }
+        synchronized (this) {
+            // The next scan will pick up what changed while scanning
+            if (scanModCount != modCount) {
+                return;
+            }
+            // Written even when nothing was found, so that the next launch doesn't scan again
+            if (found.equals(paths) && indexFile.exists()) {
+                return;
+            }
+            paths.clear();
+            paths.addAll(found);
+            write();
+        }
+        Log.i(TAG, "Reconciled the edited OSM files of " + formFileName + ", " + found.size() + " files.");
+    }
+
+    private Set<String> scan() {
+        File[] instancesDirs = instancesDir.listFiles();
+        if (instancesDirs == null) {
+            return null;
+        }
+        Set<String> found = new LinkedHashSet<>();
+        for (File dir : instancesDirs) {
+            // check if the instance dir is for the form we are dealing with
+            // it is 0 if the form file name is the first substring of the dirname
+            if (!dir.isDirectory() || dir.getName().indexOf(formFileName) != 0) {
+                continue;
+            }
+            String[] files = dir.list();
+            if (files == null) {
+                continue;
+            }
+            for (String fname : files) {
+                if (fname.endsWith(OSM_EXTENSION)) {
+                    found.add(new File(dir, fname).getAbsolutePath());
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return false if there is no index for the form yet, or it can't be read
+     */
+    private synchronized boolean read() {
+        if (!indexFile.exists()) {
+            return false;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), "UTF-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.length() > 0) {
+                        paths.add(line);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read " + indexFile.getAbsolutePath(), e);
+            paths.clear();
+            return false;
+        }
+    }
+
+    /**
+     * The index is written to a temporary file first, so that it is never left half written.
+     */
+    private synchronized void write() {
+        File dir = indexFile.getParentFile();
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        File tmp = new File(dir, indexFile.getName() + ".tmp");
+        try {
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+            try {
+                for (String path : paths) {
+                    writer.write(path);
+                    writer.newLine();
+                }
+            } finally {
+                writer.close();
+            }
+            if (!tmp.renameTo(indexFile)) {
+                throw new IOException("Unable to rename " + tmp.getAbsolutePath());
+            }
+        } catch (IOException e) {
+            // The next scan rebuilds the index
+            Log.e(TAG, "Unable to write " + indexFile.getAbsolutePath(), e);
+            tmp.delete();
+        }
+    }
+}
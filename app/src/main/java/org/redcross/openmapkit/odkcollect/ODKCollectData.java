@@ -12,9 +12,7 @@ import org.redcross.openmapkit.odkcollect.tag.ODKTag;
 import org.redcross.openmapkit.odkcollect.tag.ODKTagItem;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashMap;
@@ -35,9 +33,10 @@ public class ODKCollectData {
     private String instanceDir;
     private String previousOSMEditFileName;
     private LinkedHashMap<String, ODKTag> requiredTags;
-    private List<File> editedOSM = new ArrayList<>();
+    private EditedOSMIndex editedOSMIndex;
     
-    private String editedXml;
+    private OSMElement editedElement;
+    private String editedOsmUserName;
     private String checksum;
     private String appVersion;
 
@@ -61,32 +60,16 @@ public class ODKCollectData {
         if (formFileName == null) {
             return;
         }
-        String instances = new File(instanceDir).getParent();
-        File[] instancesDirs = new File(instances).listFiles();
-        for (int i = 0; i < instancesDirs.length; ++i) {
-            File dir = instancesDirs[i];
-            if (!dir.isDirectory()) {
-                continue;
-            }
-            // check if the instance dir is for the form we are dealing with
-            // it is 0 if the form file name is the first substring of the dirname
-            if (dir.getName().indexOf(formFileName) != 0) {
-                continue;
-            }
-            
-            String[] files = dir.list();
-            for (int j = 0; j < files.length; ++j) {
-                String fname = files[j];
-                if (fname.lastIndexOf(".osm") > -1) {
-                    File osmFile = new File(dir, fname);
-                    editedOSM.add(osmFile);
-                }
-            }
-        }
+        File instances = new File(instanceDir).getParentFile();
+        editedOSMIndex = new EditedOSMIndex(formFileName, instances);
+        editedOSMIndex.load();
     }
     
     public List<File> getEditedOSM() {
-        return editedOSM;
+        if (editedOSMIndex == null) {
+            return new ArrayList<>();
+        }
+        return editedOSMIndex.getFiles();
     }
 
     public String getFormId() {
@@ -141,7 +124,8 @@ public class ODKCollectData {
     
     public void consumeOSMElement(OSMElement el, String osmUserName) throws IOException {
         checksum = el.checksum();
-        editedXml = OSMXmlWriter.elementToString(el, osmUserName, APP_NAME + " " + appVersion);
+        editedElement = el;
+        editedOsmUserName = osmUserName;
     }
     
     public void deleteOldOSMEdit() {
@@ -153,19 +137,22 @@ public class ODKCollectData {
         if (f.exists()) {
             f.delete();
         }
+        if (editedOSMIndex != null) {
+            editedOSMIndex.remove(f);
+        }
     }
     
     public void writeXmlToOdkCollectInstanceDir() throws IOException {
         if ( ! isODKCollectInstanceDirectoryAvailable() ) {
             throw new IOException("The ODK Collect Instance Directory cannot be accessed!");
         }
+        List<OSMElement> elements = new ArrayList<>();
+        elements.add(editedElement);
         File f = new File( getOSMFileFullPath() );
-        f.createNewFile();
-        FileOutputStream fos = new FileOutputStream(f);
-        OutputStreamWriter writer = new OutputStreamWriter(fos);
-        writer.append(editedXml);
-        writer.close();
-        fos.close();
+        OSMXmlWriter.writeElementsToFile(elements, f, editedOsmUserName, APP_NAME + " " + appVersion);
+        if (editedOSMIndex != null) {
+            editedOSMIndex.add(f);
+        }
     }
 
     public String getOSMFileName() {
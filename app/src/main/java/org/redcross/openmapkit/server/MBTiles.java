@@ -4,8 +4,21 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.util.Log;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 public class MBTiles {
+    /**
+     * Constant SQL so the connection's prepared statement cache compiles it
+     * once and only the bound arguments change between tile requests.
+     */
+    private static final String TILE_QUERY =
+            "SELECT tile_data FROM tiles WHERE zoom_level = ? AND tile_column = ? AND tile_row = ?";
+
     private SQLiteDatabase tilesDB;
+    private Map<String, String> metadata;
+    private double[] bounds;
 
     public MBTiles(String fileName) throws Exception {
         try {
@@ -69,28 +82,69 @@ public class MBTiles {
         return bounds;
     }
 
-    public double[] getBounds() {
-        double[] bounds = null;
-
-        bounds = getBoundsFromMetadata();
+    public synchronized double[] getBounds() {
         if (bounds == null) {
-            bounds = calculateBounds();
+            bounds = getBoundsFromMetadata();
+            if (bounds == null) {
+                bounds = calculateBounds();
+            }
         }
-
         return bounds;
     }
 
+    /**
+     * The name/value pairs of the metadata table. Read once and cached,
+     * since the file is opened read only.
+     */
+    public synchronized Map<String, String> getMetadata() {
+        if (metadata == null) {
+            Map<String, String> values = new HashMap<>();
+            Cursor cursor = tilesDB.rawQuery("SELECT name, value FROM metadata", null);
+            while (cursor.moveToNext()) {
+                values.put(cursor.getString(0), cursor.getString(1));
+            }
+            cursor.close();
+            metadata = Collections.unmodifiableMap(values);
+        }
+        return metadata;
+    }
+
+    /**
+     * Returns the min and max zoom levels, from the metadata if present,
+     * otherwise from the tiles table.
+     */
+    public int[] getZoomRange() {
+        Map<String, String> meta = getMetadata();
+        String minZoom = meta.get("minzoom");
+        String maxZoom = meta.get("maxzoom");
+        if (minZoom != null && maxZoom != null) {
+            try {
+                return new int[] { Integer.parseInt(minZoom), Integer.parseInt(maxZoom) };
+            } catch (NumberFormatException ex) {
+                Log.w("HTTPMBTiles", "Invalid zoom range in metadata: " + ex.toString());
+            }
+        }
+        int[] range = new int[] { 0, 22 };
+        Cursor cursor = tilesDB.rawQuery("SELECT MIN(zoom_level), MAX(zoom_level) FROM tiles", null);
+        if (cursor.moveToFirst()) {
+            range[0] = cursor.getInt(0);
+            range[1] = cursor.getInt(1);
+        }
+        cursor.close();
+        return range;
+    }
+
 
     public byte[] getTile(int z, int x, int y) throws Exception {
         // Most maps want Google tile schema, but MBTiles stores as TMS.
         // We have to flip the Y axis and ask for Y in TMS tile schema.
         int tmsY = (1 << z) - 1 - y; // (1 << z) is the same as Math.pow(2, z), but faster.
-        String query = String.format(
-                "SELECT tile_data " +
-                        "FROM tiles " +
-                        "WHERE zoom_level = %d AND tile_column = %d AND tile_row = %d", z, x, tmsY);
-
-        Cursor imageCur = tilesDB.rawQuery(query, null);
+        String[] args = new String[] {
+                Integer.toString(z),
+                Integer.toString(x),
+                Integer.toString(tmsY)
+        };
+        Cursor imageCur = tilesDB.rawQuery(TILE_QUERY, args);
 
         byte[] blob = null;
         if (imageCur.moveToFirst()) {
@@ -2,9 +2,14 @@ package org.redcross.openmapkit.server;
 
 import android.util.Log;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.redcross.openmapkit.ExternalStorage;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
@@ -17,9 +22,15 @@ public class MBTilesServer extends NanoHTTPD {
     private static final String TAG = "MBTilesServer";
     private static final int PORT = 3210;
     private static final Pattern TILE_PATTERN = Pattern.compile("/(.*?)/([0-9]+)/([0-9]+)/([0-9]+)\\.");
+    private static final Pattern BATCH_PATTERN = Pattern.compile("^/(.*?)/batch$");
+    private static final Pattern TILEJSON_PATTERN = Pattern.compile("^/(.*?)/tile\\.json$");
+    private static final Pattern BATCH_TILE_PATTERN = Pattern.compile("([0-9]+)/([0-9]+)/([0-9]+)");
+    private static final String STATS_URI = "/stats";
+    private static final int MAX_BATCH_TILES = 256;
 
     private static MBTilesServer singleton;
     private Map<String, MBTiles> layers = new HashMap<>();
+    private TileCache tileCache = new TileCache();
 
 
     public static MBTilesServer singleton() {
@@ -62,6 +73,20 @@ public class MBTilesServer extends NanoHTTPD {
         String uri = session.getUri();
         Log.d(TAG, method + " '" + uri + "' ");
 
+        if (STATS_URI.equals(uri)) {
+            return serveStats();
+        }
+
+        Matcher batchMatcher = BATCH_PATTERN.matcher(uri);
+        if (batchMatcher.find()) {
+            return serveBatch(batchMatcher.group(1), session.getParms().get("tiles"));
+        }
+
+        Matcher tileJSONMatcher = TILEJSON_PATTERN.matcher(uri);
+        if (tileJSONMatcher.find()) {
+            return serveTileJSON(tileJSONMatcher.group(1), session.getHeaders().get("host"));
+        }
+
         Matcher matcher = TILE_PATTERN.matcher(uri);
         if(!matcher.find()) {
             response = new NanoHTTPD.Response(NanoHTTPD.Response.Status.NOT_FOUND, NanoHTTPD.MIME_PLAINTEXT, "Not found");
@@ -75,7 +100,7 @@ public class MBTilesServer extends NanoHTTPD {
 
             if (mbTiles != null) {
                 try {
-                    byte[] tile = mbTiles.getTile(z, x, y);
+                    byte[] tile = getTile(layerName, mbTiles, z, x, y);
                     if (tile != null) {
                         response = new NanoHTTPD.Response(NanoHTTPD.Response.Status.OK, "image/png", new ByteArrayInputStream(tile));
                     } else {
@@ -93,6 +118,139 @@ public class MBTilesServer extends NanoHTTPD {
         return response;
     }
 
+    private byte[] getTile(String layerName, MBTiles mbTiles, int z, int x, int y) throws Exception {
+        byte[] tile = tileCache.get(layerName, z, x, y);
+        if (tile == null) {
+            tile = mbTiles.getTile(z, x, y);
+            tileCache.put(layerName, z, x, y, tile);
+        }
+        return tile;
+    }
+
+    /**
+     * Serves many tiles of a layer in one response. The tiles are requested as
+     * /{layer}/batch?tiles=z/x/y,z/x/y,... and returned in the requested order,
+     * each as a 4 byte big-endian length followed by the tile bytes. A missing
+     * tile has a length of 0.
+     */
+    private Response serveBatch(String layerName, String tilesParam) {
+        MBTiles mbTiles = layers.get(layerName);
+        if (mbTiles == null) {
+            return new NanoHTTPD.Response(NanoHTTPD.Response.Status.NOT_FOUND, NanoHTTPD.MIME_PLAINTEXT, "Layer not found");
+        }
+        if (tilesParam == null || tilesParam.length() == 0) {
+            return new NanoHTTPD.Response(NanoHTTPD.Response.Status.BAD_REQUEST, NanoHTTPD.MIME_PLAINTEXT, "Missing tiles parameter");
+        }
+        String[] tiles = tilesParam.split(",");
+        if (tiles.length > MAX_BATCH_TILES) {
+            return new NanoHTTPD.Response(NanoHTTPD.Response.Status.BAD_REQUEST, NanoHTTPD.MIME_PLAINTEXT,
+                    "Too many tiles, the maximum is " + MAX_BATCH_TILES);
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (String t : tiles) {
+                Matcher matcher = BATCH_TILE_PATTERN.matcher(t.trim());
+                if (!matcher.matches()) {
+                    return new NanoHTTPD.Response(NanoHTTPD.Response.Status.BAD_REQUEST, NanoHTTPD.MIME_PLAINTEXT, "Invalid tile: " + t);
+                }
+                int z = Integer.parseInt(matcher.group(1));
+                int x = Integer.parseInt(matcher.group(2));
+                int y = Integer.parseInt(matcher.group(3));
+                byte[] tile = getTile(layerName, mbTiles, z, x, y);
+                if (tile == null) {
+                    out.writeInt(0);
+                } else {
+                    out.writeInt(tile.length);
+                    out.write(tile);
+                }
+            }
+            out.flush();
+            return new NanoHTTPD.Response(NanoHTTPD.Response.Status.OK, "application/octet-stream",
+                    new ByteArrayInputStream(bytes.toByteArray()));
+        } catch (Exception ex) {
+            Log.e(TAG, ex.toString());
+            return new NanoHTTPD.Response(NanoHTTPD.Response.Status.INTERNAL_ERROR, NanoHTTPD.MIME_PLAINTEXT, ex.toString());
+        }
+    }
+
+    /**
+     * Serves a TileJSON document for a layer at /{layer}/tile.json so that
+     * clients know the bounds and zoom range and don't request tiles outside of them.
+     */
+    private Response serveTileJSON(String layerName, String host) {
+        MBTiles mbTiles = layers.get(layerName);
+        if (mbTiles == null) {
+            return new NanoHTTPD.Response(NanoHTTPD.Response.Status.NOT_FOUND, NanoHTTPD.MIME_PLAINTEXT, "Layer not found");
+        }
+        if (host == null) {
+            host = "localhost:" + PORT;
+        }
+        try {
+            Map<String, String> metadata = mbTiles.getMetadata();
+            String format = metadata.get("format");
+            if (format == null) {
+                format = "png";
+            }
+            int[] zoomRange = mbTiles.getZoomRange();
+
+            JSONObject tileJSON = new JSONObject();
+            tileJSON.put("tilejson", "2.1.0");
+            tileJSON.put("name", metadata.containsKey("name") ? metadata.get("name") : layerName);
+            putIfPresent(tileJSON, "description", metadata.get("description"));
+            putIfPresent(tileJSON, "attribution", metadata.get("attribution"));
+            putIfPresent(tileJSON, "version", metadata.get("version"));
+            tileJSON.put("scheme", "xyz");
+            tileJSON.put("format", format);
+            tileJSON.put("minzoom", zoomRange[0]);
+            tileJSON.put("maxzoom", zoomRange[1]);
+
+            double[] bounds = mbTiles.getBounds();
+            if (bounds != null) {
+                JSONArray boundsArray = new JSONArray();
+                for (double b : bounds) {
+                    boundsArray.put(b);
+                }
+                tileJSON.put("bounds", boundsArray);
+                JSONArray center = new JSONArray();
+                center.put((bounds[0] + bounds[2]) / 2);
+                center.put((bounds[1] + bounds[3]) / 2);
+                center.put(zoomRange[0]);
+                tileJSON.put("center", center);
+            }
+
+            JSONArray tiles = new JSONArray();
+            tiles.put("http://" + host + "/" + layerName + "/{z}/{x}/{y}." + format);
+            tileJSON.put("tiles", tiles);
+
+            return new NanoHTTPD.Response(NanoHTTPD.Response.Status.OK, "application/json", tileJSON.toString());
+        } catch (Exception ex) {
+            Log.e(TAG, ex.toString());
+            return new NanoHTTPD.Response(NanoHTTPD.Response.Status.INTERNAL_ERROR, NanoHTTPD.MIME_PLAINTEXT, ex.toString());
+        }
+    }
+
+    private static void putIfPresent(JSONObject json, String key, String value) throws JSONException {
+        if (value != null) {
+            json.put(key, value);
+        }
+    }
+
+    private Response serveStats() {
+        try {
+            JSONObject stats = new JSONObject();
+            stats.put("hits", tileCache.hitCount());
+            stats.put("misses", tileCache.missCount());
+            stats.put("evictions", tileCache.evictionCount());
+            stats.put("bytes", tileCache.size());
+            stats.put("maxBytes", tileCache.maxSize());
+            return new NanoHTTPD.Response(NanoHTTPD.Response.Status.OK, "application/json", stats.toString());
+        } catch (JSONException ex) {
+            Log.e(TAG, ex.toString());
+            return new NanoHTTPD.Response(NanoHTTPD.Response.Status.INTERNAL_ERROR, NanoHTTPD.MIME_PLAINTEXT, ex.toString());
+        }
+    }
+
     private static String fileNameFromPath(String path) {
         int slashIdx = path.lastIndexOf("/");
         return path.substring(slashIdx+1);
@@ -0,0 +1,95 @@
+package org.redcross.openmapkit.server;
+
+import android.support.v4.util.LruCache;
+
+/**
+ * In-process LRU of raw tile blobs served by MBTilesServer. The cache is
+ * budgeted in bytes rather than in number of entries, since the size of
+ * a tile varies a lot between imagery and vector-ish basemaps.
+ */
+public class TileCache {
+    /**
+     * Default budget: 1/16 of the max heap, capped at 16 MB.
+     */
+    public static final int DEFAULT_MAX_BYTES =
+            (int) Math.min(Runtime.getRuntime().maxMemory() / 16, 16 * 1024 * 1024);
+
+    private final LruCache<Key, byte[]> cache;
+
+    public TileCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    public TileCache(int maxBytes) {
+        cache = new LruCache<Key, byte[]>(maxBytes) {
+            @Override
+            protected int sizeOf(Key key, byte[] blob) {
+                return blob.length;
+            }
+        };
+    }
+
+    public byte[] get(String layer, int z, int x, int y) {
+        return cache.get(new Key(layer, z, x, y));
+    }
+
+    public void put(String layer, int z, int x, int y, byte[] blob) {
+        if (blob == null) return;
+        cache.put(new Key(layer, z, x, y), blob);
+    }
+
+    public int hitCount() {
+        return cache.hitCount();
+    }
+
+    public int missCount() {
+        return cache.missCount();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public int maxSize() {
+        return cache.maxSize();
+    }
+
+    public int evictionCount() {
+        return cache.evictionCount();
+    }
+
+    public void clear() {
+        cache.evictAll();
+    }
+
+    private static final class Key {
+        private final String layer;
+        private final int z;
+        private final int x;
+        private final int y;
+
+        Key(String layer, int z, int x, int y) {
+            this.layer = layer;
+            this.z = z;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return z == other.z && x == other.x && y == other.y && layer.equals(other.layer);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = layer.hashCode();
+            result = 31 * result + z;
+            result = 31 * result + x;
+            result = 31 * result + y;
+            return result;
+        }
+    }
+}